@@ -0,0 +1,156 @@
+package com.vosung.zuul.benchmark;
+
+import com.netflix.zuul.context.RequestContext;
+import com.netflix.zuul.exception.ZuulException;
+import com.vosung.zuul.apifilter.AccessFilter;
+import com.vosung.zuul.cache.UserContextStore;
+import com.vosung.zuul.constants.RedisCircuitBreaker;
+import com.vosung.zuul.properties.PermitAllUrlProperties;
+import com.vosung.zuul.route.RouteResolver;
+import com.vosung.zuul.vo.UserContext;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.cloud.netflix.zuul.filters.ZuulProperties;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.security.oauth2.provider.authentication.OAuth2AuthenticationDetails;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * AccessFilter.shouldFilter / run，redis、T_AU_ROLE都是进程内桩
+ * scenario：
+ *   jwt         token校验阶段已生成UserContext（正常经过资源服务认证的请求）
+ *   jwtDecode   没有UserContext，AccessFilter自己解析jwt载荷
+ *   permitAll   放行路径，shouldFilter返回false
+ *   anonymous   没有Authorization请求头
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AccessFilterBenchmark {
+
+    @Param({"jwt", "jwtDecode", "permitAll", "anonymous"})
+    private String scenario;
+
+    private final LongAdder redisCommands = new LongAdder();
+
+    private AccessFilter accessFilter;
+
+    private UserContextStore userContextStore;
+
+    private MockHttpServletRequest request;
+
+    private MockHttpServletResponse response;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ZuulProperties zuulProperties = new ZuulProperties();
+        RouteResolver routeResolver = new RouteResolver(GatewayStubs.routeLocator(zuulProperties), zuulProperties, 10000);
+        PermitAllUrlProperties permitAllUrlProperties = new PermitAllUrlProperties();
+        for (String pattern : new String[]{"/login/**", "/**/public/**"}) {
+            PermitAllUrlProperties.url url = new PermitAllUrlProperties.url();
+            url.setPattern(pattern);
+            permitAllUrlProperties.getPermitAll().add(url);
+        }
+        permitAllUrlProperties.init();
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        userContextStore = new UserContextStore(GatewayStubs.redisUtil(redisCommands),
+                new RedisCircuitBreaker(meterRegistry, true, 50, 50, 20, 10000, 5000, 5, 32),
+                meterRegistry, 1800, 50000, 10000);
+        userContextStore.start();
+
+        accessFilter = new AccessFilter();
+        ReflectionTestUtils.setField(accessFilter, "routeResolver", routeResolver);
+        ReflectionTestUtils.setField(accessFilter, "permitAllUrlProperties", permitAllUrlProperties);
+        ReflectionTestUtils.setField(accessFilter, "roleRegistry", GatewayStubs.roleRegistry());
+        ReflectionTestUtils.setField(accessFilter, "userContextStore", userContextStore);
+
+        String path = "permitAll".equals(scenario) ? "/ksfApp/public/banner/list" : "/ksfApp/order/list";
+        request = new MockHttpServletRequest("GET", path);
+        //DispatcherServlet映射在 / 时servletPath就是完整路径（RequestPaths）
+        request.setServletPath(path);
+        if (!"anonymous".equals(scenario)) {
+            request.addHeader("Authorization", "Bearer " + GatewayFixtures.jwt(
+                    GatewayStubs.USER_ID, GatewayStubs.USER_NAME, GatewayStubs.ROLES, GatewayStubs.CLIENT_ID));
+        }
+        response = new MockHttpServletResponse();
+        if ("jwt".equals(scenario)) {
+            //和OAuth2AuthenticationManager一样，把token校验阶段生成的UserContext放到decodedDetails
+            OAuth2Request oAuth2Request = new OAuth2Request(Collections.emptyMap(), GatewayStubs.CLIENT_ID,
+                    Collections.emptyList(), true, Collections.emptySet(), Collections.emptySet(), null,
+                    Collections.emptySet(), Collections.emptyMap());
+            OAuth2Authentication authentication = new OAuth2Authentication(oAuth2Request,
+                    new UsernamePasswordAuthenticationToken(GatewayStubs.USER_NAME, "N/A", Collections.emptyList()));
+            request.setAttribute(OAuth2AuthenticationDetails.ACCESS_TOKEN_VALUE, "token");
+            OAuth2AuthenticationDetails details = new OAuth2AuthenticationDetails(request);
+            details.setDecodedDetails(new UserContext(GatewayStubs.USER_ID, GatewayStubs.USER_NAME, GatewayStubs.ROLES, true));
+            authentication.setDetails(details);
+            SecurityContextHolder.getContext().setAuthentication(authentication);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        SecurityContextHolder.clearContext();
+        RequestContext.getCurrentContext().unset();
+        userContextStore.stop();
+    }
+
+    //每次操作都是一个新请求（ZuulServlet在请求结束时会清理RequestContext）
+    private RequestContext newRequest() {
+        RequestContext ctx = RequestContext.getCurrentContext();
+        ctx.clear();
+        ctx.setRequest(request);
+        ctx.setResponse(response);
+        return ctx;
+    }
+
+    @Benchmark
+    public boolean shouldFilter() {
+        newRequest();
+        return accessFilter.shouldFilter();
+    }
+
+    @Benchmark
+    public Object shouldFilterAndRun() throws ZuulException {
+        RequestContext ctx = newRequest();
+        if (accessFilter.shouldFilter()) {
+            accessFilter.run();
+        }
+        return ctx.getZuulRequestHeaders();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(AccessFilterBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,90 @@
+package com.vosung.zuul.benchmark;
+
+import com.vosung.zuul.constants.SecurityConstants;
+import org.springframework.security.jwt.JwtHelper;
+import org.springframework.security.jwt.crypto.sign.RsaSigner;
+
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.interfaces.RSAPrivateKey;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基准测试用的测试数据
+ */
+final class GatewayFixtures {
+
+    private GatewayFixtures() {
+    }
+
+    /**
+     * 生成结构和授权服务签发的一致的jwt（签名段是假的，只用于解析类的基准测试）
+     */
+    static String jwt(String userId, String userName, String roles, String clientId) {
+        long exp = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) + 3600;
+        String header = "{\"alg\":\"RS256\",\"typ\":\"JWT\"}";
+        String payload = "{\"" + SecurityConstants.USER_ID_IN_HEADER + "\":\"" + userId + "\","
+                + "\"user_id\":\"" + userId + "\","
+                + "\"user_name\":\"" + userName + "\","
+                + "\"roles\":\"" + roles + "\","
+                + "\"scope\":[\"all\",\"read\",\"write\"],"
+                + "\"exp\":" + exp + ","
+                + "\"authorities\":[\"ROLE_USER\",\"ROLE_ADMIN\"],"
+                + "\"jti\":\"6f1c2a0e-8c4e-4a8e-b3f7-2d9d8e7c1b5a\","
+                + "\"client_id\":\"" + clientId + "\"}";
+        return encode(header) + "." + encode(payload) + "." + encode("not-a-real-signature-" + userId);
+    }
+
+    /**
+     * 用私钥RS256签名的jwt，用于local模式的验签基准测试
+     */
+    static String signedJwt(String userId, String userName, String roles, String clientId, KeyPair keyPair) {
+        String payload = new String(Base64.getUrlDecoder().decode(jwt(userId, userName, roles, clientId).split("\\.")[1]),
+                StandardCharsets.UTF_8);
+        return JwtHelper.encode(payload, new RsaSigner((RSAPrivateKey) keyPair.getPrivate())).getEncoded();
+    }
+
+    static KeyPair rsaKeyPair() {
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(2048);
+            return generator.generateKeyPair();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 生成指定数量的放行路径，包含 /xx/** 前缀、/**&#47;xx/** 任意位置和段内通配几种常见写法
+     */
+    static List<String> permitAllPatterns(int count) {
+        List<String> patterns = new ArrayList<>(count);
+        patterns.add("/login/**");
+        for (int i = 1; i < count; i++) {
+            switch (i % 4) {
+                case 0:
+                    patterns.add("/**/static" + i + "/**");
+                    break;
+                case 1:
+                    patterns.add("/svc" + i + "/public/**");
+                    break;
+                case 2:
+                    patterns.add("/app" + i + "/api/v1/*/detail");
+                    break;
+                default:
+                    patterns.add("/web" + i + "/*.html");
+                    break;
+            }
+        }
+        return patterns;
+    }
+
+    private static String encode(String value) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,222 @@
+package com.vosung.zuul.benchmark;
+
+import com.vosung.zuul.cache.RoleRegistry;
+import com.vosung.zuul.constants.RedisUtil;
+import com.vosung.zuul.constants.SecurityConstants;
+import com.vosung.zuul.vo.RoleVo;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.LoadBalancerClient;
+import org.springframework.cloud.client.loadbalancer.LoadBalancerRequest;
+import org.springframework.cloud.netflix.zuul.filters.SimpleRouteLocator;
+import org.springframework.cloud.netflix.zuul.filters.ZuulProperties;
+import org.springframework.cloud.netflix.zuul.filters.ZuulProperties.ZuulRoute;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 基准测试用的进程内桩：redis、T_AU_ROLE、授权服务check_token、负载均衡、zuul路由
+ * 不访问网络和数据库，测到的只是网关自身代码的开销
+ */
+final class GatewayStubs {
+
+    static final String USER_ID = "2c9f8a1b-7e3d-4c55-9a21-0b6f0d3e41aa";
+
+    static final String USER_NAME = "zhangsan";
+
+    static final String ROLES = "1,3,7";
+
+    static final String CLIENT_ID = "frontend";
+
+    private GatewayStubs() {
+    }
+
+    /**
+     * 基于内存的RedisUtil：所有redis命令都成功返回，只统计调用次数
+     * pipeline中的命令在closePipeline时按顺序返回结果（与真实连接一样不包含无返回值的命令）
+     */
+    static RedisUtil redisUtil(LongAdder commands) {
+        ThreadLocal<List<Object>> pipeline = new ThreadLocal<>();
+        RedisConnection connection = (RedisConnection) Proxy.newProxyInstance(GatewayStubs.class.getClassLoader(),
+                new Class<?>[]{RedisConnection.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "openPipeline":
+                            pipeline.set(new ArrayList<>());
+                            return null;
+                        case "closePipeline":
+                            List<Object> results = pipeline.get();
+                            pipeline.remove();
+                            return results;
+                        case "isPipelined":
+                            return pipeline.get() != null;
+                        case "close":
+                            return null;
+                        case "isClosed":
+                        case "isQueueing":
+                            return false;
+                        default:
+                            commands.increment();
+                            List<Object> pipelined = pipeline.get();
+                            if (pipelined == null) {
+                                return defaultValue(method.getReturnType());
+                            }
+                            if (method.getReturnType() != void.class) {
+                                pipelined.add(defaultValue(method.getReturnType()));
+                            }
+                            return null;
+                    }
+                });
+        RedisConnectionFactory factory = (RedisConnectionFactory) Proxy.newProxyInstance(GatewayStubs.class.getClassLoader(),
+                new Class<?>[]{RedisConnectionFactory.class}, (proxy, method, args) ->
+                        "getConnection".equals(method.getName()) ? connection : defaultValue(method.getReturnType()));
+        RedisTemplate<String, Object> template = new RedisTemplate<>();
+        template.setConnectionFactory(factory);
+        template.setDefaultSerializer(new StringRedisSerializer());
+        template.afterPropertiesSet();
+        RedisUtil redisUtil = new RedisUtil();
+        ReflectionTestUtils.setField(redisUtil, "redisTemplate", template);
+        return redisUtil;
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == Boolean.class || type == boolean.class) {
+            return Boolean.TRUE;
+        }
+        if (type == Long.class || type == long.class) {
+            return 0L;
+        }
+        if (type == Integer.class || type == int.class) {
+            return 0;
+        }
+        if (type == Double.class || type == double.class) {
+            return 0D;
+        }
+        return null;
+    }
+
+    /**
+     * 角色快照，角色3为系统管理员
+     */
+    static RoleRegistry roleRegistry() {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <T> List<T> query(String sql, RowMapper<T> rowMapper) {
+                List<T> roles = new ArrayList<>();
+                String[][] rows = {{"1", "USER", "普通用户"}, {"3", "SYS_ADMIN", "系统管理员"}, {"7", "AUDITOR", "审计"}};
+                for (String[] row : rows) {
+                    RoleVo roleVo = new RoleVo();
+                    roleVo.setId(Integer.valueOf(row[0]));
+                    roleVo.setRoleCode(row[1]);
+                    roleVo.setRoleName(row[2]);
+                    roles.add((T) roleVo);
+                }
+                return roles;
+            }
+        };
+        RoleRegistry roleRegistry = new RoleRegistry();
+        ReflectionTestUtils.setField(roleRegistry, "jdbcTemplate", jdbcTemplate);
+        roleRegistry.init();
+        return roleRegistry;
+    }
+
+    /**
+     * 和application-dev.yml一致的三条路由
+     */
+    static SimpleRouteLocator routeLocator(ZuulProperties zuulProperties) {
+        zuulProperties.getRoutes().put("login", route("login", "/login/**", SecurityConstants.AUTH_SERVICE));
+        zuulProperties.getRoutes().put("authWebApp", route("authWebApp", "/authWebApp/**", "vosung-au-app"));
+        zuulProperties.getRoutes().put("ksfApp", route("ksfApp", "/ksfApp/**", "ksf-app"));
+        zuulProperties.init();
+        return new SimpleRouteLocator("", zuulProperties);
+    }
+
+    private static ZuulRoute route(String id, String path, String serviceId) {
+        ZuulRoute route = new ZuulRoute();
+        route.setId(id);
+        route.setPath(path);
+        route.setServiceId(serviceId);
+        route.setSensitiveHeaders(new LinkedHashSet<>(Arrays.asList("Cookie", "Set-Cookie")));
+        return route;
+    }
+
+    /**
+     * 授权服务/oauth/check_token：每次调用都返回同一个用户的校验结果
+     */
+    static ClientHttpRequestFactory checkTokenEndpoint(LongAdder calls) {
+        long exp = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) + 3600;
+        byte[] body = ("{\"active\":true,\"exp\":" + exp + ","
+                + "\"user_name\":\"" + USER_NAME + "\","
+                + "\"" + SecurityConstants.USER_ID_IN_HEADER + "\":\"" + USER_ID + "\","
+                + "\"roles\":\"" + ROLES + "\","
+                + "\"authorities\":[\"ROLE_USER\",\"ROLE_ADMIN\"],"
+                + "\"scope\":[\"all\",\"read\",\"write\"],"
+                + "\"jti\":\"6f1c2a0e-8c4e-4a8e-b3f7-2d9d8e7c1b5a\","
+                + "\"client_id\":\"" + CLIENT_ID + "\"}").getBytes(StandardCharsets.UTF_8);
+        return (uri, httpMethod) -> {
+            calls.increment();
+            MockClientHttpRequest request = new MockClientHttpRequest(httpMethod, uri);
+            MockClientHttpResponse response = new MockClientHttpResponse(body, HttpStatus.OK);
+            response.getHeaders().setContentType(MediaType.APPLICATION_JSON_UTF8);
+            request.setResponse(response);
+            return request;
+        };
+    }
+
+    /**
+     * 只有一个授权服务实例的负载均衡
+     */
+    static LoadBalancerClient loadBalancer() {
+        ServiceInstance instance = new DefaultServiceInstance(SecurityConstants.AUTH_SERVICE,
+                "127.0.0.1", 9090, false, Collections.emptyMap());
+        return new LoadBalancerClient() {
+            @Override
+            public ServiceInstance choose(String serviceId) {
+                return instance;
+            }
+
+            @Override
+            public <T> T execute(String serviceId, LoadBalancerRequest<T> request) throws IOException {
+                return execute(serviceId, instance, request);
+            }
+
+            @Override
+            public <T> T execute(String serviceId, ServiceInstance serviceInstance, LoadBalancerRequest<T> request) throws IOException {
+                try {
+                    return request.apply(serviceInstance);
+                } catch (IOException | RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+
+            @Override
+            public URI reconstructURI(ServiceInstance serviceInstance, URI original) {
+                return URI.create(serviceInstance.getUri() + original.getRawPath());
+            }
+        };
+    }
+}
@@ -0,0 +1,72 @@
+package com.vosung.zuul.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vosung.zuul.apifilter.JwtClaimsExtractor;
+import com.vosung.zuul.constants.SecurityConstants;
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.lang.StringUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AccessFilter解析jwt载荷：原实现（Base64解码成String + 每次new ObjectMapper读成Map） vs JwtClaimsExtractor
+ * 每次操作的内存分配看 -prof gc 输出的 gc.alloc.rate.norm（B/op）
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtClaimsExtractorBenchmark {
+
+    private String authorization;
+
+    @Setup
+    public void setUp() {
+        authorization = "Bearer " + GatewayFixtures.jwt(
+                "2c9f8a1b-7e3d-4c55-9a21-0b6f0d3e41aa", "zhangsan", "1,3,7", "frontend");
+    }
+
+    @Benchmark
+    public void legacyObjectMapper(Blackhole blackhole) throws IOException {
+        String payload = StringUtils.substringBetween(authorization, ".");
+        String decoded = new String(Base64.decodeBase64(payload));
+        Map properties = new ObjectMapper().readValue(decoded, Map.class);
+        blackhole.consume(properties.get(SecurityConstants.USER_ID_IN_HEADER));
+        blackhole.consume(properties.get("user_name"));
+        blackhole.consume(properties.get("roles"));
+    }
+
+    @Benchmark
+    public void streamingExtractor(Blackhole blackhole) {
+        JwtClaimsExtractor.JwtClaims claims = JwtClaimsExtractor.extract(authorization);
+        blackhole.consume(claims.getUserId());
+        blackhole.consume(claims.getUserName());
+        blackhole.consume(claims.getRoles());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(JwtClaimsExtractorBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,116 @@
+package com.vosung.zuul.benchmark;
+
+import com.vosung.zuul.route.AntPatternTrie;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.util.AntPathMatcher;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * 放行路径匹配：原实现（每个路径一个不锚定的正则，逐个find） vs 逐个AntPathMatcher vs AntPatternTrie
+ * 每次操作匹配一组uri（命中靠前、命中靠后、都不命中各占一部分）
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PermitAllMatcherBenchmark {
+
+    @Param({"10", "100", "1000"})
+    private int patternCount;
+
+    private String[] uris;
+
+    private List<String> patterns;
+
+    private List<Pattern> legacyPatterns;
+
+    private AntPathMatcher antPathMatcher;
+
+    private AntPatternTrie trie;
+
+    @Setup
+    public void setUp() {
+        patterns = GatewayFixtures.permitAllPatterns(patternCount);
+        legacyPatterns = new ArrayList<>(patterns.size());
+        for (String pattern : patterns) {
+            legacyPatterns.add(Pattern.compile(pattern.replaceAll("\\*\\*", "(.*?)"), Pattern.CASE_INSENSITIVE));
+        }
+        antPathMatcher = new AntPathMatcher();
+        trie = AntPatternTrie.compile(patterns);
+        int last = patternCount - 1;
+        uris = new String[]{
+                "/login/oauth/token",
+                "/svc" + last + "/public/banner/list",
+                "/app" + last + "/api/v1/order/detail",
+                "/ksfApp/order/list",
+                "/authWebApp/auth/positionController/getPositionList",
+                "/ksfApp/order/2c9f8a1b-7e3d-4c55-9a21-0b6f0d3e41aa/items"
+        };
+    }
+
+    @Benchmark
+    public int legacyRegex() {
+        int matched = 0;
+        for (String uri : uris) {
+            for (Pattern pattern : legacyPatterns) {
+                if (pattern.matcher(uri).find()) {
+                    matched++;
+                    break;
+                }
+            }
+        }
+        return matched;
+    }
+
+    @Benchmark
+    public int antPathMatcher() {
+        int matched = 0;
+        for (String uri : uris) {
+            for (String pattern : patterns) {
+                if (antPathMatcher.match(pattern, uri)) {
+                    matched++;
+                    break;
+                }
+            }
+        }
+        return matched;
+    }
+
+    @Benchmark
+    public int patternTrie() {
+        int matched = 0;
+        for (String uri : uris) {
+            if (trie.matches(uri)) {
+                matched++;
+            }
+        }
+        return matched;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(PermitAllMatcherBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,145 @@
+package com.vosung.zuul.benchmark;
+
+import com.vosung.zuul.commonconfig.redisconfig.RedisConfig;
+import com.vosung.zuul.commonconfig.redisconfig.RedisConnectionFactories;
+import com.vosung.zuul.constants.RedisUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.boot.autoconfigure.data.redis.RedisProperties;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 500个并发调用方通过RedisUtil访问本机的内嵌redis-server：
+ * client：
+ *   jedis    连接池（与线上配置相同：max-active 30，max-wait -1），超出连接数的调用方排队等待连接
+ *   lettuce  所有调用方共享一个多路复用的连接
+ * 同步接口测的是调用线程等待结果的吞吐量和平均耗时；
+ * 异步接口（join）在jedis模式下由RedisUtil的后台线程池执行，在lettuce模式下是非阻塞命令
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(500)
+@Fork(1)
+public class RedisClientBenchmark {
+
+    private static final int USERS = 10000;
+
+    @Param({"jedis", "lettuce"})
+    private String client;
+
+    private RedisServer redisServer;
+
+    private RedisConnectionFactory connectionFactory;
+
+    private RedisUtil redisUtil;
+
+    private Map<String, Object> userContext;
+
+    @Setup
+    public void setUp() throws Exception {
+        int port = freePort();
+        redisServer = new RedisServer(port);
+        redisServer.start();
+        RedisProperties properties = new RedisProperties();
+        properties.setPort(port);
+        properties.setTimeout(Duration.ofSeconds(5));
+        RedisProperties.Pool pool = new RedisProperties.Pool();
+        pool.setMaxActive(30);
+        pool.setMinIdle(10);
+        pool.setMaxIdle(10);
+        pool.setMaxWait(Duration.ofMillis(-1));
+        properties.getJedis().setPool(pool);
+        properties.getLettuce().setPool(pool);
+        RedisConfig redisConfig = new RedisConfig();
+        redisUtil = new RedisUtil();
+        if ("lettuce".equals(client)) {
+            LettuceConnectionFactory factory = RedisConnectionFactories.lettuce(properties, null, Collections.emptyList());
+            factory.afterPropertiesSet();
+            connectionFactory = factory;
+            ReflectionTestUtils.setField(redisUtil, "reactiveRedisTemplate", redisConfig.gatewayReactiveRedisTemplate(factory, "string"));
+        } else {
+            connectionFactory = RedisConnectionFactories.jedis(properties, Collections.emptyList());
+            ((InitializingBean) connectionFactory).afterPropertiesSet();
+        }
+        ReflectionTestUtils.setField(redisUtil, "redisTemplate", redisConfig.redisTemplate(connectionFactory, "string"));
+        userContext = new HashMap<>();
+        userContext.put("userId", GatewayStubs.USER_ID);
+        userContext.put("userName", GatewayStubs.USER_NAME);
+        userContext.put("roles", GatewayStubs.ROLES);
+        userContext.put("isSuperAdmin", "false");
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        redisUtil.shutdown();
+        ((DisposableBean) connectionFactory).destroy();
+        redisServer.stop();
+    }
+
+    @Benchmark
+    public Object get() {
+        return redisUtil.get(key());
+    }
+
+    @Benchmark
+    public boolean hmset() {
+        return redisUtil.hmset(key(), userContext, 1800);
+    }
+
+    @Benchmark
+    public Object getAsync() {
+        return redisUtil.getAsync(key()).join();
+    }
+
+    @Benchmark
+    public Boolean hmsetAsync() {
+        return redisUtil.hmsetAsync(key(), userContext, 1800).join();
+    }
+
+    private static String key() {
+        return "user:ctx:" + ThreadLocalRandom.current().nextInt(USERS);
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(RedisClientBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
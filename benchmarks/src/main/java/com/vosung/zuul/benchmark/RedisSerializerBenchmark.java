@@ -0,0 +1,121 @@
+package com.vosung.zuul.benchmark;
+
+import com.vosung.zuul.commonconfig.redisconfig.RedisConfig;
+import com.vosung.zuul.vo.RoleVo;
+import com.vosung.zuul.vo.UserContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * redis value序列化：gateway.redis.value-serializer 的三种取值
+ *   string  现在的写法，对象拆成hash，每个字段值转成字符串分别序列化（字段名也要写入redis）
+ *   json    jackson（带类名）
+ *   compact CompactRedisSerializer
+ * 每种方式写入redis的字节数在setUp时打印（字段名+值）
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RedisSerializerBenchmark {
+
+    @Param({"string", "json", "compact"})
+    public String codec;
+
+    @Param({"userContext", "role"})
+    public String value;
+
+    private RedisSerializer<Object> serializer;
+
+    private Object object;
+
+    private Map<String, String> fields;
+
+    private Object serialized;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        if ("userContext".equals(value)) {
+            object = new UserContext(GatewayStubs.USER_ID, GatewayStubs.USER_NAME, GatewayStubs.ROLES, false);
+            fields = new LinkedHashMap<>();
+            fields.put("userId", GatewayStubs.USER_ID);
+            fields.put("userName", GatewayStubs.USER_NAME);
+            fields.put("roles", GatewayStubs.ROLES);
+            fields.put("isSuperAdmin", "false");
+        } else {
+            RoleVo roleVo = new RoleVo();
+            roleVo.setId(1);
+            roleVo.setRoleCode("SYS_ADMIN");
+            roleVo.setRoleName("系统管理员");
+            object = roleVo;
+            fields = new LinkedHashMap<>();
+            fields.put("id", "1");
+            fields.put("roleCode", "SYS_ADMIN");
+            fields.put("roleName", "系统管理员");
+        }
+        serializer = (RedisSerializer<Object>) RedisConfig.valueSerializer(codec);
+        serialized = serialize();
+        int bytes = 0;
+        if (serialized instanceof byte[]) {
+            bytes = ((byte[]) serialized).length;
+        } else {
+            for (Map.Entry<byte[], byte[]> entry : ((Map<byte[], byte[]>) serialized).entrySet()) {
+                bytes += entry.getKey().length + entry.getValue().length;
+            }
+        }
+        System.out.println();
+        System.out.println(codec + " " + value + ": " + bytes + " bytes");
+    }
+
+    @Benchmark
+    public Object serialize() {
+        if ("string".equals(codec)) {
+            Map<byte[], byte[]> hash = new LinkedHashMap<>(8);
+            fields.forEach((field, fieldValue) -> hash.put(serializer.serialize(field), serializer.serialize(fieldValue)));
+            return hash;
+        }
+        return serializer.serialize(object);
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public void deserialize(Blackhole blackhole) {
+        if ("string".equals(codec)) {
+            for (Map.Entry<byte[], byte[]> entry : ((Map<byte[], byte[]>) serialized).entrySet()) {
+                blackhole.consume(serializer.deserialize(entry.getKey()));
+                blackhole.consume(serializer.deserialize(entry.getValue()));
+            }
+            return;
+        }
+        blackhole.consume(serializer.deserialize((byte[]) serialized));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(RedisSerializerBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
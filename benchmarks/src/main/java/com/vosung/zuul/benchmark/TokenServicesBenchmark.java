@@ -0,0 +1,91 @@
+package com.vosung.zuul.benchmark;
+
+import com.vosung.zuul.properties.TokenIntrospectionProperties.VerificationMode;
+import com.vosung.zuul.resourceserverconfig.CustomRemoteTokenServices;
+import com.vosung.zuul.resourceserverconfig.TokenIntrospectionCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.security.jwt.crypto.sign.RsaVerifier;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+
+import java.security.KeyPair;
+import java.security.interfaces.RSAPublicKey;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * CustomRemoteTokenServices.loadAuthentication，授权服务check_token和负载均衡都是进程内桩
+ * （没有网络开销，remote测的是RestTemplate编解码和token转换本身的开销）
+ * mode：
+ *   remote        每次都调用check_token
+ *   remoteCached  check_token结果缓存命中
+ *   local         公钥本地验签
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenServicesBenchmark {
+
+    @Param({"remote", "remoteCached", "local"})
+    private String mode;
+
+    private final LongAdder checkTokenCalls = new LongAdder();
+
+    private CustomRemoteTokenServices tokenServices;
+
+    private String accessToken;
+
+    @Setup
+    public void setUp() {
+        tokenServices = new CustomRemoteTokenServices(GatewayStubs.checkTokenEndpoint(checkTokenCalls));
+        tokenServices.setCheckTokenEndpointUrl("/oauth/check_token");
+        tokenServices.setClientId(GatewayStubs.CLIENT_ID);
+        tokenServices.setClientSecret(GatewayStubs.CLIENT_ID);
+        tokenServices.setLoadBalancerClient(GatewayStubs.loadBalancer());
+        tokenServices.setRoleRegistry(GatewayStubs.roleRegistry());
+        tokenServices.setMeterRegistry(new SimpleMeterRegistry());
+        if ("local".equals(mode)) {
+            KeyPair keyPair = GatewayFixtures.rsaKeyPair();
+            tokenServices.setVerificationMode(VerificationMode.LOCAL);
+            tokenServices.setSignatureVerifier(new RsaVerifier((RSAPublicKey) keyPair.getPublic()));
+            accessToken = GatewayFixtures.signedJwt(GatewayStubs.USER_ID, GatewayStubs.USER_NAME,
+                    GatewayStubs.ROLES, GatewayStubs.CLIENT_ID, keyPair);
+        } else {
+            accessToken = GatewayFixtures.jwt(GatewayStubs.USER_ID, GatewayStubs.USER_NAME,
+                    GatewayStubs.ROLES, GatewayStubs.CLIENT_ID);
+        }
+        if ("remoteCached".equals(mode)) {
+            tokenServices.setIntrospectionCache(new TokenIntrospectionCache(100000, Duration.ofMinutes(5)));
+        }
+    }
+
+    @Benchmark
+    public OAuth2Authentication loadAuthentication() {
+        return tokenServices.loadAuthentication(accessToken);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(TokenServicesBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
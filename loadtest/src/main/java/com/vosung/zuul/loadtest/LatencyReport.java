@@ -0,0 +1,68 @@
+package com.vosung.zuul.loadtest;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 压测报告：每个 场景-路由 一个HdrHistogram百分位分布文件（.hgrm，单位毫秒，可用HdrHistogram的plotFiles.html作图），
+ * 另外汇总一份summary.txt
+ */
+final class LatencyReport {
+
+    private static final String HEADER = String.format("%-14s %-12s %10s %8s %10s %9s %9s %9s %9s",
+            "scenario", "route", "requests", "errors", "req/s", "p50(ms)", "p99(ms)", "p999(ms)", "max(ms)");
+
+    private final File directory;
+
+    private final List<String> lines = new ArrayList<>();
+
+    LatencyReport(File directory) {
+        this.directory = directory;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IllegalStateException("Failed to create report directory " + directory);
+        }
+    }
+
+    void add(String scenario, Map<String, LoadDriver.RouteResult> results) throws IOException {
+        for (LoadDriver.RouteResult result : results.values()) {
+            Histogram histogram = result.histogram;
+            try (PrintStream out = new PrintStream(new FileOutputStream(
+                    new File(directory, scenario + "-" + result.route + ".hgrm")), false, "UTF-8")) {
+                histogram.outputPercentileDistribution(out, 1000.0);
+            }
+            String line = String.format("%-14s %-12s %10d %8d %10.1f %9.2f %9.2f %9.2f %9.2f",
+                    scenario, result.route, result.requests.sum(), result.unexpected.sum(),
+                    result.requests.sum() / result.seconds,
+                    millis(histogram.getValueAtPercentile(50)), millis(histogram.getValueAtPercentile(99)),
+                    millis(histogram.getValueAtPercentile(99.9)), millis(histogram.getMaxValue()));
+            lines.add(line);
+            System.out.println(line);
+        }
+    }
+
+    void writeSummary(String settings) throws IOException {
+        StringBuilder summary = new StringBuilder(settings).append('\n').append(HEADER).append('\n');
+        for (String line : lines) {
+            summary.append(line).append('\n');
+        }
+        try (FileOutputStream out = new FileOutputStream(new File(directory, "summary.txt"))) {
+            out.write(summary.toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    static String header() {
+        return HEADER;
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+}
@@ -0,0 +1,158 @@
+package com.vosung.zuul.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 压测驱动：concurrency个线程各自循环发请求，预热阶段不记录，之后按路由记录耗时（微秒）到HdrHistogram。
+ *   rate为0（闭环）：上一个返回后立即发下一个。网关变慢时会少发请求（coordinated omission），
+ *                   记录时按预热阶段该线程的平均耗时作为期望间隔补上缺失的样本（recordValueWithExpectedInterval）
+ *   rate大于0（开环）：所有线程合计每秒rate个请求，按固定时间表发送，耗时从计划发送时间算起，
+ *                   网关变慢导致的排队时间计入结果（线程数需要足够，否则实际发送速率达不到rate）
+ */
+final class LoadDriver {
+
+    private final String baseUrl;
+
+    private final int concurrency;
+
+    //每秒请求数，0表示闭环
+    private final long rate;
+
+    LoadDriver(String baseUrl, int concurrency, long rate) {
+        this.baseUrl = baseUrl;
+        this.concurrency = concurrency;
+        this.rate = rate;
+    }
+
+    Map<String, RouteResult> run(Scenario scenario, long warmupMillis, long durationMillis) throws InterruptedException {
+        Map<String, RouteResult> results = new LinkedHashMap<>();
+        for (Scenario.Target target : scenario.targets) {
+            results.putIfAbsent(target.route, new RouteResult(target.route));
+        }
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(5000).setSocketTimeout(30000).setConnectionRequestTimeout(5000).build();
+        try (CloseableHttpClient client = HttpClients.custom()
+                .setMaxConnTotal(concurrency)
+                .setMaxConnPerRoute(concurrency)
+                .setDefaultRequestConfig(requestConfig)
+                .disableAutomaticRetries()
+                .build()) {
+            long measureStart = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(warmupMillis);
+            long end = measureStart + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+            CountDownLatch done = new CountDownLatch(concurrency);
+            for (int worker = 0; worker < concurrency; worker++) {
+                int first = worker;
+                Thread thread = new Thread(() -> {
+                    try {
+                        drive(client, scenario, results, first, measureStart, end);
+                    } finally {
+                        done.countDown();
+                    }
+                }, "loadtest-" + scenario.name + "-" + worker);
+                thread.setDaemon(true);
+                thread.start();
+            }
+            done.await();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        for (RouteResult result : results.values()) {
+            result.histogram = result.recorder.getIntervalHistogram();
+            result.seconds = durationMillis / 1000.0;
+        }
+        return results;
+    }
+
+    private void drive(CloseableHttpClient client, Scenario scenario, Map<String, RouteResult> results,
+                       int first, long measureStart, long end) {
+        int i = first;
+        //开环时每个线程的发送间隔，各线程错开
+        long intervalNanos = rate > 0 ? TimeUnit.SECONDS.toNanos(concurrency) / rate : 0;
+        long next = System.nanoTime() + intervalNanos * first / concurrency;
+        long warmupMicros = 0;
+        long warmupRequests = 0;
+        long expectedIntervalMicros = -1;
+        while (true) {
+            long start;
+            if (intervalNanos > 0) {
+                long now = System.nanoTime();
+                if (next > now) {
+                    LockSupport.parkNanos(next - now);
+                }
+                start = next;
+                next += intervalNanos;
+            } else {
+                start = System.nanoTime();
+            }
+            if (start >= end) {
+                return;
+            }
+            Scenario.Target target = scenario.targets.get(i % scenario.targets.size());
+            HttpGet get = new HttpGet(baseUrl + target.path);
+            String authorization = scenario.authorization.apply(i);
+            if (authorization != null) {
+                get.setHeader("Authorization", authorization);
+            }
+            int status;
+            try (CloseableHttpResponse response = client.execute(get)) {
+                status = response.getStatusLine().getStatusCode();
+                EntityUtils.consume(response.getEntity());
+            } catch (IOException e) {
+                status = -1;
+            }
+            long micros = Math.max(1, (System.nanoTime() - start) / 1000);
+            if (start < measureStart) {
+                warmupMicros += micros;
+                warmupRequests++;
+            } else {
+                RouteResult result = results.get(target.route);
+                if (intervalNanos > 0) {
+                    result.recorder.recordValue(micros);
+                } else {
+                    if (expectedIntervalMicros < 0) {
+                        //没有预热时为0，不做修正
+                        expectedIntervalMicros = warmupRequests == 0 ? 0 : warmupMicros / warmupRequests;
+                    }
+                    result.recorder.recordValueWithExpectedInterval(micros, expectedIntervalMicros);
+                }
+                result.requests.increment();
+                if (status != scenario.expectedStatus) {
+                    result.unexpected.increment();
+                }
+            }
+            i += concurrency;
+        }
+    }
+
+    /**
+     * 单条路由的统计结果
+     */
+    static final class RouteResult {
+        final String route;
+        final Recorder recorder = new Recorder(3);
+        final LongAdder requests = new LongAdder();
+        //响应码与场景期望不一致（含连接失败）的请求数
+        final LongAdder unexpected = new LongAdder();
+        Histogram histogram;
+        double seconds;
+
+        RouteResult(String route) {
+            this.route = route;
+        }
+    }
+}
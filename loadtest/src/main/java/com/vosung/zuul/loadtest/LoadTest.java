@@ -0,0 +1,175 @@
+package com.vosung.zuul.loadtest;
+
+import com.vosung.zuul.ApiGateWayZuulApplication;
+import com.vosung.zuul.constants.SecurityConstants;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import redis.embedded.RedisServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 网关端到端压测：
+ * 启动内嵌redis、授权服务桩、authWebApp/ksfApp业务服务桩，再以loadtest profile启动网关（静态路由，不连eureka），
+ * 依次执行各个场景，按 场景-路由 输出HdrHistogram延迟报告。
+ * 参数（--name=value）：
+ *   concurrency        并发数（默认64）
+ *   rate               每秒请求数，大于0时按固定速率开环压测（默认0，闭环）
+ *   duration           每个场景的测量时长，秒（默认30）
+ *   warmup             每个场景的预热时长，秒（默认10）
+ *   scenarios          逗号分隔，anonymous,permitAll,jwt,invalidToken（默认全部）
+ *   users              jwt场景使用的不同用户数（默认100）
+ *   backend-latency    业务服务桩的处理耗时，毫秒（默认0）
+ *   report-dir         报告目录（默认target/loadtest-reports/时间）
+ * 其余参数原样传给网关（如 --zuul.semaphore.max-semaphores=500）
+ */
+public final class LoadTest {
+
+    private static final List<String> OPTIONS = Arrays.asList(
+            "concurrency", "rate", "duration", "warmup", "scenarios", "users", "backend-latency", "report-dir");
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        List<String> gatewayArgs = new ArrayList<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            String name = arg.startsWith("--") && eq > 2 ? arg.substring(2, eq) : null;
+            if (name != null && OPTIONS.contains(name)) {
+                options.put(name, arg.substring(eq + 1));
+            } else {
+                gatewayArgs.add(arg);
+            }
+        }
+        int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "64"));
+        long rate = Long.parseLong(options.getOrDefault("rate", "0"));
+        long durationMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(options.getOrDefault("duration", "30")));
+        long warmupMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(options.getOrDefault("warmup", "10")));
+        int users = Integer.parseInt(options.getOrDefault("users", "100"));
+        long backendLatency = Long.parseLong(options.getOrDefault("backend-latency", "0"));
+        List<String> scenarioNames = Arrays.asList(options.getOrDefault("scenarios", "anonymous,permitAll,jwt,invalidToken").split(","));
+        File reportDir = new File(options.getOrDefault("report-dir",
+                "target/loadtest-reports/" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date())));
+
+        List<String> tokens = new ArrayList<>(users);
+        Map<String, byte[]> introspections = new HashMap<>(users * 2);
+        long exp = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) + TimeUnit.HOURS.toSeconds(2);
+        for (int i = 0; i < users; i++) {
+            String userId = String.format("00000000-0000-0000-0000-%012d", i);
+            String claims = claims(userId, "user" + i, i % 10 == 0 ? "1,3" : "1", exp);
+            String token = jwt(claims);
+            tokens.add(token);
+            introspections.put(token, ("{\"active\":true," + claims.substring(1)).getBytes(StandardCharsets.UTF_8));
+        }
+        String invalidToken = jwt(claims("ffffffff-0000-0000-0000-000000000000", "revoked", "1", exp));
+
+        int redisPort = freePort();
+        RedisServer redis = new RedisServer(redisPort);
+        redis.start();
+        int threads = Math.max(16, concurrency);
+        try (StubAuthServer auth = new StubAuthServer(introspections, threads);
+             StubBackend authWebApp = new StubBackend("authWebApp", backendLatency, threads);
+             StubBackend ksfApp = new StubBackend("ksfApp", backendLatency, threads)) {
+            gatewayArgs.add("--spring.profiles.active=loadtest");
+            gatewayArgs.add("--loadtest.redis-port=" + redisPort);
+            gatewayArgs.add("--loadtest.auth-port=" + auth.port());
+            gatewayArgs.add("--loadtest.auth-web-app-port=" + authWebApp.port());
+            gatewayArgs.add("--loadtest.ksf-app-port=" + ksfApp.port());
+            ConfigurableApplicationContext gateway = new SpringApplicationBuilder(ApiGateWayZuulApplication.class)
+                    .run(gatewayArgs.toArray(new String[0]));
+            try {
+                String baseUrl = "http://127.0.0.1:" + gateway.getEnvironment().getProperty("local.server.port");
+                LoadDriver driver = new LoadDriver(baseUrl, concurrency, rate);
+                LatencyReport report = new LatencyReport(reportDir);
+                String settings = String.format("concurrency=%d rate=%s duration=%ds warmup=%ds users=%d backend-latency=%dms",
+                        concurrency, rate > 0 ? rate + "/s" : "closed-loop", TimeUnit.MILLISECONDS.toSeconds(durationMillis),
+                        TimeUnit.MILLISECONDS.toSeconds(warmupMillis), users, backendLatency);
+                System.out.println(settings);
+                System.out.println(LatencyReport.header());
+                for (Scenario scenario : scenarios(tokens, invalidToken)) {
+                    if (scenarioNames.contains(scenario.name)) {
+                        report.add(scenario.name, driver.run(scenario, warmupMillis, durationMillis));
+                    }
+                }
+                report.writeSummary(settings);
+                System.out.println("reports written to " + reportDir.getAbsolutePath());
+            } finally {
+                gateway.close();
+            }
+        } finally {
+            redis.stop();
+        }
+    }
+
+    private static List<Scenario> scenarios(List<String> tokens, String invalidToken) {
+        String invalidAuthorization = "Bearer " + invalidToken;
+        return Arrays.asList(
+                //没有Authorization请求头：资源服务认证返回401
+                new Scenario("anonymous", 401, i -> null,
+                        new Scenario.Target("authWebApp", "/authWebApp/auth/positionController/getPositionList"),
+                        new Scenario.Target("ksfApp", "/ksfApp/order/list")),
+                //放行路径：不校验token直接转发
+                new Scenario("permitAll", 200, i -> null,
+                        new Scenario.Target("authWebApp", "/authWebApp/public/dict/list"),
+                        new Scenario.Target("ksfApp", "/ksfApp/public/banner/list")),
+                //合法token：check_token（有缓存）-> AccessFilter -> 转发
+                new Scenario("jwt", 200, i -> "Bearer " + tokens.get(i % tokens.size()),
+                        new Scenario.Target("authWebApp", "/authWebApp/auth/positionController/getPositionList"),
+                        new Scenario.Target("ksfApp", "/ksfApp/order/list")),
+                //授权服务不认识的token：每次都调用check_token，返回401
+                new Scenario("invalidToken", 401, i -> invalidAuthorization,
+                        new Scenario.Target("authWebApp", "/authWebApp/auth/positionController/getPositionList"),
+                        new Scenario.Target("ksfApp", "/ksfApp/order/list")));
+    }
+
+    //授权服务签发的jwt载荷（check_token返回的也是这些字段）
+    private static String claims(String userId, String userName, String roles, long exp) {
+        Map<String, String> claims = new LinkedHashMap<>();
+        claims.put(SecurityConstants.USER_ID_IN_HEADER, "\"" + userId + "\"");
+        claims.put("user_id", "\"" + userId + "\"");
+        claims.put("user_name", "\"" + userName + "\"");
+        claims.put("roles", "\"" + roles + "\"");
+        claims.put("scope", "[\"all\",\"read\",\"write\"]");
+        claims.put("exp", String.valueOf(exp));
+        claims.put("authorities", "[\"ROLE_USER\"]");
+        claims.put("jti", "\"" + userId + "\"");
+        claims.put("client_id", "\"frontend\"");
+        StringBuilder json = new StringBuilder("{");
+        for (Map.Entry<String, String> entry : claims.entrySet()) {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append('"').append(entry.getKey()).append("\":").append(entry.getValue());
+        }
+        return json.append('}').toString();
+    }
+
+    //remote模式下网关不验签，签名段只需要格式正确
+    private static String jwt(String claims) {
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        return encoder.encodeToString("{\"alg\":\"RS256\",\"typ\":\"JWT\"}".getBytes(StandardCharsets.UTF_8))
+                + "." + encoder.encodeToString(claims.getBytes(StandardCharsets.UTF_8))
+                + "." + encoder.encodeToString(("signature-" + claims.hashCode()).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
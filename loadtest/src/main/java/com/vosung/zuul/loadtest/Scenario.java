@@ -0,0 +1,40 @@
+package com.vosung.zuul.loadtest;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * 压测场景：请求哪些路由、带什么Authorization请求头、期望的响应码
+ */
+final class Scenario {
+
+    /**
+     * 一条路由上的请求路径
+     */
+    static final class Target {
+        final String route;
+        final String path;
+
+        Target(String route, String path) {
+            this.route = route;
+            this.path = path;
+        }
+    }
+
+    final String name;
+
+    final int expectedStatus;
+
+    final List<Target> targets;
+
+    //第i个请求的Authorization请求头，null表示不带
+    final IntFunction<String> authorization;
+
+    Scenario(String name, int expectedStatus, IntFunction<String> authorization, Target... targets) {
+        this.name = name;
+        this.expectedStatus = expectedStatus;
+        this.authorization = authorization;
+        this.targets = Arrays.asList(targets);
+    }
+}
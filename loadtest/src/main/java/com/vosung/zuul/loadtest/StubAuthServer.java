@@ -0,0 +1,85 @@
+package com.vosung.zuul.loadtest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 扮演vosung-auth-server的/oauth/check_token：
+ * 已知的token返回对应用户的校验结果，其余返回400 invalid_token（与授权服务一致）
+ */
+final class StubAuthServer implements AutoCloseable {
+
+    private static final byte[] INVALID_TOKEN =
+            "{\"error\":\"invalid_token\",\"error_description\":\"Token was not recognised\"}".getBytes(StandardCharsets.UTF_8);
+
+    private final HttpServer server;
+
+    private final ExecutorService executor;
+
+    //token -> check_token返回的json
+    private final Map<String, byte[]> introspections;
+
+    StubAuthServer(Map<String, byte[]> introspections, int threads) throws IOException {
+        this.introspections = introspections;
+        this.executor = Executors.newFixedThreadPool(threads);
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        this.server.createContext("/oauth/check_token", this::checkToken);
+        this.server.setExecutor(executor);
+        this.server.start();
+    }
+
+    int port() {
+        return server.getAddress().getPort();
+    }
+
+    private void checkToken(HttpExchange exchange) throws IOException {
+        byte[] body = introspections.get(token(readBody(exchange.getRequestBody())));
+        int status = body == null ? 400 : 200;
+        if (body == null) {
+            body = INVALID_TOKEN;
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json;charset=UTF-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    //表单 token=xxx
+    private static String token(String form) throws IOException {
+        for (String pair : form.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0 && "token".equals(pair.substring(0, eq))) {
+                return URLDecoder.decode(pair.substring(eq + 1), "UTF-8");
+            }
+        }
+        return "";
+    }
+
+    private static String readBody(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(1024);
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = in.read(buffer)) > 0) {
+            out.write(buffer, 0, read);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
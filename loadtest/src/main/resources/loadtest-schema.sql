@@ -0,0 +1,9 @@
+-- 压测用的角色表（角色3为系统管理员）
+CREATE TABLE IF NOT EXISTS T_AU_ROLE (
+  id INT PRIMARY KEY,
+  role_code VARCHAR(64),
+  role_name VARCHAR(64)
+);
+MERGE INTO T_AU_ROLE (id, role_code, role_name) KEY (id) VALUES (1, 'USER', '普通用户');
+MERGE INTO T_AU_ROLE (id, role_code, role_name) KEY (id) VALUES (3, 'SYS_ADMIN', '系统管理员');
+MERGE INTO T_AU_ROLE (id, role_code, role_name) KEY (id) VALUES (7, 'AUDITOR', '审计');
@@ -6,6 +6,7 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.cloud.client.discovery.EnableDiscoveryClient;
 import org.springframework.cloud.netflix.zuul.EnableZuulProxy;
 import org.springframework.context.annotation.Bean;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 /**
  * zuul 集成了ribbon和hystrix（拥有线程隔离和断路器的自我保护功能，以及对服务调用的客户端负载均衡功能）
@@ -13,6 +14,7 @@ import org.springframework.context.annotation.Bean;
  * path/url 路由格式没有线程隔离和断路器保护，也没有负载均衡的能力
  */
 @EnableZuulProxy
+@EnableScheduling
 @EnableDiscoveryClient
 @SpringBootApplication
 public class ApiGateWayZuulApplication {
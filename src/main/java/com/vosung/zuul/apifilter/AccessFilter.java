@@ -1,30 +1,26 @@
 package com.vosung.zuul.apifilter;
 
-import com.vosung.zuul.constants.RedisUtil;
+import com.vosung.zuul.cache.RoleRegistry;
+import com.vosung.zuul.cache.UserContextStore;
 import com.vosung.zuul.constants.SecurityConstants;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vosung.zuul.metrics.AccessLog;
 import com.netflix.zuul.ZuulFilter;
 import com.netflix.zuul.context.RequestContext;
 import com.netflix.zuul.exception.ZuulException;
 import com.vosung.zuul.properties.PermitAllUrlProperties;
-import com.vosung.zuul.vo.RoleVo;
+import com.vosung.zuul.apifilter.JwtClaimsExtractor.JwtClaims;
+import com.vosung.zuul.route.RequestPaths;
+import com.vosung.zuul.route.RouteResolver;
+import com.vosung.zuul.vo.UserContext;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.lang.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cloud.netflix.zuul.filters.Route;
-import org.springframework.cloud.netflix.zuul.filters.SimpleRouteLocator;
-import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.core.RowMapper;
-import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.provider.authentication.OAuth2AuthenticationDetails;
 
 import javax.servlet.http.HttpServletRequest;
-import java.sql.ResultSet;
-import java.sql.SQLException;
-import java.util.Arrays;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
 
 /**
  * Zuul 请求过滤(配置过滤器)
@@ -35,20 +31,16 @@ import java.util.Map;
 public class AccessFilter extends ZuulFilter {
 
     @Autowired
-    public SimpleRouteLocator simpleRouteLocator;
+    private RouteResolver routeResolver;
     @Autowired
     private PermitAllUrlProperties permitAllUrlProperties;
     @Autowired
-    private RedisUtil redisUtil;
+    private RoleRegistry roleRegistry;
     @Autowired
-    private JdbcTemplate jdbcTemplate;
+    private UserContextStore userContextStore;
 
     private static final String ANONYMOUS_USER_ID = "d4a65d04-a5a3-465c-8408-405971ac3346";
 
-    private static final String USER_HOLDER = "UserHolder";
-    //系统管理员角色code
-    private static final String SYS_ADMIN ="SYS_ADMIN";
-
     /**
      * 过滤器类型:决定过滤器在请求的那个生命周期执行，这里定义为pre 代表请求会在路由之前执行
      * @return
@@ -82,18 +74,21 @@ public class AccessFilter extends ZuulFilter {
 
         RequestContext requestContext = RequestContext.getCurrentContext();
         HttpServletRequest request = requestContext.getRequest();
-        //请求路径
-        String actualPath = getUri(request.getRequestURI());
-        //转发目标地址
-        String targetLocation = getTargetLocation(request.getRequestURI());
-        log.info("actualPath: {}",actualPath);
-        log.info("targetLocation: {}",targetLocation);
-        //登录请求和转发到授权认证服务的不需要过滤
-        if(targetLocation.equals("vosung-auth-server") && (actualPath.equals("/oauth/token"))){
-            return false;
+        //当前请求匹配的路由（每个请求只匹配一次，结果保存在RequestContext中）
+        Route route = routeResolver.currentRoute();
+        if (route != null) {
+            //请求路径
+            String actualPath = route.getPath();
+            //转发目标地址
+            String targetLocation = route.getLocation();
+            //登录请求和转发到授权认证服务的不需要过滤
+            if(SecurityConstants.AUTH_SERVICE.equals(targetLocation) && "/oauth/token".equals(actualPath)){
+                return false;
+            }
         }
         //配置不需要走资源服务认证的------但是如果有authorization请求头，会先调check_token,所以配置的请求不要携带该请求头
-        if(isPermitAllUrl(request.getRequestURI())){
+        //和security过滤器链使用同一个路径（RequestPaths），两处的放行判断保持一致
+        if(isPermitAllUrl(RequestPaths.pathWithinApplication(request))){
             return false;
         }
         return true;
@@ -102,7 +97,7 @@ public class AccessFilter extends ZuulFilter {
     /**
      * 操作请求从客户端
      * （1）会先去我们CustomRemoteTokenServices重写的loadAuthentication，实现token的校验以及用户信息转换，
-     * （2）而后在执行此过滤器。
+     * （2）而后在执行此过滤器，直接使用第一步得到的用户信息（UserContext），不再重复解析token。
      * 过滤器的具体逻辑----过滤之后就会根据路由转发具体的服务（授权认证/请求资源）
      * @return
      * @throws ZuulException
@@ -112,51 +107,30 @@ public class AccessFilter extends ZuulFilter {
         //通过请求上下文获取请求信息
         RequestContext ctx = RequestContext.getCurrentContext();
         HttpServletRequest request = ctx.getRequest();
-        log.info("send {} request to {}",request.getMethod(),request.getRequestURL().toString());
+        //每个请求的访问记录由AccessLog统一输出（异步、抽样），这里不再逐行打印
         String authorization = request.getHeader("Authorization");
-        String url = request.getRequestURI();
         if (StringUtils.isNotEmpty(authorization)) {
             // 判断是否是jwt token，是的话就会请求对应服务，业务服务调对应拦截器（这里对用户信息封装，便于拦截器获取）
             if (isJwtBearerToken(authorization)) {
-                try {
-                    authorization = StringUtils.substringBetween(authorization, ".");
-                    String decoded = new String(Base64.decodeBase64(authorization));
-                    Map properties = new ObjectMapper().readValue(decoded, Map.class);
-                    String userId = (String) properties.get(SecurityConstants.USER_ID_IN_HEADER);
-                    String userName = (String)properties.get("user_name");
-                    String roles = (String)properties.get("roles");
-                    String isSuperAdmin = "false";
-                    NamedParameterJdbcTemplate namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
-                    String sql = "select * from T_AU_ROLE where id in (:roles)";
-                    Map<String,Object> paramMap = new HashMap<String, Object>();
-                    paramMap.put("roles", Arrays.asList(roles.split(",")));
-                    List<RoleVo> roleVoList = namedParameterJdbcTemplate.query(sql,paramMap,new RoleRowMapper());
-                    for (RoleVo roleVo: roleVoList) {
-                        //如果用户角色是系统管理员
-                        if(roleVo.getRoleCode().equalsIgnoreCase(SYS_ADMIN)){
-                            isSuperAdmin = "true";
-                        }
-                    }
-                    if(userId != redisUtil.hget(USER_HOLDER,"userId")){
-                        Map<String, Object> map = new HashMap<>();
-                        map.put("userId",userId);
-                        map.put("userName",userName);
-                        map.put("roles",roles);
-                        map.put("isSuperAdmin",isSuperAdmin);
-                        redisUtil.hmset(USER_HOLDER,map);
-                    }
+                //token校验阶段已经解析好的用户信息，没有时（如未经过资源服务认证）再解析jwt载荷
+                UserContext userContext = currentUserContext();
+                if (userContext == null) {
+                    userContext = decodeUserContext(authorization);
+                }
+                if (userContext == null) {
+                    log.error("Failed to customize header for the request, but still release it as the it would be regarded without any user details.");
+                } else {
+                    //按用户写入redis（user:ctx:{userId}），内容没变时不重复写，写操作由后台线程完成
+                    userContextStore.save(userContext);
                     //将用户信息封装到请求头中，后面可以在request中获取部分用户信息
-                    ctx.addZuulRequestHeader("userId", userId);
-                    ctx.addZuulRequestHeader("username", userName);
-                    ctx.addZuulRequestHeader("roles", roles);
-                } catch (Exception e) {
-                    e.printStackTrace();
-                    log.error("Failed to customize header for the request, but still release it as the it would be regarded without any user details.", e);
+                    ctx.addZuulRequestHeader("userId", userContext.getUserId());
+                    ctx.addZuulRequestHeader("username", userContext.getUserName());
+                    ctx.addZuulRequestHeader("roles", userContext.getRoles());
+                    request.setAttribute(AccessLog.USER_ATTRIBUTE, userContext.getUserId());
                 }
             }
         } else {
             //错误的请求，塞一个假的用户信息id
-            log.info("Regard this request as anonymous request, so set anonymous user_id in the header.");
             RequestContext.getCurrentContext().addZuulRequestHeader(SecurityConstants.USER_ID_IN_HEADER, ANONYMOUS_USER_ID);
             //过滤该请求，不进行路由
             ctx.setSendZuulResponse(false);
@@ -165,10 +139,39 @@ public class AccessFilter extends ZuulFilter {
             ctx.getResponse().setCharacterEncoding("utf-8");
             ctx.setResponseBody("您无权访问！");
         }
-        log.info("access is ok");
         return null;
     }
 
+    /**
+     * 当前请求的用户主体：OAuth2AuthenticationProcessingFilter通过CustomRemoteTokenServices校验token时生成
+     * @return
+     */
+    private UserContext currentUserContext() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.getDetails() instanceof OAuth2AuthenticationDetails) {
+            Object decodedDetails = ((OAuth2AuthenticationDetails) authentication.getDetails()).getDecodedDetails();
+            if (decodedDetails instanceof UserContext) {
+                return (UserContext) decodedDetails;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 只解码jwt的payload段并流式读取需要的字段（不创建ObjectMapper和整段Map）
+     * @param authorization
+     * @return
+     */
+    private UserContext decodeUserContext(String authorization) {
+        JwtClaims claims = JwtClaimsExtractor.extract(authorization);
+        if (claims == null) {
+            return null;
+        }
+        //角色从内存快照判断，不再每次查询T_AU_ROLE
+        return new UserContext(claims.getUserId(), claims.getUserName(), claims.getRoles(),
+                roleRegistry.isSuperAdmin(claims.getRoles()));
+    }
+
     /**
      * 验证token需要修改（缓存验证）----check_token 那边会调用我们实现的方法，做相关的redis缓存校验
      * @param token
@@ -178,32 +181,7 @@ public class AccessFilter extends ZuulFilter {
         return StringUtils.countMatches(token, ".") == 2 && (token.startsWith("Bearer") || token.startsWith("bearer"));
     }
 
-    //获取请求转发路径path
-    private String getUri(String requestUri) {
-        Route route = simpleRouteLocator.getMatchingRoute(requestUri);
-        return route.getPath();
-    }
-    //获取路由转发对应的服务名
-    private String getTargetLocation(String requestUri) {
-        Route route = simpleRouteLocator.getMatchingRoute(requestUri);
-        return route.getLocation();
-    }
-
     private boolean isPermitAllUrl(String url) {
         return permitAllUrlProperties.isPermitAllUrl(url);
     }
-
-    /**
-     * 点位表字段和值对象映射关系
-     */
-    public class RoleRowMapper implements RowMapper<RoleVo> {
-        @Override
-        public RoleVo mapRow(ResultSet resultSet, int i) throws SQLException {
-            RoleVo roleVo = new RoleVo();
-            roleVo.setId(resultSet.getInt("id"));
-            roleVo.setRoleCode(resultSet.getString("role_code"));
-            roleVo.setRoleName(resultSet.getString("role_name"));
-            return roleVo;
-        }
-    }
 }
@@ -0,0 +1,189 @@
+package com.vosung.zuul.apifilter;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.vosung.zuul.constants.SecurityConstants;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * JWT载荷解析：只取网关需要的几个字段（用户id、用户名、角色）
+ * payload段直接按base64url解码到线程复用的缓冲区，再用共享JsonFactory创建的流式JsonParser逐个字段读取，
+ * 不创建ObjectMapper、不生成整段JSON字符串和Map
+ * 注意：这里不校验签名，只用于AccessFilter在token校验阶段没有生成UserContext时的回退解析，
+ * 不要用于鉴权、限流等需要可信身份的场景（载荷可以伪造）
+ */
+public final class JwtClaimsExtractor {
+
+    private static final String USER_ID = "user_id";
+
+    private static final String USER_NAME = "user_name";
+
+    private static final String ROLES = "roles";
+
+    private static final String CLIENT_ID = "client_id";
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private static final ThreadLocal<byte[]> BUFFER = ThreadLocal.withInitial(() -> new byte[1024]);
+
+    //base64和base64url两种字母表都支持，非法字符为-1
+    private static final byte[] DECODE_TABLE = new byte[128];
+
+    static {
+        Arrays.fill(DECODE_TABLE, (byte) -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
+        for (int i = 0; i < alphabet.length(); i++) {
+            DECODE_TABLE[alphabet.charAt(i)] = (byte) i;
+        }
+        DECODE_TABLE['+'] = 62;
+        DECODE_TABLE['-'] = 62;
+        DECODE_TABLE['/'] = 63;
+        DECODE_TABLE['_'] = 63;
+    }
+
+    private JwtClaimsExtractor() {
+    }
+
+    /**
+     * @param authorization Authorization请求头（Bearer xxx.yyy.zzz）或者token本身
+     * @return 解析失败（不是三段式jwt、base64或json格式错误）时返回null
+     */
+    public static JwtClaims extract(String authorization) {
+        if (authorization == null) {
+            return null;
+        }
+        int first = authorization.indexOf('.');
+        int second = first < 0 ? -1 : authorization.indexOf('.', first + 1);
+        if (second < 0) {
+            return null;
+        }
+        byte[] buffer = BUFFER.get();
+        int capacity = (second - first - 1) * 3 / 4 + 3;
+        if (buffer.length < capacity) {
+            buffer = new byte[Math.max(capacity, buffer.length * 2)];
+            BUFFER.set(buffer);
+        }
+        int length = decode(authorization, first + 1, second, buffer);
+        if (length < 0) {
+            return null;
+        }
+        try {
+            return parse(buffer, length);
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static JwtClaims parse(byte[] buffer, int length) throws IOException {
+        String userId = null;
+        String legacyUserId = null;
+        String userName = null;
+        String roles = null;
+        String clientId = null;
+        try (JsonParser parser = JSON_FACTORY.createParser(buffer, 0, length)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if (SecurityConstants.USER_ID_IN_HEADER.equals(name)) {
+                    legacyUserId = textOf(parser, value);
+                } else if (USER_ID.equals(name)) {
+                    userId = textOf(parser, value);
+                } else if (USER_NAME.equals(name)) {
+                    userName = textOf(parser, value);
+                } else if (ROLES.equals(name)) {
+                    roles = textOf(parser, value);
+                } else if (CLIENT_ID.equals(name)) {
+                    clientId = textOf(parser, value);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return new JwtClaims(legacyUserId != null ? legacyUserId : userId, userName, roles, clientId);
+    }
+
+    //字符串、数字直接取值；数组按逗号拼接（roles既可能是"1,2"也可能是[1,2]）
+    private static String textOf(JsonParser parser, JsonToken value) throws IOException {
+        if (value == JsonToken.VALUE_STRING || value.isNumeric()) {
+            return parser.getText();
+        }
+        if (value == JsonToken.START_ARRAY) {
+            StringBuilder builder = new StringBuilder();
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                if (builder.length() > 0) {
+                    builder.append(',');
+                }
+                builder.append(parser.getText());
+            }
+            return builder.toString();
+        }
+        parser.skipChildren();
+        return null;
+    }
+
+    /**
+     * base64url解码 source[from, to) 到buffer，忽略末尾的'='
+     * @return 解码后的字节数，非法字符返回-1
+     */
+    private static int decode(String source, int from, int to, byte[] buffer) {
+        int bits = 0;
+        int bitCount = 0;
+        int length = 0;
+        for (int i = from; i < to; i++) {
+            char c = source.charAt(i);
+            if (c == '=') {
+                break;
+            }
+            int value = c < 128 ? DECODE_TABLE[c] : -1;
+            if (value < 0) {
+                return -1;
+            }
+            bits = (bits << 6) | value;
+            bitCount += 6;
+            if (bitCount >= 8) {
+                bitCount -= 8;
+                buffer[length++] = (byte) (bits >> bitCount);
+            }
+        }
+        return length;
+    }
+
+    /**
+     * 网关需要的jwt字段
+     */
+    public static final class JwtClaims {
+        private final String userId;
+        private final String userName;
+        private final String roles;
+        private final String clientId;
+
+        public JwtClaims(String userId, String userName, String roles, String clientId) {
+            this.userId = userId;
+            this.userName = userName;
+            this.roles = roles;
+            this.clientId = clientId;
+        }
+
+        public String getUserId() {
+            return userId;
+        }
+
+        public String getUserName() {
+            return userName;
+        }
+
+        public String getRoles() {
+            return roles;
+        }
+
+        public String getClientId() {
+            return clientId;
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package com.vosung.zuul.cache;
+
+import com.vosung.zuul.constants.RedisUtil;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scripting.support.ResourceScriptSource;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 两级计数器（配额、用量统计、路由统计等）：
+ * 请求线程只累加本地的LongAdder（分段计数，无锁），后台线程按 gateway.counters.flush-interval
+ * 把各key的增量用lua脚本批量INCRBY到redis（新建的key在同一个脚本中设置过期时间），同时取回集群的全局总数；
+ * 读取时返回 最近一次同步的全局总数 + 本地还没同步的增量。
+ * 精度取决于同步间隔和 sync-threshold（本地某个key未同步的增量达到该值时提前同步），
+ * 其他节点的增量最多延迟一个同步周期可见。redis写失败时增量保留在本地，下次同步重试。
+ * 本地计数只累加不清零（LongAdder.sumThenReset在并发写入时会丢增量），后台线程记录已经同步的部分，每次同步差值
+ */
+@Slf4j
+@Component
+public class DistributedCounters {
+
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> FLUSH_SCRIPT = script();
+
+    //一次脚本调用最多同步的key数，避免单个脚本长时间占用redis
+    private static final int KEYS_PER_SCRIPT = 500;
+
+    private final RedisUtil redisUtil;
+
+    private final long flushIntervalNanos;
+
+    private final long syncThreshold;
+
+    private final long idleTimeoutMillis;
+
+    private final ConcurrentMap<String, Slot> slots = new ConcurrentHashMap<>();
+
+    //已经移除、但移除之后仍被写入的slot，下次同步时补上
+    private final Queue<Slot> lateSlots = new ConcurrentLinkedQueue<>();
+
+    private final Counter flushes;
+
+    private final Counter failures;
+
+    private volatile boolean running = true;
+
+    private Thread flusher;
+
+    public DistributedCounters(RedisUtil redisUtil, MeterRegistry meterRegistry,
+                               @Value("${gateway.counters.flush-interval:200}") long flushIntervalMillis,
+                               @Value("${gateway.counters.sync-threshold:1000}") long syncThreshold,
+                               @Value("${gateway.counters.idle-timeout:60000}") long idleTimeoutMillis) {
+        this.redisUtil = redisUtil;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        this.syncThreshold = syncThreshold;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.flushes = Counter.builder("gateway.counters.flush").tag("result", "success").register(meterRegistry);
+        this.failures = Counter.builder("gateway.counters.flush").tag("result", "failure").register(meterRegistry);
+        Gauge.builder("gateway.counters.keys", slots, Map::size).register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        flusher = new Thread(this::run, "distributed-counters");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(flusher);
+        flusher.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    /**
+     * 累加计数，不访问redis
+     * @param key redis中的key
+     * @param delta 增量
+     * @param ttlSeconds key第一次创建时设置的过期时间（秒），<= 0 表示不过期
+     * @return 累加后的估计全局总数
+     */
+    public long add(String key, long delta, long ttlSeconds) {
+        Slot slot = slot(key, ttlSeconds);
+        slot.pending.add(delta);
+        if (slot.retired) {
+            //flush移除该slot时恰好写入（写入之前取到的slot），交给下一次同步
+            lateSlots.add(slot);
+        }
+        slot.touch();
+        long pending = slot.unsynced();
+        if (pending >= syncThreshold || -pending >= syncThreshold) {
+            LockSupport.unpark(flusher);
+        }
+        return slot.global + pending;
+    }
+
+    public long increment(String key, long ttlSeconds) {
+        return add(key, 1, ttlSeconds);
+    }
+
+    /**
+     * 估计的全局总数；第一次读取的key从下一次同步开始跟踪redis中的值
+     * @param key
+     * @return
+     */
+    public long get(String key) {
+        Slot slot = slot(key, 0);
+        slot.touch();
+        return slot.global + slot.unsynced();
+    }
+
+    /**
+     * 立即同步一次（测试和停机时使用）
+     */
+    public synchronized void flush() {
+        //slot没有重写equals，按对象去重（移除后又写入的slot可能同时在lateSlots中）
+        Set<Slot> candidates = new LinkedHashSet<>();
+        for (Slot late = lateSlots.poll(); late != null; late = lateSlots.poll()) {
+            candidates.add(late);
+        }
+        long idleBefore = System.currentTimeMillis() - idleTimeoutMillis;
+        for (Iterator<Slot> iterator = slots.values().iterator(); iterator.hasNext(); ) {
+            Slot slot = iterator.next();
+            if (slot.touched < idleBefore && slot.unsynced() == 0) {
+                //长时间没有访问的key不再跟踪（之后再访问时重新创建）。先标记再移除：
+                //标记之前的写入在下面读到并同步，读不到的写入一定看得到标记，由写入线程放入lateSlots
+                slot.retired = true;
+                iterator.remove();
+                if (slot.unsynced() == 0) {
+                    continue;
+                }
+            }
+            candidates.add(slot);
+        }
+        List<Slot> batch = new ArrayList<>(candidates.size());
+        long[] sums = new long[candidates.size()];
+        long[] deltas = new long[candidates.size()];
+        for (Slot slot : candidates) {
+            long sum = slot.pending.sum();
+            //已移除的slot只需要同步增量
+            if (slot.retired && sum == slot.synced) {
+                continue;
+            }
+            sums[batch.size()] = sum;
+            deltas[batch.size()] = sum - slot.synced;
+            batch.add(slot);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        boolean failed = false;
+        for (int from = 0; from < batch.size(); from += KEYS_PER_SCRIPT) {
+            int to = Math.min(from + KEYS_PER_SCRIPT, batch.size());
+            if (!sync(batch, sums, deltas, from, to)) {
+                failed = true;
+            }
+        }
+        if (failed) {
+            failures.increment();
+        } else {
+            flushes.increment();
+        }
+    }
+
+    //同步batch中[from, to)的slot，失败时不记录已同步的部分，下次重试
+    private boolean sync(List<Slot> batch, long[] sums, long[] deltas, int from, int to) {
+        List<String> keys = new ArrayList<>(to - from);
+        Object[] args = new Object[(to - from) * 2];
+        for (int i = from; i < to; i++) {
+            Slot slot = batch.get(i);
+            keys.add(slot.key);
+            args[(i - from) * 2] = deltas[i];
+            args[(i - from) * 2 + 1] = slot.ttlSeconds;
+        }
+        List<?> totals = redisUtil.execute(FLUSH_SCRIPT, keys, args);
+        if (totals == null || totals.size() != keys.size()) {
+            //已移除的slot不在slots中，重新放回lateSlots
+            for (int i = from; i < to; i++) {
+                if (batch.get(i).retired) {
+                    lateSlots.add(batch.get(i));
+                }
+            }
+            return false;
+        }
+        for (int i = from; i < to; i++) {
+            Slot slot = batch.get(i);
+            //先记录已同步的部分再更新总数，读取时短暂偏小而不是重复计算
+            slot.synced = sums[i];
+            slot.global = toLong(totals.get(i - from));
+        }
+        return true;
+    }
+
+    private Slot slot(String key, long ttlSeconds) {
+        Slot slot = slots.get(key);
+        return slot != null ? slot : slots.computeIfAbsent(key, k -> new Slot(k, ttlSeconds));
+    }
+
+    private void run() {
+        while (running) {
+            LockSupport.parkNanos(flushIntervalNanos);
+            try {
+                flush();
+            } catch (RuntimeException e) {
+                failures.increment();
+                log.warn("failed to sync counters to redis: {}", e.getMessage());
+            }
+        }
+        flush();
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static RedisScript<List> script() {
+        DefaultRedisScript<List> script = new DefaultRedisScript<>();
+        script.setScriptSource(new ResourceScriptSource(new ClassPathResource("scripts/counters_flush.lua")));
+        script.setResultType(List.class);
+        return script;
+    }
+
+    private static long toLong(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        return value == null ? 0 : Long.parseLong(value.toString());
+    }
+
+    private static final class Slot {
+        private final String key;
+        private final long ttlSeconds;
+        //本地累计的全部增量（只增不清零）
+        private final LongAdder pending = new LongAdder();
+        //pending中已经同步到redis的部分，只由flush修改
+        private volatile long synced;
+        //最近一次同步得到的全局总数
+        private volatile long global;
+        //已从slots中移除
+        private volatile boolean retired;
+        private volatile long touched = System.currentTimeMillis();
+
+        private Slot(String key, long ttlSeconds) {
+            this.key = key;
+            this.ttlSeconds = ttlSeconds;
+        }
+
+        private long unsynced() {
+            return pending.sum() - synced;
+        }
+
+        //热点key上每次请求都写volatile字段会造成缓存行争用，一秒内只更新一次
+        private void touch() {
+            long now = System.currentTimeMillis();
+            if (now - touched > 1000) {
+                touched = now;
+            }
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.vosung.zuul.cache;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * 动态网关配置端点：GET /actuator/gatewayconfig 查看当前生效的版本、放行路径和动态路由，
+ * POST /actuator/gatewayconfig 立即重新加载（不比较版本号）
+ */
+@Component
+@Endpoint(id = "gatewayconfig")
+public class GatewayConfigEndpoint {
+
+    private final GatewayConfigRegistry gatewayConfigRegistry;
+
+    public GatewayConfigEndpoint(GatewayConfigRegistry gatewayConfigRegistry) {
+        this.gatewayConfigRegistry = gatewayConfigRegistry;
+    }
+
+    @ReadOperation
+    public Map<String, Object> config() {
+        return gatewayConfigRegistry.describe();
+    }
+
+    @WriteOperation
+    public Map<String, Object> reload() {
+        gatewayConfigRegistry.reload(true);
+        return gatewayConfigRegistry.describe();
+    }
+}
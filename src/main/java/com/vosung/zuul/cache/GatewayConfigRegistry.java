@@ -0,0 +1,175 @@
+package com.vosung.zuul.cache;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vosung.zuul.constants.RedisUtil;
+import com.vosung.zuul.properties.PermitAllUrlProperties;
+import com.vosung.zuul.route.DynamicRouteLocator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cloud.netflix.zuul.RoutesRefreshedEvent;
+import org.springframework.cloud.netflix.zuul.filters.ZuulProperties.ZuulRoute;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * 动态网关配置（不重启即可修改放行路径和路由）
+ * redis中：
+ *   gateway:config:permitall  set   放行路径（在auth.permitall基础上追加）
+ *   gateway:config:routes     hash  路由id -> 路由json，如 {"path":"/ksfApp/**","serviceId":"ksf-app"}
+ *   gateway:config:version    string 修改上面两项后修改版本号，网关定时比较版本号，变化时整体重新加载
+ * 每次加载都先完整解析成新的不可变快照，有任何错误则保留旧配置；
+ * 放行路径编译后整体替换，路由设置后发布RoutesRefreshedEvent由zuul整体替换路由表，请求不会读到一半的配置
+ */
+@Slf4j
+@Component
+public class GatewayConfigRegistry {
+
+    public static final String VERSION_KEY = "gateway:config:version";
+
+    public static final String PERMIT_ALL_KEY = "gateway:config:permitall";
+
+    public static final String ROUTES_KEY = "gateway:config:routes";
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    @Autowired
+    private RedisUtil redisUtil;
+
+    @Autowired
+    private PermitAllUrlProperties permitAllUrlProperties;
+
+    @Autowired
+    private DynamicRouteLocator dynamicRouteLocator;
+
+    @Autowired
+    private ApplicationEventPublisher publisher;
+
+    private volatile Snapshot snapshot = new Snapshot(null, Collections.emptyList(), Collections.emptyMap());
+
+    //启动阶段@EventListener还没有注册，直接刷新路由，不发布事件
+    private boolean started;
+
+    @PostConstruct
+    public void init() {
+        reload(true);
+        started = true;
+    }
+
+    /**
+     * 检查版本号，有变化时重新加载
+     * 检查间隔：gateway.dynamic-config.refresh-interval（毫秒，默认10秒）
+     */
+    @Scheduled(initialDelayString = "${gateway.dynamic-config.refresh-interval:10000}",
+            fixedDelayString = "${gateway.dynamic-config.refresh-interval:10000}")
+    public void refresh() {
+        reload(false);
+    }
+
+    /**
+     * @param force 不比较版本号，直接重新加载
+     */
+    public synchronized void reload(boolean force) {
+        Snapshot current = snapshot;
+        try {
+            Object version = redisUtil.get(VERSION_KEY);
+            String newVersion = version == null ? null : version.toString();
+            if (!force && Objects.equals(newVersion, current.version)) {
+                return;
+            }
+            Snapshot loaded = load(newVersion);
+            if (!loaded.permitAll.equals(current.permitAll)) {
+                permitAllUrlProperties.refresh(loaded.permitAll);
+            }
+            if (!loaded.routes.equals(current.routes)) {
+                dynamicRouteLocator.setDynamicRoutes(loaded.routes);
+                if (started) {
+                    publisher.publishEvent(new RoutesRefreshedEvent(dynamicRouteLocator));
+                } else {
+                    dynamicRouteLocator.refresh();
+                }
+            }
+            snapshot = loaded;
+            log.info("gateway config version {} loaded: {} permit-all patterns, {} routes",
+                    newVersion, loaded.permitAll.size(), loaded.routes.size());
+        } catch (Exception e) {
+            log.error("Failed to load gateway config, keep the previous version {}.", current.version, e);
+        }
+    }
+
+    public Map<String, Object> describe() {
+        Snapshot current = snapshot;
+        Map<String, Object> description = new LinkedHashMap<>();
+        description.put("version", current.version);
+        description.put("permitAll", current.permitAll);
+        description.put("effectivePermitAll", permitAllUrlProperties.getEffectivePatterns());
+        description.put("routes", current.routes);
+        return description;
+    }
+
+    private Snapshot load(String version) throws IOException {
+        Set<Object> members = redisUtil.sGet(PERMIT_ALL_KEY);
+        if (members == null) {
+            throw new IllegalStateException("Failed to read " + PERMIT_ALL_KEY);
+        }
+        List<String> permitAll = new ArrayList<>(members.size());
+        for (Object member : members) {
+            if (member != null && StringUtils.hasText(member.toString())) {
+                permitAll.add(member.toString().trim());
+            }
+        }
+        //set无序，排序后比较和编译
+        Collections.sort(permitAll);
+        Map<String, ZuulRoute> routes = new LinkedHashMap<>();
+        //按路由id排序，保证每次加载的路由顺序一致（路径有重叠时靠前的优先）
+        for (Map.Entry<String, Object> entry : sortById(redisUtil.hmget(ROUTES_KEY)).entrySet()) {
+            String id = entry.getKey();
+            ZuulRoute route = objectMapper.readValue(entry.getValue().toString(), ZuulRoute.class);
+            route.setId(id);
+            if (!StringUtils.hasText(route.getPath())) {
+                throw new IllegalArgumentException("Route " + id + " has no path");
+            }
+            if (!StringUtils.hasText(route.getServiceId()) && !StringUtils.hasText(route.getUrl())) {
+                throw new IllegalArgumentException("Route " + id + " has neither serviceId nor url");
+            }
+            routes.put(id, route);
+        }
+        return new Snapshot(version, permitAll, routes);
+    }
+
+    private static Map<String, Object> sortById(Map<Object, Object> entries) {
+        Map<String, Object> sorted = new TreeMap<>();
+        if (entries != null) {
+            for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+                sorted.put(entry.getKey().toString(), entry.getValue());
+            }
+        }
+        return sorted;
+    }
+
+    private static final class Snapshot {
+        private final String version;
+        private final List<String> permitAll;
+        private final Map<String, ZuulRoute> routes;
+
+        private Snapshot(String version, List<String> permitAll, Map<String, ZuulRoute> routes) {
+            this.version = version;
+            this.permitAll = Collections.unmodifiableList(permitAll);
+            this.routes = Collections.unmodifiableMap(routes);
+        }
+    }
+}
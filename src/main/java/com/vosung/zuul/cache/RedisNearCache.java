@@ -0,0 +1,272 @@
+package com.vosung.zuul.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.vosung.zuul.properties.NearCacheProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * RedisUtil读操作（get/hget/hmget）的本地缓存（gateway.near-cache）：
+ * 容量有上限，缓存时间按key前缀配置；通过RedisUtil的写操作会先失效本地缓存，
+ * 再通过redis pub/sub通知其他网关节点失效同一个key（消息内容：节点id + 换行分隔的key）。
+ * 其他服务直接写redis、或订阅连接断开期间丢失的通知，最多在缓存时间之后恢复一致。
+ * 从redis读取期间key被失效时，读到的值不再放入缓存（缓存项被替换，按引用判断）
+ */
+@Slf4j
+@Component
+public class RedisNearCache {
+
+    private final NearCacheProperties properties;
+
+    private final RedisConnectionFactory connectionFactory;
+
+    //按长度从长到短，取最长匹配的前缀
+    private final List<Map.Entry<String, Long>> prefixes;
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final Cache<String, Entry> cache;
+
+    private final Counter hits;
+
+    private final Counter misses;
+
+    private final Counter localInvalidations;
+
+    private final Counter remoteInvalidations;
+
+    private StringRedisTemplate publisher;
+
+    private RedisMessageListenerContainer container;
+
+    public RedisNearCache(NearCacheProperties properties, RedisConnectionFactory connectionFactory,
+                          MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.connectionFactory = connectionFactory;
+        List<Map.Entry<String, Long>> sorted = new ArrayList<>();
+        for (Map.Entry<String, Duration> entry : properties.getTtl().entrySet()) {
+            long ttlNanos = entry.getValue() == null ? 0 : entry.getValue().toNanos();
+            sorted.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), ttlNanos));
+        }
+        sorted.sort((a, b) -> b.getKey().length() - a.getKey().length());
+        this.prefixes = Collections.unmodifiableList(sorted);
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(properties.getMaximumSize())
+                .expireAfter(new Expiry<String, Entry>() {
+                    @Override
+                    public long expireAfterCreate(String key, Entry value, long currentTime) {
+                        return value.ttlNanos;
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, Entry value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, Entry value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+        this.hits = Counter.builder("gateway.nearcache.requests").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("gateway.nearcache.requests").tag("result", "miss").register(meterRegistry);
+        this.localInvalidations = Counter.builder("gateway.nearcache.invalidations").tag("source", "local").register(meterRegistry);
+        this.remoteInvalidations = Counter.builder("gateway.nearcache.invalidations").tag("source", "remote").register(meterRegistry);
+        Gauge.builder("gateway.nearcache.size", cache, Cache::estimatedSize).register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!isEnabled()) {
+            return;
+        }
+        publisher = new StringRedisTemplate(connectionFactory);
+        container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(this::onMessage, new ChannelTopic(properties.getChannel()));
+        container.afterPropertiesSet();
+        container.start();
+        log.info("redis near cache enabled for prefixes {}", properties.getTtl().keySet());
+    }
+
+    @PreDestroy
+    public void stop() throws Exception {
+        if (container != null) {
+            container.destroy();
+        }
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled() && !prefixes.isEmpty();
+    }
+
+    /**
+     * @param loader 缓存中没有时从redis读取
+     */
+    public Object get(String key, Supplier<Object> loader) {
+        Entry entry = entry(key);
+        if (entry == null) {
+            return loader.get();
+        }
+        Object value = entry.value;
+        if (value != null) {
+            hits.increment();
+            return value;
+        }
+        misses.increment();
+        value = loader.get();
+        if (value != null && isCurrent(key, entry)) {
+            entry.value = value;
+        }
+        return value;
+    }
+
+    public Object hget(String key, String item, Supplier<Object> loader) {
+        Entry entry = entry(key);
+        if (entry == null) {
+            return loader.get();
+        }
+        Map<Object, Object> hash = entry.hash;
+        Object value = hash != null ? hash.get(item) : entry.items.get(item);
+        if (value != null || hash != null) {
+            hits.increment();
+            return value;
+        }
+        misses.increment();
+        value = loader.get();
+        if (value != null && isCurrent(key, entry)) {
+            entry.items.put(item, value);
+        }
+        return value;
+    }
+
+    /**
+     * @return 每次返回新的Map，调用方可以修改
+     */
+    public Map<Object, Object> hmget(String key, Supplier<Map<Object, Object>> loader) {
+        Entry entry = entry(key);
+        if (entry == null) {
+            return loader.get();
+        }
+        Map<Object, Object> hash = entry.hash;
+        if (hash != null) {
+            hits.increment();
+            return new LinkedHashMap<>(hash);
+        }
+        misses.increment();
+        Map<Object, Object> value = loader.get();
+        if (value != null && isCurrent(key, entry)) {
+            entry.hash = Collections.unmodifiableMap(new LinkedHashMap<>(value));
+        }
+        return value;
+    }
+
+    public void invalidate(String... keys) {
+        if (keys != null && keys.length > 0) {
+            invalidate(Arrays.asList(keys));
+        }
+    }
+
+    /**
+     * 写操作之后调用：失效本地缓存，并通知其他节点（只处理配置了缓存时间的key，一次调用只发一条消息）
+     * @param keys
+     */
+    public void invalidate(Collection<String> keys) {
+        if (!isEnabled() || keys == null) {
+            return;
+        }
+        StringBuilder message = null;
+        for (String key : keys) {
+            if (key == null || ttlNanos(key) <= 0) {
+                continue;
+            }
+            cache.invalidate(key);
+            localInvalidations.increment();
+            if (message == null) {
+                message = new StringBuilder(nodeId);
+            }
+            message.append('\n').append(key);
+        }
+        if (message != null) {
+            try {
+                publisher.convertAndSend(properties.getChannel(), message.toString());
+            } catch (Exception e) {
+                log.warn("failed to publish near cache invalidation: {}", e.toString());
+            }
+        }
+    }
+
+    private void onMessage(Message message, byte[] pattern) {
+        String[] lines = new String(message.getBody(), StandardCharsets.UTF_8).split("\n");
+        if (lines.length < 2 || nodeId.equals(lines[0])) {
+            return;
+        }
+        for (int i = 1; i < lines.length; i++) {
+            cache.invalidate(lines[i]);
+            remoteInvalidations.increment();
+        }
+    }
+
+    //不缓存的key返回null
+    private Entry entry(String key) {
+        if (!isEnabled() || key == null) {
+            return null;
+        }
+        long ttlNanos = ttlNanos(key);
+        return ttlNanos <= 0 ? null : cache.get(key, k -> new Entry(ttlNanos));
+    }
+
+    private boolean isCurrent(String key, Entry entry) {
+        return cache.getIfPresent(key) == entry;
+    }
+
+    private long ttlNanos(String key) {
+        for (Map.Entry<String, Long> prefix : prefixes) {
+            if (key.startsWith(prefix.getKey())) {
+                return prefix.getValue();
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * 一个redis key的本地缓存：字符串值，或hash的全部字段/部分字段
+     */
+    private static final class Entry {
+        private final long ttlNanos;
+        private volatile Object value;
+        private volatile Map<Object, Object> hash;
+        private final Map<Object, Object> items = new ConcurrentHashMap<>();
+
+        private Entry(long ttlNanos) {
+            this.ttlNanos = ttlNanos;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.vosung.zuul.cache;
+
+import com.vosung.zuul.vo.RoleVo;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 角色表(T_AU_ROLE)内存快照
+ * 角色表数据量小且很少变动，启动时整表加载为不可变快照，之后定时（或调用refresh）整体替换，
+ * 请求链路上判断超级管理员等只查内存，不再访问数据库
+ */
+@Slf4j
+@Component
+public class RoleRegistry {
+
+    private static final String SQL = "select id, role_code, role_name from T_AU_ROLE";
+
+    //系统管理员角色code
+    private static final String SYS_ADMIN = "SYS_ADMIN";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private volatile Snapshot snapshot = new Snapshot(Collections.emptyList());
+
+    @PostConstruct
+    public void init() {
+        refresh();
+    }
+
+    /**
+     * 重新加载角色表，加载失败时保留旧快照
+     * 刷新间隔：gateway.role-registry.refresh-interval（毫秒，默认60秒）
+     */
+    @Scheduled(initialDelayString = "${gateway.role-registry.refresh-interval:60000}",
+            fixedDelayString = "${gateway.role-registry.refresh-interval:60000}")
+    public void refresh() {
+        try {
+            List<RoleVo> roles = jdbcTemplate.query(SQL, new RoleRowMapper());
+            snapshot = new Snapshot(roles);
+            log.debug("role registry refreshed, {} roles loaded", roles.size());
+        } catch (Exception e) {
+            log.error("Failed to refresh role registry, keep the previous snapshot of {} roles.", snapshot.roles.size(), e);
+        }
+    }
+
+    /**
+     * @param roles 用户角色id，逗号分隔（token中的roles）
+     * @return 是否包含系统管理员角色
+     */
+    public boolean isSuperAdmin(String roles) {
+        if (roles == null || roles.isEmpty()) {
+            return false;
+        }
+        Set<String> superAdminRoleIds = snapshot.superAdminRoleIds;
+        int start = 0;
+        while (start <= roles.length()) {
+            int end = roles.indexOf(',', start);
+            if (end < 0) {
+                end = roles.length();
+            }
+            if (superAdminRoleIds.contains(roles.substring(start, end).trim())) {
+                return true;
+            }
+            start = end + 1;
+        }
+        return false;
+    }
+
+    public RoleVo getRole(String id) {
+        return snapshot.roles.get(id);
+    }
+
+    public Map<String, RoleVo> getRoles() {
+        return snapshot.roles;
+    }
+
+    /**
+     * 不可变快照，整体替换保证请求读到的始终是完整的一份
+     */
+    private static final class Snapshot {
+        private final Map<String, RoleVo> roles;
+        private final Set<String> superAdminRoleIds;
+
+        private Snapshot(List<RoleVo> roleList) {
+            Map<String, RoleVo> roleMap = new HashMap<>(roleList.size() * 2);
+            Set<String> superAdmins = new HashSet<>();
+            for (RoleVo roleVo : roleList) {
+                String id = String.valueOf(roleVo.getId());
+                roleMap.put(id, roleVo);
+                //如果角色是系统管理员
+                if (SYS_ADMIN.equalsIgnoreCase(roleVo.getRoleCode())) {
+                    superAdmins.add(id);
+                }
+            }
+            this.roles = Collections.unmodifiableMap(roleMap);
+            this.superAdminRoleIds = Collections.unmodifiableSet(superAdmins);
+        }
+    }
+
+    /**
+     * 点位表字段和值对象映射关系
+     */
+    public static class RoleRowMapper implements RowMapper<RoleVo> {
+        @Override
+        public RoleVo mapRow(ResultSet resultSet, int i) throws SQLException {
+            RoleVo roleVo = new RoleVo();
+            roleVo.setId(resultSet.getInt("id"));
+            roleVo.setRoleCode(resultSet.getString("role_code"));
+            roleVo.setRoleName(resultSet.getString("role_name"));
+            return roleVo;
+        }
+    }
+}
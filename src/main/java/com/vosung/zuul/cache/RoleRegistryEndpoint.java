@@ -0,0 +1,35 @@
+package com.vosung.zuul.cache;
+
+import com.vosung.zuul.vo.RoleVo;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * 角色快照端点：GET /actuator/roles 查看当前快照，POST /actuator/roles 立即重新加载
+ * （修改角色表后不必等待定时刷新）
+ */
+@Component
+@Endpoint(id = "roles")
+public class RoleRegistryEndpoint {
+
+    private final RoleRegistry roleRegistry;
+
+    public RoleRegistryEndpoint(RoleRegistry roleRegistry) {
+        this.roleRegistry = roleRegistry;
+    }
+
+    @ReadOperation
+    public Map<String, RoleVo> roles() {
+        return roleRegistry.getRoles();
+    }
+
+    @WriteOperation
+    public Map<String, RoleVo> refresh() {
+        roleRegistry.refresh();
+        return roleRegistry.getRoles();
+    }
+}
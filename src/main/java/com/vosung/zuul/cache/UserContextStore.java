@@ -0,0 +1,181 @@
+package com.vosung.zuul.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.vosung.zuul.constants.RedisBatch;
+import com.vosung.zuul.constants.RedisCircuitBreaker;
+import com.vosung.zuul.constants.RedisUtil;
+import com.vosung.zuul.vo.UserContext;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.commons.lang.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 用户上下文存储：
+ * 每个用户一个key（user:ctx:{userId}，带过期时间），代替所有用户共用的UserHolder hash；
+ * 本地近端缓存记录最近写入的内容，没有变化的用户上下文不再重复写redis；
+ * 写redis通过队列交给后台线程（write-behind），请求线程不等待redis，一次取出的一批用一个pipeline写入；
+ * redis熔断（RedisCircuitBreaker打开）期间不写入，近端缓存中不保留，熔断恢复后的请求重新写入
+ */
+@Component
+public class UserContextStore {
+
+    public static final String KEY_PREFIX = "user:ctx:";
+
+    private final RedisUtil redisUtil;
+
+    private final RedisCircuitBreaker circuitBreaker;
+
+    //redis中用户上下文的过期时间（秒）
+    private final long ttlSeconds;
+
+    //最近写入redis的用户上下文，在redis过期前刷新一次
+    private final Cache<String, UserContext> nearCache;
+
+    private final BlockingQueue<UserContext> writeQueue;
+
+    private final Counter written;
+
+    private final Counter unchanged;
+
+    private final Counter dropped;
+
+    private final Counter skipped;
+
+    private volatile boolean running = true;
+
+    private Thread writer;
+
+    public UserContextStore(RedisUtil redisUtil, RedisCircuitBreaker circuitBreaker, MeterRegistry meterRegistry,
+                            @Value("${gateway.user-context.ttl-seconds:1800}") long ttlSeconds,
+                            @Value("${gateway.user-context.near-cache-size:50000}") long nearCacheSize,
+                            @Value("${gateway.user-context.queue-capacity:10000}") int queueCapacity) {
+        this.redisUtil = redisUtil;
+        this.circuitBreaker = circuitBreaker;
+        this.ttlSeconds = ttlSeconds;
+        this.nearCache = Caffeine.newBuilder()
+                .maximumSize(nearCacheSize)
+                .expireAfterWrite(ttlSeconds / 2, TimeUnit.SECONDS)
+                .build();
+        this.writeQueue = new ArrayBlockingQueue<>(queueCapacity);
+        this.written = Counter.builder("gateway.user.context.writes").tag("result", "written").register(meterRegistry);
+        this.unchanged = Counter.builder("gateway.user.context.writes").tag("result", "unchanged").register(meterRegistry);
+        this.dropped = Counter.builder("gateway.user.context.writes").tag("result", "dropped").register(meterRegistry);
+        this.skipped = Counter.builder("gateway.user.context.writes").tag("result", "skipped").register(meterRegistry);
+        Gauge.builder("gateway.user.context.queue", writeQueue, BlockingQueue::size).register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        writer = new Thread(this::drain, "user-context-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        writer.interrupt();
+        writer.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    /**
+     * 保存用户上下文，不会阻塞请求线程：内容没有变化时直接返回，队列满时丢弃（下次请求会重试）
+     * @param userContext
+     */
+    public void save(UserContext userContext) {
+        if (userContext.getUserId() == null) {
+            return;
+        }
+        UserContext previous = nearCache.getIfPresent(userContext.getUserId());
+        if (userContext.equals(previous)) {
+            unchanged.increment();
+            return;
+        }
+        if (!circuitBreaker.isAvailable()) {
+            skipped.increment();
+            return;
+        }
+        nearCache.put(userContext.getUserId(), userContext);
+        if (!writeQueue.offer(userContext)) {
+            nearCache.invalidate(userContext.getUserId());
+            dropped.increment();
+        }
+    }
+
+    public static String key(String userId) {
+        return KEY_PREFIX + userId;
+    }
+
+    private void drain() {
+        List<UserContext> batch = new ArrayList<>();
+        while (running || !writeQueue.isEmpty()) {
+            try {
+                UserContext first = writeQueue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                writeQueue.drainTo(batch, 255);
+                write(batch);
+            } catch (InterruptedException e) {
+                if (!running) {
+                    writeQueue.drainTo(batch);
+                    write(batch);
+                    return;
+                }
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    //一批用户上下文（HMSET + EXPIRE）在一个pipeline中写入
+    private void write(List<UserContext> userContexts) {
+        if (userContexts.isEmpty()) {
+            return;
+        }
+        //排队期间熔断器打开时不再写入
+        if (!circuitBreaker.isAvailable()) {
+            skipped.increment(userContexts.size());
+            for (UserContext userContext : userContexts) {
+                nearCache.invalidate(userContext.getUserId());
+            }
+            return;
+        }
+        RedisBatch batch = redisUtil.batch();
+        for (UserContext userContext : userContexts) {
+            Map<String, Object> map = new HashMap<>(8);
+            map.put("userId", userContext.getUserId());
+            map.put("userName", StringUtils.defaultString(userContext.getUserName()));
+            map.put("roles", StringUtils.defaultString(userContext.getRoles()));
+            map.put("isSuperAdmin", String.valueOf(userContext.isSuperAdmin()));
+            String key = key(userContext.getUserId());
+            batch.hmset(key, map);
+            batch.expire(key, ttlSeconds);
+        }
+        boolean success = batch.execute();
+        circuitBreaker.onResult(success);
+        if (success) {
+            written.increment(userContexts.size());
+        } else {
+            //写失败时清掉近端缓存，下次请求重新写入
+            for (UserContext userContext : userContexts) {
+                nearCache.invalidate(userContext.getUserId());
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.vosung.zuul.commonconfig.redisconfig;
+
+import com.fasterxml.jackson.databind.DatabindContext;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.cfg.MapperConfig;
+import com.fasterxml.jackson.databind.exc.InvalidTypeIdException;
+import com.fasterxml.jackson.databind.jsontype.NamedType;
+import com.fasterxml.jackson.databind.jsontype.TypeIdResolver;
+import com.fasterxml.jackson.databind.jsontype.impl.ClassNameIdResolver;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * json序列化（gateway.redis.value-serializer=json）的类型信息：与enableDefaultTyping(NON_FINAL)写入的格式相同
+ * （["类名", 值]，兼容已有数据），但读取时只接受网关自己的类型（com.vosung.）和常用集合，
+ * 其他类名直接拒绝，避免redis中被写入的数据反序列化出任意类
+ */
+public class AllowListTypeResolverBuilder extends ObjectMapper.DefaultTypeResolverBuilder {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final String ALLOWED_PACKAGE = "com.vosung.";
+
+    private static final Set<String> ALLOWED_TYPES = new HashSet<>(Arrays.asList(
+            "java.util.ArrayList", "java.util.LinkedList",
+            "java.util.HashMap", "java.util.LinkedHashMap", "java.util.TreeMap",
+            "java.util.HashSet", "java.util.LinkedHashSet", "java.util.TreeSet",
+            "java.util.Date"));
+
+    public AllowListTypeResolverBuilder() {
+        super(ObjectMapper.DefaultTyping.NON_FINAL);
+    }
+
+    static boolean isAllowed(String id) {
+        return id.startsWith(ALLOWED_PACKAGE) || ALLOWED_TYPES.contains(id);
+    }
+
+    @Override
+    protected TypeIdResolver idResolver(MapperConfig<?> config, JavaType baseType, Collection<NamedType> subtypes,
+                                        boolean forSer, boolean forDeser) {
+        if (!forDeser) {
+            return super.idResolver(config, baseType, subtypes, forSer, forDeser);
+        }
+        return new ClassNameIdResolver(baseType, config.getTypeFactory()) {
+            @Override
+            public JavaType typeFromId(DatabindContext context, String id) throws IOException {
+                if (!isAllowed(id)) {
+                    throw new InvalidTypeIdException(null, "type id not allowed in redis json value: " + id, baseType, id);
+                }
+                return super.typeFromId(context, id);
+            }
+        };
+    }
+}
@@ -0,0 +1,482 @@
+package com.vosung.zuul.commonconfig.redisconfig;
+
+import com.vosung.zuul.vo.RoleVo;
+import com.vosung.zuul.vo.UserContext;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 紧凑的二进制value序列化（gateway.redis.value-serializer=compact）：
+ * 字符串直接按UTF-8写入，与StringRedisSerializer完全一致（其他服务读写的字符串数据不受影响）；
+ * 其他类型写入 [0xFF 格式版本 类型 schema版本] + 按字段顺序的变长编码，不写字段名和类名。
+ * 0xFF不会出现在UTF-8文本中，读取时不以0xFF开头的数据一律按字符串处理（兼容已有数据）。
+ * 每个类型的编码（TypeCodec）有自己的schema版本，新增字段时提高版本并在读取时兼容旧版本
+ */
+public class CompactRedisSerializer implements RedisSerializer<Object> {
+
+    private static final byte MAGIC = (byte) 0xFF;
+
+    private static final int FORMAT_VERSION = 1;
+
+    private static final int HEADER_LENGTH = 4;
+
+    private final Map<Class<?>, TypeCodec<?>> byType = new HashMap<>();
+
+    private final TypeCodec<?>[] byTag = new TypeCodec<?>[128];
+
+    public CompactRedisSerializer() {
+        register(new LongCodec());
+        register(new IntegerCodec());
+        register(new BooleanCodec());
+        register(new DoubleCodec());
+        register(new BytesCodec());
+        register(new UserContextCodec());
+        register(new RoleVoCodec());
+    }
+
+    /**
+     * 注册一个类型的编码，tag在1~127之间且不能重复（写入redis后不能再修改）
+     * @param codec
+     */
+    public final void register(TypeCodec<?> codec) {
+        int tag = codec.tag();
+        if (tag <= 0 || tag >= byTag.length || byTag[tag] != null) {
+            throw new IllegalArgumentException("invalid or duplicate codec tag: " + tag);
+        }
+        byTag[tag] = codec;
+        byType.put(codec.type(), codec);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public byte[] serialize(Object value) throws SerializationException {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof String) {
+            return ((String) value).getBytes(StandardCharsets.UTF_8);
+        }
+        TypeCodec<Object> codec = (TypeCodec<Object>) byType.get(value.getClass());
+        if (codec == null) {
+            throw new SerializationException("no compact codec registered for " + value.getClass().getName());
+        }
+        Output output = new Output(32);
+        output.writeByte(MAGIC);
+        output.writeByte(FORMAT_VERSION);
+        output.writeByte(codec.tag());
+        output.writeByte(codec.version());
+        codec.write(output, value);
+        return output.toByteArray();
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null) {
+            return null;
+        }
+        if (bytes.length == 0 || bytes[0] != MAGIC) {
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+        if (bytes.length < HEADER_LENGTH || bytes[1] != FORMAT_VERSION) {
+            throw new SerializationException("unsupported compact format");
+        }
+        int tag = bytes[2];
+        TypeCodec<?> codec = tag > 0 && tag < byTag.length ? byTag[tag] : null;
+        if (codec == null) {
+            throw new SerializationException("unknown compact type tag: " + tag);
+        }
+        int version = bytes[3] & 0xFF;
+        if (version > codec.version()) {
+            throw new SerializationException("schema version " + version + " of " + codec.type().getName()
+                    + " is newer than supported " + codec.version());
+        }
+        try {
+            return codec.read(new Input(bytes, HEADER_LENGTH), version);
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new SerializationException("truncated compact value of " + codec.type().getName(), e);
+        }
+    }
+
+    /**
+     * 一个类型的编码
+     */
+    public interface TypeCodec<T> {
+
+        Class<T> type();
+
+        /**
+         * 类型标识，写入数据头部，不能修改
+         */
+        int tag();
+
+        /**
+         * 当前schema版本（1~255）
+         */
+        int version();
+
+        void write(Output output, T value);
+
+        /**
+         * @param version 数据写入时的schema版本（不大于当前版本）
+         */
+        T read(Input input, int version);
+    }
+
+    /**
+     * 写缓冲：整数使用zigzag变长编码，字符串为 变长(长度+1) + UTF-8（0表示null）
+     */
+    public static final class Output {
+        private byte[] buffer;
+        private int length;
+
+        Output(int capacity) {
+            buffer = new byte[capacity];
+        }
+
+        public void writeByte(int value) {
+            ensure(1);
+            buffer[length++] = (byte) value;
+        }
+
+        public void writeBoolean(boolean value) {
+            writeByte(value ? 1 : 0);
+        }
+
+        public void writeVarLong(long value) {
+            long zigzag = (value << 1) ^ (value >> 63);
+            ensure(10);
+            while ((zigzag & ~0x7FL) != 0) {
+                buffer[length++] = (byte) ((zigzag & 0x7F) | 0x80);
+                zigzag >>>= 7;
+            }
+            buffer[length++] = (byte) zigzag;
+        }
+
+        public void writeDouble(double value) {
+            long bits = Double.doubleToRawLongBits(value);
+            ensure(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buffer[length++] = (byte) (bits >>> shift);
+            }
+        }
+
+        public void writeBytes(byte[] value) {
+            if (value == null) {
+                writeVarLong(0);
+                return;
+            }
+            writeVarLong(value.length + 1L);
+            ensure(value.length);
+            System.arraycopy(value, 0, buffer, length, value.length);
+            length += value.length;
+        }
+
+        public void writeString(String value) {
+            writeBytes(value == null ? null : value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        public void writeNullableInt(Integer value) {
+            writeBoolean(value != null);
+            if (value != null) {
+                writeVarLong(value);
+            }
+        }
+
+        private void ensure(int extra) {
+            if (length + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, length);
+        }
+    }
+
+    /**
+     * 读缓冲，与Output对应
+     */
+    public static final class Input {
+        private final byte[] buffer;
+        private int position;
+
+        Input(byte[] buffer, int position) {
+            this.buffer = buffer;
+            this.position = position;
+        }
+
+        public int readByte() {
+            return buffer[position++];
+        }
+
+        public boolean readBoolean() {
+            return readByte() != 0;
+        }
+
+        public long readVarLong() {
+            long zigzag = 0;
+            int shift = 0;
+            byte b;
+            do {
+                if (shift > 63) {
+                    throw new SerializationException("malformed varint");
+                }
+                b = buffer[position++];
+                zigzag |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return (zigzag >>> 1) ^ -(zigzag & 1);
+        }
+
+        public double readDouble() {
+            long bits = 0;
+            for (int i = 0; i < 8; i++) {
+                bits = (bits << 8) | (buffer[position++] & 0xFF);
+            }
+            return Double.longBitsToDouble(bits);
+        }
+
+        public byte[] readBytes() {
+            long length = readVarLong();
+            if (length == 0) {
+                return null;
+            }
+            int size = (int) (length - 1);
+            if (size < 0 || position + size > buffer.length) {
+                throw new SerializationException("malformed length");
+            }
+            byte[] value = Arrays.copyOfRange(buffer, position, position + size);
+            position += size;
+            return value;
+        }
+
+        public String readString() {
+            long length = readVarLong();
+            if (length == 0) {
+                return null;
+            }
+            int size = (int) (length - 1);
+            if (size < 0 || position + size > buffer.length) {
+                throw new SerializationException("malformed length");
+            }
+            String value = new String(buffer, position, size, StandardCharsets.UTF_8);
+            position += size;
+            return value;
+        }
+
+        public Integer readNullableInt() {
+            return readBoolean() ? (int) readVarLong() : null;
+        }
+    }
+
+    // ===============================内置类型=================================
+
+    private static final class LongCodec implements TypeCodec<Long> {
+        @Override
+        public Class<Long> type() {
+            return Long.class;
+        }
+
+        @Override
+        public int tag() {
+            return 1;
+        }
+
+        @Override
+        public int version() {
+            return 1;
+        }
+
+        @Override
+        public void write(Output output, Long value) {
+            output.writeVarLong(value);
+        }
+
+        @Override
+        public Long read(Input input, int version) {
+            return input.readVarLong();
+        }
+    }
+
+    private static final class IntegerCodec implements TypeCodec<Integer> {
+        @Override
+        public Class<Integer> type() {
+            return Integer.class;
+        }
+
+        @Override
+        public int tag() {
+            return 2;
+        }
+
+        @Override
+        public int version() {
+            return 1;
+        }
+
+        @Override
+        public void write(Output output, Integer value) {
+            output.writeVarLong(value);
+        }
+
+        @Override
+        public Integer read(Input input, int version) {
+            return (int) input.readVarLong();
+        }
+    }
+
+    private static final class BooleanCodec implements TypeCodec<Boolean> {
+        @Override
+        public Class<Boolean> type() {
+            return Boolean.class;
+        }
+
+        @Override
+        public int tag() {
+            return 3;
+        }
+
+        @Override
+        public int version() {
+            return 1;
+        }
+
+        @Override
+        public void write(Output output, Boolean value) {
+            output.writeBoolean(value);
+        }
+
+        @Override
+        public Boolean read(Input input, int version) {
+            return input.readBoolean();
+        }
+    }
+
+    private static final class DoubleCodec implements TypeCodec<Double> {
+        @Override
+        public Class<Double> type() {
+            return Double.class;
+        }
+
+        @Override
+        public int tag() {
+            return 4;
+        }
+
+        @Override
+        public int version() {
+            return 1;
+        }
+
+        @Override
+        public void write(Output output, Double value) {
+            output.writeDouble(value);
+        }
+
+        @Override
+        public Double read(Input input, int version) {
+            return input.readDouble();
+        }
+    }
+
+    private static final class BytesCodec implements TypeCodec<byte[]> {
+        @Override
+        public Class<byte[]> type() {
+            return byte[].class;
+        }
+
+        @Override
+        public int tag() {
+            return 5;
+        }
+
+        @Override
+        public int version() {
+            return 1;
+        }
+
+        @Override
+        public void write(Output output, byte[] value) {
+            output.writeBytes(value);
+        }
+
+        @Override
+        public byte[] read(Input input, int version) {
+            return input.readBytes();
+        }
+    }
+
+    /**
+     * v1: userId, userName, roles, superAdmin
+     */
+    private static final class UserContextCodec implements TypeCodec<UserContext> {
+        @Override
+        public Class<UserContext> type() {
+            return UserContext.class;
+        }
+
+        @Override
+        public int tag() {
+            return 16;
+        }
+
+        @Override
+        public int version() {
+            return 1;
+        }
+
+        @Override
+        public void write(Output output, UserContext value) {
+            output.writeString(value.getUserId());
+            output.writeString(value.getUserName());
+            output.writeString(value.getRoles());
+            output.writeBoolean(value.isSuperAdmin());
+        }
+
+        @Override
+        public UserContext read(Input input, int version) {
+            return new UserContext(input.readString(), input.readString(), input.readString(), input.readBoolean());
+        }
+    }
+
+    /**
+     * v1: id, roleCode, roleName
+     */
+    private static final class RoleVoCodec implements TypeCodec<RoleVo> {
+        @Override
+        public Class<RoleVo> type() {
+            return RoleVo.class;
+        }
+
+        @Override
+        public int tag() {
+            return 17;
+        }
+
+        @Override
+        public int version() {
+            return 1;
+        }
+
+        @Override
+        public void write(Output output, RoleVo value) {
+            output.writeNullableInt(value.getId());
+            output.writeString(value.getRoleCode());
+            output.writeString(value.getRoleName());
+        }
+
+        @Override
+        public RoleVo read(Input input, int version) {
+            RoleVo roleVo = new RoleVo();
+            roleVo.setId(input.readNullableInt());
+            roleVo.setRoleCode(input.readString());
+            roleVo.setRoleName(input.readString());
+            return roleVo;
+        }
+    }
+}
@@ -1,17 +1,37 @@
 package com.vosung.zuul.commonconfig.redisconfig;
 
 import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
 import com.fasterxml.jackson.annotation.PropertyAccessor;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.lettuce.core.resource.ClientResources;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.data.redis.JedisClientConfigurationBuilderCustomizer;
+import org.springframework.boot.autoconfigure.data.redis.LettuceClientConfigurationBuilderCustomizer;
+import org.springframework.boot.autoconfigure.data.redis.RedisProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
+import java.util.stream.Collectors;
+
 /**
  * redis配置类
+ * 客户端通过 gateway.redis.client 选择：
+ *   jedis   连接池，每个命令独占一个连接（默认，连接池参数spring.redis.jedis.pool）
+ *   lettuce 所有线程共享一个多路复用的连接，不会因为等待连接池而阻塞请求线程；
+ *           pipeline/事务使用独立连接，取自spring.redis.lettuce.pool；同时提供异步（ReactiveRedisTemplate）接口
+ * value的序列化方式通过 gateway.redis.value-serializer 选择（string/json/compact，见valueSerializer）
  * @author ZENG.XIAO.YAN
  * @date   2018年6月6日
  *
@@ -19,25 +39,103 @@ import org.springframework.data.redis.serializer.StringRedisSerializer;
 @Configuration
 public class RedisConfig {
 
+    public static final String CLIENT_PROPERTY = "gateway.redis.client";
+
+    public static final String VALUE_SERIALIZER_PROPERTY = "gateway.redis.value-serializer";
+
     @Bean
-    public RedisTemplate<String, Object> redisTemplate(RedisConnectionFactory factory) {
+    @SuppressWarnings("unchecked")
+    public RedisTemplate<String, Object> redisTemplate(RedisConnectionFactory factory,
+                                                       @Value("${" + VALUE_SERIALIZER_PROPERTY + ":string}") String valueSerializer) {
         RedisTemplate<String, Object> template = new RedisTemplate<String, Object>();
         template.setConnectionFactory(factory);
-        Jackson2JsonRedisSerializer jackson2JsonRedisSerializer = new Jackson2JsonRedisSerializer(Object.class);
-        ObjectMapper om = new ObjectMapper();
-        om.setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.ANY);
-        om.enableDefaultTyping(ObjectMapper.DefaultTyping.NON_FINAL);
-        jackson2JsonRedisSerializer.setObjectMapper(om);
         StringRedisSerializer stringRedisSerializer = new StringRedisSerializer();
+        RedisSerializer<Object> redisValueSerializer = (RedisSerializer<Object>) valueSerializer(valueSerializer);
         // key采用String的序列化方式
         template.setKeySerializer(stringRedisSerializer);
         // hash的key也采用String的序列化方式
         template.setHashKeySerializer(stringRedisSerializer);
-        // value序列化方式采用jackson
-        template.setValueSerializer(stringRedisSerializer);
-        // hash的value序列化方式采用jackson
-        template.setHashValueSerializer(stringRedisSerializer);
+        // value序列化方式由gateway.redis.value-serializer决定
+        template.setValueSerializer(redisValueSerializer);
+        // hash的value序列化方式与value相同
+        template.setHashValueSerializer(redisValueSerializer);
         template.afterPropertiesSet();
         return template;
     }
-}
\ No newline at end of file
+
+    /**
+     * 连接参数（url、sentinel、cluster、ssl、client-name、连接池等）与Boot的自动配置相同，见RedisConnectionFactories
+     */
+    @Bean
+    @ConditionalOnProperty(name = CLIENT_PROPERTY, havingValue = "jedis", matchIfMissing = true)
+    public JedisConnectionFactory jedisConnectionFactory(RedisProperties properties,
+                                                         ObjectProvider<JedisClientConfigurationBuilderCustomizer> customizers) {
+        return RedisConnectionFactories.jedis(properties, customizers.orderedStream().collect(Collectors.toList()));
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = CLIENT_PROPERTY, havingValue = "lettuce")
+    public LettuceConnectionFactory lettuceConnectionFactory(RedisProperties properties,
+                                                             ObjectProvider<ClientResources> clientResources,
+                                                             ObjectProvider<LettuceClientConfigurationBuilderCustomizer> customizers) {
+        LettuceConnectionFactory factory = RedisConnectionFactories.lettuce(properties, clientResources.getIfAvailable(),
+                customizers.orderedStream().collect(Collectors.toList()));
+        //普通命令共享一个连接（多路复用），默认值，这里显式声明
+        factory.setShareNativeConnection(true);
+        return factory;
+    }
+
+    /**
+     * lettuce模式下RedisUtil的异步接口使用（jedis模式下RedisUtil用后台线程模拟异步）
+     * @param factory
+     * @return
+     */
+    @Bean
+    @ConditionalOnProperty(name = CLIENT_PROPERTY, havingValue = "lettuce")
+    @SuppressWarnings("unchecked")
+    public ReactiveRedisTemplate<String, Object> gatewayReactiveRedisTemplate(LettuceConnectionFactory factory,
+                                                                              @Value("${" + VALUE_SERIALIZER_PROPERTY + ":string}") String valueSerializer) {
+        RedisSerializer<Object> redisValueSerializer = (RedisSerializer<Object>) valueSerializer(valueSerializer);
+        RedisSerializationContext<String, Object> context = RedisSerializationContext
+                .<String, Object>newSerializationContext(new StringRedisSerializer())
+                .value(redisValueSerializer)
+                .hashKey(new StringRedisSerializer())
+                .hashValue(redisValueSerializer)
+                .build();
+        return new ReactiveRedisTemplate<>(factory, context);
+    }
+
+    /**
+     * value（及hash value）的序列化方式：
+     *   string  只能写字符串，与其他服务直接读写的数据格式一致（默认）
+     *   json    jackson，带类名，可以写任意对象
+     *   compact CompactRedisSerializer，字符串与string相同，已注册的类型（UserContext、RoleVo、数值等）按二进制写入
+     * @param type
+     * @return
+     */
+    public static RedisSerializer<?> valueSerializer(String type) {
+        switch (type == null ? "string" : type.trim().toLowerCase()) {
+            case "string":
+                return new StringRedisSerializer();
+            case "json":
+                return jsonSerializer();
+            case "compact":
+                return new CompactRedisSerializer();
+            default:
+                throw new IllegalArgumentException("unsupported " + VALUE_SERIALIZER_PROPERTY + ": " + type);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static RedisSerializer<Object> jsonSerializer() {
+        Jackson2JsonRedisSerializer jackson2JsonRedisSerializer = new Jackson2JsonRedisSerializer(Object.class);
+        ObjectMapper om = new ObjectMapper();
+        om.setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.ANY);
+        // 写入格式与enableDefaultTyping(NON_FINAL)相同，读取时只接受白名单中的类型
+        om.setDefaultTyping(new AllowListTypeResolverBuilder()
+                .init(JsonTypeInfo.Id.CLASS, null)
+                .inclusion(JsonTypeInfo.As.WRAPPER_ARRAY));
+        jackson2JsonRedisSerializer.setObjectMapper(om);
+        return jackson2JsonRedisSerializer;
+    }
+}
@@ -0,0 +1,314 @@
+package com.vosung.zuul.constants;
+
+import com.vosung.zuul.metrics.RedisMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * 批量执行redis命令：先排队，再一次性以pipeline（execute）或MULTI/EXEC事务（executeInTransaction）发送，
+ * 只有一次网络往返。每个命令返回一个Response，执行成功后通过get()取得对应类型的结果。
+ * 用法：
+ * <pre>
+ *     RedisBatch batch = redisUtil.batch();
+ *     RedisBatch.Response&lt;Object&gt; name = batch.hget("user:1", "name");
+ *     batch.hmset("user:2", map).expire("user:2", 1800);
+ *     if (batch.execute()) { name.get(); }
+ * </pre>
+ * 非线程安全，只能执行一次
+ */
+@Slf4j
+public final class RedisBatch {
+
+    private final RedisTemplate<String, Object> redisTemplate;
+
+    //可以为null
+    private final RedisMetrics redisMetrics;
+
+    private final List<Command<?>> commands = new ArrayList<>();
+
+    //执行后通知写过的key（RedisUtil的读缓存失效），可以为null
+    private final Consumer<Collection<String>> onWritten;
+
+    private final Set<String> writtenKeys = new LinkedHashSet<>();
+
+    private boolean executed;
+
+    RedisBatch(RedisTemplate<String, Object> redisTemplate, RedisMetrics redisMetrics,
+               Consumer<Collection<String>> onWritten) {
+        this.redisTemplate = redisTemplate;
+        this.redisMetrics = redisMetrics;
+        this.onWritten = onWritten;
+    }
+
+    // ============================String=============================
+    public Response<Object> get(String key) {
+        return add(key, false, operations -> operations.opsForValue().get(key), value -> value);
+    }
+
+    public Response<Boolean> set(String key, Object value) {
+        written(key);
+        return add(key, false, operations -> operations.opsForValue().set(key, value), RedisBatch::toBoolean);
+    }
+
+    /**
+     * SETEX：值和过期时间在同一个命令中设置
+     * @param time 时间(秒)，小于等于0时不过期
+     */
+    public Response<Boolean> set(String key, Object value, long time) {
+        if (time <= 0) {
+            return set(key, value);
+        }
+        written(key);
+        return add(key, false, operations -> operations.opsForValue().set(key, value, time, TimeUnit.SECONDS), RedisBatch::toBoolean);
+    }
+
+    public Response<Long> incr(String key, long delta) {
+        written(key);
+        return add(key, false, operations -> operations.opsForValue().increment(key, delta), RedisBatch::toLong);
+    }
+
+    // =============================common============================
+    public Response<Boolean> expire(String key, long time) {
+        return add(key, false, operations -> operations.expire(key, time, TimeUnit.SECONDS), RedisBatch::toBoolean);
+    }
+
+    public Response<Long> del(Collection<String> keys) {
+        keys.forEach(this::written);
+        return add(null, false, operations -> operations.delete(keys), RedisBatch::toLong);
+    }
+
+    // ================================Map=================================
+    public Response<Object> hget(String key, String item) {
+        return add(key, false, operations -> operations.opsForHash().get(key, item), value -> value);
+    }
+
+    @SuppressWarnings("unchecked")
+    public Response<Map<Object, Object>> hmget(String key) {
+        return add(key, false, operations -> operations.opsForHash().entries(key), value -> (Map<Object, Object>) value);
+    }
+
+    public Response<Boolean> hmset(String key, Map<String, Object> map) {
+        written(key);
+        return add(key, true, operations -> operations.opsForHash().putAll(key, map), RedisBatch::toBoolean);
+    }
+
+    public Response<Boolean> hset(String key, String item, Object value) {
+        written(key);
+        return add(key, false, operations -> operations.opsForHash().put(key, item, value), result -> Boolean.TRUE);
+    }
+
+    public Response<Long> hdel(String key, Object... items) {
+        written(key);
+        return add(key, false, operations -> operations.opsForHash().delete(key, items), RedisBatch::toLong);
+    }
+
+    // ============================set=============================
+    @SuppressWarnings("unchecked")
+    public Response<Set<Object>> sGet(String key) {
+        return add(key, false, operations -> operations.opsForSet().members(key), value -> (Set<Object>) value);
+    }
+
+    public Response<Long> sSet(String key, Object... values) {
+        return add(key, false, operations -> operations.opsForSet().add(key, values), RedisBatch::toLong);
+    }
+
+    // ===============================list=================================
+    @SuppressWarnings("unchecked")
+    public Response<List<Object>> lGet(String key, long start, long end) {
+        return add(key, false, operations -> operations.opsForList().range(key, start, end), value -> (List<Object>) value);
+    }
+
+    public Response<Long> lSet(String key, Object value) {
+        return add(key, false, operations -> operations.opsForList().rightPush(key, value), RedisBatch::toLong);
+    }
+
+    public Response<Long> lSetAll(String key, List<Object> values) {
+        return add(key, false, operations -> operations.opsForList().rightPushAll(key, values), RedisBatch::toLong);
+    }
+
+    public int size() {
+        return commands.size();
+    }
+
+    /**
+     * 以pipeline发送所有命令（不保证原子性）
+     * @return 全部执行成功返回true；失败时所有Response都没有结果
+     */
+    public boolean execute() {
+        return run(false);
+    }
+
+    /**
+     * 以MULTI/EXEC事务发送所有命令（原子执行）
+     * @return 全部执行成功返回true
+     */
+    public boolean executeInTransaction() {
+        return run(true);
+    }
+
+    private boolean run(boolean transaction) {
+        if (executed) {
+            throw new IllegalStateException("batch already executed");
+        }
+        executed = true;
+        if (commands.isEmpty()) {
+            return true;
+        }
+        long start = System.nanoTime();
+        try {
+            List<Object> results = transaction
+                    ? redisTemplate.execute(new SessionCallback<List<Object>>() {
+                        @Override
+                        @SuppressWarnings("unchecked")
+                        public <K, V> List<Object> execute(RedisOperations<K, V> operations) {
+                            operations.multi();
+                            send((RedisOperations<String, Object>) operations);
+                            return operations.exec();
+                        }
+                    })
+                    : redisTemplate.executePipelined(new SessionCallback<Object>() {
+                        @Override
+                        @SuppressWarnings("unchecked")
+                        public <K, V> Object execute(RedisOperations<K, V> operations) {
+                            send((RedisOperations<String, Object>) operations);
+                            return null;
+                        }
+                    });
+            record(transaction, start, null);
+            return complete(results);
+        } catch (Exception e) {
+            record(transaction, start, e);
+            log.warn("redis {} of {} commands failed", transaction ? "MULTI" : "PIPELINE", commands.size(), e);
+            return false;
+        } finally {
+            //失败时命令也可能已经部分执行，同样需要失效
+            if (onWritten != null && !writtenKeys.isEmpty()) {
+                onWritten.accept(writtenKeys);
+            }
+        }
+    }
+
+    //整个pipeline/事务记为一个命令
+    private void record(boolean transaction, long start, Throwable error) {
+        if (redisMetrics != null) {
+            redisMetrics.record(transaction ? "MULTI" : "PIPELINE", System.nanoTime() - start, error);
+        }
+    }
+
+    private void send(RedisOperations<String, Object> operations) {
+        for (Command<?> command : commands) {
+            command.action.accept(operations);
+        }
+    }
+
+    /**
+     * 结果按命令顺序对应。SET/SETEX的OK会被转换为true，保留在结果列表中；
+     * 状态类命令（HMSET，返回void）的结果被驱动丢弃，按顺序跳过。
+     * 个别驱动配置（不转换pipeline/事务结果）会保留全部结果，此时逐个对应
+     */
+    private boolean complete(List<Object> results) {
+        if (results == null) {
+            return false;
+        }
+        int statusCount = 0;
+        for (Command<?> command : commands) {
+            if (command.status) {
+                statusCount++;
+            }
+        }
+        boolean skipStatus;
+        if (results.size() == commands.size() - statusCount) {
+            skipStatus = true;
+        } else if (results.size() == commands.size()) {
+            skipStatus = false;
+        } else {
+            log.warn("redis batch expected {} results but got {}", commands.size() - statusCount, results.size());
+            return false;
+        }
+        int index = 0;
+        for (Command<?> command : commands) {
+            command.complete(command.status && skipStatus ? Boolean.TRUE : results.get(index++));
+        }
+        return true;
+    }
+
+    private void written(String key) {
+        if (executed) {
+            throw new IllegalStateException("batch already executed");
+        }
+        writtenKeys.add(key);
+    }
+
+    private <T> Response<T> add(String key, boolean status, Consumer<RedisOperations<String, Object>> action,
+                                Function<Object, T> converter) {
+        if (executed) {
+            throw new IllegalStateException("batch already executed");
+        }
+        if (redisMetrics != null) {
+            redisMetrics.recordKey(key);
+        }
+        Command<T> command = new Command<>(status, action, converter);
+        commands.add(command);
+        return command.response;
+    }
+
+    private static Long toLong(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        return value == null ? null : Long.valueOf(value.toString());
+    }
+
+    private static Boolean toBoolean(Object value) {
+        return value instanceof Boolean ? (Boolean) value : Boolean.valueOf(value != null);
+    }
+
+    private static final class Command<T> {
+        private final boolean status;
+        private final Consumer<RedisOperations<String, Object>> action;
+        private final Function<Object, T> converter;
+        private final Response<T> response = new Response<>();
+
+        private Command(boolean status, Consumer<RedisOperations<String, Object>> action, Function<Object, T> converter) {
+            this.status = status;
+            this.action = action;
+            this.converter = converter;
+        }
+
+        private void complete(Object result) {
+            response.value = converter.apply(result);
+            response.done = true;
+        }
+    }
+
+    /**
+     * 一个命令的结果，批量执行成功后才有值
+     */
+    public static final class Response<T> {
+        private T value;
+        private boolean done;
+
+        public T get() {
+            if (!done) {
+                throw new IllegalStateException("batch not executed or failed");
+            }
+            return value;
+        }
+
+        public boolean isDone() {
+            return done;
+        }
+    }
+}
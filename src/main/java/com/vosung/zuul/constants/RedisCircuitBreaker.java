@@ -0,0 +1,347 @@
+package com.vosung.zuul.constants;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 请求链路上redis调用的熔断器（gateway.redis.circuit-breaker）：
+ *   CLOSED    正常调用，每次调用有时间预算（call-timeout），超时或失败都计为失败；
+ *             最近window内调用数不少于minimum-calls且失败率达到failure-rate-threshold时打开
+ *   OPEN      不再调用redis，直接返回降级结果（限流放行、不写用户上下文），open-duration之后进入半开
+ *   HALF_OPEN 放行half-open-calls个试探调用，全部成功后关闭，任意一个失败重新打开
+ * 调用在独立的线程池中执行，请求线程最多等待call-timeout（jedis的阻塞调用无法中断，超时的命令在后台执行完）。
+ * 线程数默认等于servlet线程数（server.tomcat.max-threads），线程池满（pool_full）说明网关自身积压，
+ * 不是redis的失败，不计入失败率；半开时占用的试探次数在线程池满或请求线程被中断时归还。
+ * 状态变化打印日志，并通过gateway.redis.circuit.state（0关闭/1半开/2打开）、gateway.redis.circuit.transitions、
+ * gateway.redis.circuit.calls{result}导出
+ */
+@Slf4j
+@Component
+public class RedisCircuitBreaker {
+
+    public enum State {
+        CLOSED, HALF_OPEN, OPEN
+    }
+
+    private static final int BUCKETS = 10;
+
+    private final boolean enabled;
+
+    private final long callTimeoutMillis;
+
+    private final double failureRateThreshold;
+
+    private final int minimumCalls;
+
+    private final long bucketMillis;
+
+    private final long openDurationMillis;
+
+    private final int halfOpenCalls;
+
+    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+
+    private volatile long openedAt;
+
+    //半开时剩余的试探次数和已成功的次数
+    private final AtomicInteger halfOpenPermits = new AtomicInteger();
+
+    private final AtomicInteger halfOpenSuccesses = new AtomicInteger();
+
+    //按时间分段的调用数和失败数（环形，window / BUCKETS一段）
+    private final Bucket[] buckets = new Bucket[BUCKETS];
+
+    private final ThreadPoolExecutor executor;
+
+    private final Counter succeeded;
+
+    private final Counter failed;
+
+    private final Counter timedOut;
+
+    private final Counter rejected;
+
+    private final Counter poolFull;
+
+    private final Map<State, Counter> transitions = new EnumMap<>(State.class);
+
+    public RedisCircuitBreaker(MeterRegistry meterRegistry,
+                               @Value("${gateway.redis.circuit-breaker.enabled:true}") boolean enabled,
+                               @Value("${gateway.redis.circuit-breaker.call-timeout:50}") long callTimeoutMillis,
+                               @Value("${gateway.redis.circuit-breaker.failure-rate-threshold:50}") double failureRateThreshold,
+                               @Value("${gateway.redis.circuit-breaker.minimum-calls:20}") int minimumCalls,
+                               @Value("${gateway.redis.circuit-breaker.window:10000}") long windowMillis,
+                               @Value("${gateway.redis.circuit-breaker.open-duration:5000}") long openDurationMillis,
+                               @Value("${gateway.redis.circuit-breaker.half-open-calls:5}") int halfOpenCalls,
+                               @Value("${gateway.redis.circuit-breaker.pool-size:${server.tomcat.max-threads:200}}") int poolSize) {
+        this.enabled = enabled;
+        this.callTimeoutMillis = callTimeoutMillis;
+        this.failureRateThreshold = failureRateThreshold / 100;
+        this.minimumCalls = Math.max(minimumCalls, 1);
+        this.bucketMillis = Math.max(windowMillis / BUCKETS, 1);
+        this.openDurationMillis = openDurationMillis;
+        this.halfOpenCalls = Math.max(halfOpenCalls, 1);
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new Bucket();
+        }
+        AtomicInteger index = new AtomicInteger();
+        //队列很短：redis变慢时很快拒绝，而不是让请求排队
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(poolSize), runnable -> {
+            Thread thread = new Thread(runnable, "redis-guarded-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.allowCoreThreadTimeOut(true);
+        this.succeeded = calls(meterRegistry, "success");
+        this.failed = calls(meterRegistry, "error");
+        this.timedOut = calls(meterRegistry, "timeout");
+        this.rejected = calls(meterRegistry, "rejected");
+        this.poolFull = calls(meterRegistry, "pool_full");
+        for (State target : State.values()) {
+            transitions.put(target, Counter.builder("gateway.redis.circuit.transitions")
+                    .tag("state", target.name().toLowerCase())
+                    .register(meterRegistry));
+        }
+        Gauge.builder("gateway.redis.circuit.state", state, current -> current.get().ordinal())
+                .description("Redis circuit breaker state: 0 closed, 1 half-open, 2 open")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 在时间预算内执行一次redis调用
+     * @param call 失败时抛出异常
+     * @param fallback 熔断、超时或失败时的返回值
+     * @return
+     */
+    public <T> T execute(Supplier<T> call, T fallback) {
+        if (!enabled) {
+            try {
+                return call.get();
+            } catch (RuntimeException e) {
+                log.warn("redis call failed", e);
+                return fallback;
+            }
+        }
+        if (!acquirePermission()) {
+            rejected.increment();
+            return fallback;
+        }
+        CompletableFuture<T> future;
+        try {
+            future = CompletableFuture.supplyAsync(call, executor);
+        } catch (RejectedExecutionException e) {
+            //线程都被超时后仍在后台执行的命令占用：没有调用redis，不计入失败率
+            poolFull.increment();
+            releasePermission();
+            return fallback;
+        }
+        try {
+            T result = future.get(callTimeoutMillis, TimeUnit.MILLISECONDS);
+            succeeded.increment();
+            onResult(true);
+            return result;
+        } catch (TimeoutException e) {
+            timedOut.increment();
+            onResult(false);
+        } catch (ExecutionException e) {
+            failed.increment();
+            onResult(false);
+            log.debug("guarded redis call failed", e.getCause());
+        } catch (InterruptedException e) {
+            //结果未知，不计入失败率
+            Thread.currentThread().interrupt();
+            releasePermission();
+        }
+        return fallback;
+    }
+
+    /**
+     * 是否可以调用redis（打开状态下返回false，不占用半开的试探次数），用于后台写入前判断
+     * @return
+     */
+    public boolean isAvailable() {
+        if (!enabled || state.get() != State.OPEN) {
+            return true;
+        }
+        if (System.currentTimeMillis() - openedAt < openDurationMillis) {
+            return false;
+        }
+        //后台写入的结果同样可以关闭熔断器
+        transition(State.OPEN, State.HALF_OPEN);
+        return true;
+    }
+
+    /**
+     * 记录一次不经过execute的调用结果（如后台pipeline写入）
+     * @param success
+     */
+    public void onResult(boolean success) {
+        if (!enabled) {
+            return;
+        }
+        State current = state.get();
+        if (current == State.HALF_OPEN) {
+            if (!success) {
+                transition(State.HALF_OPEN, State.OPEN);
+            } else if (halfOpenSuccesses.incrementAndGet() >= halfOpenCalls) {
+                transition(State.HALF_OPEN, State.CLOSED);
+            }
+            return;
+        }
+        if (current == State.OPEN) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        Bucket bucket = bucket(now);
+        bucket.calls.increment();
+        if (success) {
+            return;
+        }
+        bucket.failures.increment();
+        //只在失败时计算失败率
+        long calls = 0;
+        long failures = 0;
+        long oldest = now / bucketMillis - BUCKETS + 1;
+        for (Bucket b : buckets) {
+            if (b.segment >= oldest) {
+                calls += b.calls.sum();
+                failures += b.failures.sum();
+            }
+        }
+        if (calls >= minimumCalls && failures >= calls * failureRateThreshold) {
+            log.warn("redis failure rate {}/{} in the last {} ms", failures, calls, bucketMillis * BUCKETS);
+            transition(State.CLOSED, State.OPEN);
+        }
+    }
+
+    public State getState() {
+        return state.get();
+    }
+
+    public Map<String, Object> describe() {
+        Map<String, Object> description = new LinkedHashMap<>();
+        description.put("enabled", enabled);
+        description.put("state", state.get());
+        description.put("callTimeoutMs", callTimeoutMillis);
+        description.put("success", (long) succeeded.count());
+        description.put("error", (long) failed.count());
+        description.put("timeout", (long) timedOut.count());
+        description.put("rejected", (long) rejected.count());
+        description.put("poolFull", (long) poolFull.count());
+        return description;
+    }
+
+    private boolean acquirePermission() {
+        State current = state.get();
+        if (current == State.CLOSED) {
+            return true;
+        }
+        if (current == State.OPEN) {
+            if (System.currentTimeMillis() - openedAt < openDurationMillis) {
+                return false;
+            }
+            transition(State.OPEN, State.HALF_OPEN);
+        }
+        int permits;
+        do {
+            permits = halfOpenPermits.get();
+            if (permits <= 0) {
+                return false;
+            }
+        } while (!halfOpenPermits.compareAndSet(permits, permits - 1));
+        return true;
+    }
+
+    //调用没有得到结果时归还半开的试探次数（关闭状态下不需要）
+    private void releasePermission() {
+        if (state.get() == State.HALF_OPEN) {
+            halfOpenPermits.incrementAndGet();
+        }
+    }
+
+    //状态只由CAS成功的线程修改，试探次数在进入半开之后重置（期间其他线程的试探请求会被拒绝）
+    private void transition(State from, State to) {
+        //先记录打开时间，避免其他线程看到OPEN时openedAt还是上一次的
+        if (to == State.OPEN && state.get() == from) {
+            openedAt = System.currentTimeMillis();
+        }
+        if (!state.compareAndSet(from, to)) {
+            return;
+        }
+        if (to == State.HALF_OPEN) {
+            halfOpenSuccesses.set(0);
+            halfOpenPermits.set(halfOpenCalls);
+        } else if (to == State.CLOSED) {
+            for (Bucket bucket : buckets) {
+                bucket.reset(-1);
+            }
+        }
+        transitions.get(to).increment();
+        if (to == State.OPEN) {
+            log.warn("redis circuit breaker {} -> OPEN, redis calls on the request path are skipped for {} ms",
+                    from, openDurationMillis);
+        } else {
+            log.warn("redis circuit breaker {} -> {}", from, to);
+        }
+    }
+
+    private Bucket bucket(long now) {
+        long segment = now / bucketMillis;
+        Bucket bucket = buckets[(int) (segment % BUCKETS)];
+        if (bucket.segment != segment) {
+            synchronized (bucket) {
+                if (bucket.segment != segment) {
+                    bucket.reset(segment);
+                }
+            }
+        }
+        return bucket;
+    }
+
+    private static Counter calls(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("gateway.redis.circuit.calls")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 一段时间内的调用数和失败数
+     */
+    private static final class Bucket {
+        private volatile long segment = -1;
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+
+        private void reset(long segment) {
+            calls.reset();
+            failures.reset();
+            this.segment = segment;
+        }
+    }
+}
@@ -1,24 +1,73 @@
 package com.vosung.zuul.constants;
 
+import com.vosung.zuul.cache.RedisNearCache;
+import com.vosung.zuul.metrics.RedisMetrics;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
 import org.springframework.stereotype.Component;
 import org.springframework.util.CollectionUtils;
-
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 /**
  * Redis工具类
  * @author bin
  * @date   2018年6月7日
  */
+@Slf4j
 @Component
 public final class RedisUtil {
     @Autowired
     private RedisTemplate<String, Object> redisTemplate;
+    /**
+     * lettuce模式（gateway.redis.client=lettuce）下才有，异步接口直接使用lettuce的非阻塞命令
+     */
+    @Autowired(required = false)
+    private ReactiveRedisTemplate<String, Object> reactiveRedisTemplate;
+    /**
+     * 读缓存（gateway.near-cache），get/hget/hmget先查本地，写操作后失效本地和其他节点的缓存
+     */
+    @Autowired(required = false)
+    private RedisNearCache nearCache;
+    /**
+     * 命令耗时、失败次数和热点key统计
+     */
+    @Autowired(required = false)
+    private RedisMetrics redisMetrics;
+    /**
+     * 请求链路上的调用（executeGuarded）使用的熔断器
+     */
+    @Autowired(required = false)
+    private RedisCircuitBreaker circuitBreaker;
+    /**
+     * jedis模式下异步接口在这个线程池中执行同步命令：队列满时直接返回失败结果，不阻塞调用线程
+     */
+    private final ThreadPoolExecutor asyncExecutor = asyncExecutor();
+    /**
+     * lua脚本的参数和返回值与value的序列化方式无关，始终按字符串处理
+     */
+    private static final RedisSerializer<?> SCRIPT_SERIALIZER = new StringRedisSerializer();
     // =============================common============================
     /**
      * 指定缓存失效时间
@@ -29,7 +78,7 @@ public final class RedisUtil {
     public boolean expire(String key, long time) {
         try {
             if (time > 0) {
-                redisTemplate.expire(key, time, TimeUnit.SECONDS);
+                call("EXPIRE", key, () -> redisTemplate.expire(key, time, TimeUnit.SECONDS));
             }
             return true;
         } catch (Exception e) {
@@ -43,7 +92,7 @@ public final class RedisUtil {
      * @return 时间(秒) 返回0代表为永久有效
      */
     public long getExpire(String key) {
-        return redisTemplate.getExpire(key, TimeUnit.SECONDS);
+        return call("TTL", key, () -> redisTemplate.getExpire(key, TimeUnit.SECONDS));
     }
     /**
      * 判断key是否存在
@@ -52,7 +101,7 @@ public final class RedisUtil {
      */
     public boolean hasKey(String key) {
         try {
-            return redisTemplate.hasKey(key);
+            return call("EXISTS", key, () -> redisTemplate.hasKey(key));
         } catch (Exception e) {
             e.printStackTrace();
             return false;
@@ -66,10 +115,11 @@ public final class RedisUtil {
     public void del(String... key) {
         if (key != null && key.length > 0) {
             if (key.length == 1) {
-                redisTemplate.delete(key[0]);
+                call("DEL", key[0], () -> redisTemplate.delete(key[0]));
             } else {
-                redisTemplate.delete(CollectionUtils.arrayToList(key));
+                call("DEL", key[0], () -> redisTemplate.delete(CollectionUtils.arrayToList(key)));
             }
+            invalidate(key);
         }
     }
     // ============================String=============================
@@ -80,7 +130,11 @@ public final class RedisUtil {
      * @return 值
      */
     public Object get(String key) {
-        return key == null ? null : redisTemplate.opsForValue().get(key);
+        if (key == null) {
+            return null;
+        }
+        Supplier<Object> get = () -> call("GET", key, () -> redisTemplate.opsForValue().get(key));
+        return nearCache == null ? get.get() : nearCache.get(key, get);
     }
     /**
      * 普通缓存放入
@@ -90,7 +144,8 @@ public final class RedisUtil {
      */
     public boolean set(String key, Object value) {
         try {
-            redisTemplate.opsForValue().set(key, value);
+            run("SET", key, () -> redisTemplate.opsForValue().set(key, value));
+            invalidate(key);
             return true;
         } catch (Exception e) {
             e.printStackTrace();
@@ -107,7 +162,8 @@ public final class RedisUtil {
     public boolean set(String key, Object value, long time) {
         try {
             if (time > 0) {
-                redisTemplate.opsForValue().set(key, value, time, TimeUnit.SECONDS);
+                run("SETEX", key, () -> redisTemplate.opsForValue().set(key, value, time, TimeUnit.SECONDS));
+                invalidate(key);
             } else {
                 set(key, value);
             }
@@ -129,7 +185,9 @@ public final class RedisUtil {
         if (delta < 0) {
             throw new RuntimeException("递增因子必须大于0");
         }
-        return redisTemplate.opsForValue().increment(key, delta);
+        long value = call("INCRBY", key, () -> redisTemplate.opsForValue().increment(key, delta));
+        invalidate(key);
+        return value;
     }
     /**
      * 递减
@@ -141,7 +199,9 @@ public final class RedisUtil {
         if (delta < 0) {
             throw new RuntimeException("递减因子必须大于0");
         }
-        return redisTemplate.opsForValue().increment(key, -delta);
+        long value = call("INCRBY", key, () -> redisTemplate.opsForValue().increment(key, -delta));
+        invalidate(key);
+        return value;
     }
     // ================================Map=================================
     /**
@@ -152,14 +212,16 @@ public final class RedisUtil {
 
      */
     public Object hget(String key, String item) {
-        return redisTemplate.opsForHash().get(key, item);
+        Supplier<Object> hget = () -> call("HGET", key, () -> redisTemplate.opsForHash().get(key, item));
+        return nearCache == null ? hget.get() : nearCache.hget(key, item, hget);
     }
     /**
      * 获取hashKey对应的所有键值
      * @param key 键
      */
     public Map<Object, Object> hmget(String key) {
-        return redisTemplate.opsForHash().entries(key);
+        Supplier<Map<Object, Object>> hgetAll = () -> call("HGETALL", key, () -> redisTemplate.opsForHash().entries(key));
+        return nearCache == null ? hgetAll.get() : nearCache.hmget(key, hgetAll);
     }
     /**
      * HashSet
@@ -170,7 +232,9 @@ public final class RedisUtil {
     public boolean hmset(String key, Map<String, Object> map) {
         try {
 
-            redisTemplate.opsForHash().putAll(key, map);
+            run("HMSET", key, () -> redisTemplate.opsForHash().putAll(key, map));
+
+            invalidate(key);
 
             return true;
 
@@ -198,27 +262,14 @@ public final class RedisUtil {
      */
 
     public boolean hmset(String key, Map<String, Object> map, long time) {
-
-        try {
-
-            redisTemplate.opsForHash().putAll(key, map);
-
-            if (time > 0) {
-
-                expire(key, time);
-
-            }
-
-            return true;
-
-        } catch (Exception e) {
-
-            e.printStackTrace();
-
-            return false;
-
+        if (time <= 0) {
+            return hmset(key, map);
         }
-
+        //redis没有同时设置hash和过期时间的命令，两个命令放在一个MULTI/EXEC事务中，值和过期时间一起生效
+        RedisBatch batch = batch();
+        batch.hmset(key, map);
+        batch.expire(key, time);
+        return batch.executeInTransaction();
     }
 
 
@@ -239,7 +290,9 @@ public final class RedisUtil {
 
         try {
 
-            redisTemplate.opsForHash().put(key, item, value);
+            run("HSET", key, () -> redisTemplate.opsForHash().put(key, item, value));
+
+            invalidate(key);
 
             return true;
 
@@ -268,27 +321,13 @@ public final class RedisUtil {
      */
 
     public boolean hset(String key, String item, Object value, long time) {
-
-        try {
-
-            redisTemplate.opsForHash().put(key, item, value);
-
-            if (time > 0) {
-
-                expire(key, time);
-
-            }
-
-            return true;
-
-        } catch (Exception e) {
-
-            e.printStackTrace();
-
-            return false;
-
+        if (time <= 0) {
+            return hset(key, item, value);
         }
-
+        RedisBatch batch = batch();
+        batch.hset(key, item, value);
+        batch.expire(key, time);
+        return batch.executeInTransaction();
     }
 
     /**
@@ -303,7 +342,9 @@ public final class RedisUtil {
 
     public void hdel(String key, Object... item) {
 
-        redisTemplate.opsForHash().delete(key, item);
+        call("HDEL", key, () -> redisTemplate.opsForHash().delete(key, item));
+
+        invalidate(key);
 
     }
 
@@ -321,7 +362,7 @@ public final class RedisUtil {
 
     public boolean hHasKey(String key, String item) {
 
-        return redisTemplate.opsForHash().hasKey(key, item);
+        return call("HEXISTS", key, () -> redisTemplate.opsForHash().hasKey(key, item));
 
     }
 
@@ -341,7 +382,11 @@ public final class RedisUtil {
 
     public double hincr(String key, String item, double by) {
 
-        return redisTemplate.opsForHash().increment(key, item, by);
+        double value = call("HINCRBYFLOAT", key, () -> redisTemplate.opsForHash().increment(key, item, by));
+
+        invalidate(key);
+
+        return value;
 
     }
 
@@ -361,7 +406,11 @@ public final class RedisUtil {
 
     public double hdecr(String key, String item, double by) {
 
-        return redisTemplate.opsForHash().increment(key, item, -by);
+        double value = call("HINCRBYFLOAT", key, () -> redisTemplate.opsForHash().increment(key, item, -by));
+
+        invalidate(key);
+
+        return value;
 
     }
 
@@ -381,7 +430,7 @@ public final class RedisUtil {
 
         try {
 
-            return redisTemplate.opsForSet().members(key);
+            return call("SMEMBERS", key, () -> redisTemplate.opsForSet().members(key));
 
         } catch (Exception e) {
 
@@ -409,7 +458,7 @@ public final class RedisUtil {
 
         try {
 
-            return redisTemplate.opsForSet().isMember(key, value);
+            return call("SISMEMBER", key, () -> redisTemplate.opsForSet().isMember(key, value));
 
         } catch (Exception e) {
 
@@ -437,7 +486,7 @@ public final class RedisUtil {
 
         try {
 
-            return redisTemplate.opsForSet().add(key, values);
+            return call("SADD", key, () -> redisTemplate.opsForSet().add(key, values));
 
         } catch (Exception e) {
 
@@ -464,24 +513,13 @@ public final class RedisUtil {
      */
 
     public long sSetAndTime(String key, long time, Object... values) {
-
-        try {
-
-            Long count = redisTemplate.opsForSet().add(key, values);
-
-            if (time > 0)
-
-                expire(key, time);
-
-            return count;
-
-        } catch (Exception e) {
-
-            e.printStackTrace();
-
-            return 0;
-   }
-
+        if (time <= 0) {
+            return sSet(key, values);
+        }
+        RedisBatch batch = batch();
+        RedisBatch.Response<Long> count = batch.sSet(key, values);
+        batch.expire(key, time);
+        return batch.executeInTransaction() ? count.get() : 0;
     }
 
 
@@ -499,7 +537,7 @@ public final class RedisUtil {
 
         try {
 
-            return redisTemplate.opsForSet().size(key);
+            return call("SCARD", key, () -> redisTemplate.opsForSet().size(key));
 
         } catch (Exception e) {
 
@@ -527,7 +565,7 @@ public final class RedisUtil {
 
         try {
 
-            Long count = redisTemplate.opsForSet().remove(key, values);
+            Long count = call("SREM", key, () -> redisTemplate.opsForSet().remove(key, values));
 
             return count;
 
@@ -561,7 +599,7 @@ public final class RedisUtil {
 
         try {
 
-            return redisTemplate.opsForList().range(key, start, end);
+            return call("LRANGE", key, () -> redisTemplate.opsForList().range(key, start, end));
 
         } catch (Exception e) {
 
@@ -586,7 +624,7 @@ public final class RedisUtil {
 
         try {
 
-            return redisTemplate.opsForList().size(key);
+            return call("LLEN", key, () -> redisTemplate.opsForList().size(key));
 
         } catch (Exception e) {
 
@@ -615,7 +653,7 @@ public final class RedisUtil {
 
         try {
 
-            return redisTemplate.opsForList().index(key, index);
+            return call("LINDEX", key, () -> redisTemplate.opsForList().index(key, index));
 
         } catch (Exception e) {
 
@@ -644,7 +682,7 @@ public final class RedisUtil {
 
         try {
 
-            redisTemplate.opsForList().rightPush(key, value);
+            call("RPUSH", key, () -> redisTemplate.opsForList().rightPush(key, value));
 
             return true;
 
@@ -673,24 +711,13 @@ public final class RedisUtil {
      */
 
     public boolean lSet(String key, Object value, long time) {
-        try {
-
-            redisTemplate.opsForList().rightPush(key, value);
-
-            if (time > 0)
-
-                expire(key, time);
-
-            return true;
-
-        } catch (Exception e) {
-
-            e.printStackTrace();
-
-            return false;
-
+        if (time <= 0) {
+            return lSet(key, value);
         }
-
+        RedisBatch batch = batch();
+        batch.lSet(key, value);
+        batch.expire(key, time);
+        return batch.executeInTransaction();
     }
 
     /**
@@ -710,7 +737,7 @@ public final class RedisUtil {
 
         try {
 
-            redisTemplate.opsForList().rightPushAll(key, value);
+            call("RPUSH", key, () -> redisTemplate.opsForList().rightPushAll(key, value));
 
             return true;
 
@@ -739,25 +766,13 @@ public final class RedisUtil {
      */
 
     public boolean lSet(String key, List<Object> value, long time) {
-
-        try {
-
-            redisTemplate.opsForList().rightPushAll(key, value);
-
-            if (time > 0)
-
-                expire(key, time);
-
-            return true;
-
-        } catch (Exception e) {
-
-            e.printStackTrace();
-
-            return false;
-
+        if (time <= 0) {
+            return lSet(key, value);
         }
-
+        RedisBatch batch = batch();
+        batch.lSetAll(key, value);
+        batch.expire(key, time);
+        return batch.executeInTransaction();
     }
 
     /**
@@ -778,7 +793,7 @@ public final class RedisUtil {
 
         try {
 
-            redisTemplate.opsForList().set(key, index, value);
+            run("LSET", key, () -> redisTemplate.opsForList().set(key, index, value));
 
             return true;
 
@@ -810,7 +825,7 @@ public final class RedisUtil {
 
         try {
 
-            Long remove = redisTemplate.opsForList().remove(key, count, value);
+            Long remove = call("LREM", key, () -> redisTemplate.opsForList().remove(key, count, value));
 
             return remove;
 
@@ -824,4 +839,222 @@ public final class RedisUtil {
 
     }
 
-}
\ No newline at end of file
+    // ===============================batch=================================
+    /**
+     * 创建一个批量操作：多个命令排队后一次性以pipeline或MULTI/EXEC发送
+     * @return
+     */
+    public RedisBatch batch() {
+        return new RedisBatch(redisTemplate, redisMetrics, nearCache == null ? null : nearCache::invalidate);
+    }
+    /**
+     * 一次读取多个key（MGET）
+     * @param keys 键
+     * @return 与keys顺序一致的值（不存在的为null），执行失败返回null
+     */
+    public List<Object> mget(Collection<String> keys) {
+        try {
+            return call("MGET", null, () -> redisTemplate.opsForValue().multiGet(keys));
+        } catch (Exception e) {
+            log.warn("redis MGET of {} keys failed", keys.size(), e);
+            return null;
+        }
+    }
+    /**
+     * 一次读取多个hash的全部键值（在一个pipeline中执行HGETALL）
+     * @param keys 键
+     * @return key -> 对应的键值（不存在的key为空map），执行失败返回null
+     */
+    public Map<String, Map<Object, Object>> hmgetAll(Collection<String> keys) {
+        RedisBatch batch = batch();
+        Map<String, RedisBatch.Response<Map<Object, Object>>> responses = new LinkedHashMap<>();
+        for (String key : keys) {
+            responses.put(key, batch.hmget(key));
+        }
+        if (!batch.execute()) {
+            return null;
+        }
+        Map<String, Map<Object, Object>> result = new LinkedHashMap<>();
+        responses.forEach((key, response) -> result.put(key, response.get()));
+        return result;
+    }
+
+    // ===============================async=================================
+    /**
+     * 异步接口：调用线程不等待redis（请求线程上的写操作不占用tomcat线程等待）
+     * 与同步接口一样不抛出异常，失败时返回的future以null/false/0完成
+     */
+    public CompletableFuture<Object> getAsync(String key) {
+        return async("GET", key, () -> reactiveRedisTemplate.opsForValue().get(key), () -> get(key), null);
+    }
+    /**
+     * @param time 时间(秒) 小于等于0时不过期
+     */
+    public CompletableFuture<Boolean> setAsync(String key, Object value, long time) {
+        return invalidateAfter(async(time > 0 ? "SETEX" : "SET", key, () -> time > 0
+                        ? reactiveRedisTemplate.opsForValue().set(key, reactiveValue(value), Duration.ofSeconds(time))
+                        : reactiveRedisTemplate.opsForValue().set(key, reactiveValue(value)),
+                () -> set(key, value, time), false), key);
+    }
+    public CompletableFuture<Boolean> expireAsync(String key, long time) {
+        return async("EXPIRE", key, () -> reactiveRedisTemplate.expire(key, Duration.ofSeconds(time)), () -> expire(key, time), false);
+    }
+    public CompletableFuture<Long> delAsync(String... keys) {
+        return invalidateAfter(async("DEL", keys[0], () -> reactiveRedisTemplate.delete(keys), () -> {
+            Long count = call("DEL", keys[0], () -> redisTemplate.delete(Arrays.asList(keys)));
+            invalidate(keys);
+            return count;
+        }, 0L), keys);
+    }
+    public CompletableFuture<Long> incrAsync(String key, long delta) {
+        return invalidateAfter(async("INCRBY", key, () -> reactiveRedisTemplate.opsForValue().increment(key, delta),
+                () -> incr(key, delta), 0L), key);
+    }
+    public CompletableFuture<Object> hgetAsync(String key, String item) {
+        return async("HGET", key, () -> reactiveRedisTemplate.<String, Object>opsForHash().get(key, item),
+                () -> hget(key, item), null);
+    }
+    /**
+     * @param time 时间(秒) 小于等于0时不过期
+     */
+    public CompletableFuture<Boolean> hmsetAsync(String key, Map<String, Object> map, long time) {
+        return invalidateAfter(async("HMSET", key, () -> {
+            Map<String, Object> values = new HashMap<>(map.size() * 2);
+            map.forEach((item, value) -> values.put(item, reactiveValue(value)));
+            Mono<Boolean> put = reactiveRedisTemplate.<String, Object>opsForHash().putAll(key, values);
+            return time > 0 ? put.flatMap(ok -> reactiveRedisTemplate.expire(key, Duration.ofSeconds(time))) : put;
+        }, () -> hmset(key, map, time), false), key);
+    }
+
+    //lettuce的非阻塞命令完成后失效读缓存（jedis模式下执行的同步方法已经处理），
+    //失效通知是同步publish，不能在lettuce的事件线程中执行
+    private <T> CompletableFuture<T> invalidateAfter(CompletableFuture<T> future, String... keys) {
+        return nearCache == null || reactiveRedisTemplate == null
+                ? future : future.whenCompleteAsync((result, e) -> nearCache.invalidate(keys), asyncExecutor);
+    }
+
+    //执行并统计一个命令（没有RedisMetrics时直接执行）
+    private <T> T call(String command, String key, Supplier<T> action) {
+        return redisMetrics == null ? action.get() : redisMetrics.record(command, key, action);
+    }
+
+    private void run(String command, String key, Runnable action) {
+        call(command, key, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    private void invalidate(String... keys) {
+        if (nearCache != null) {
+            nearCache.invalidate(keys);
+        }
+    }
+
+    //string序列化时只能写字符串，和原来一样先转成字符串；json/compact直接交给序列化
+    private Object reactiveValue(Object value) {
+        return redisTemplate.getValueSerializer() instanceof StringRedisSerializer ? String.valueOf(value) : value;
+    }
+
+    /**
+     * @param command lettuce模式下统计耗时用的命令名（jedis模式下执行的同步方法已经统计，
+     *                只有线程池队列已满、命令没有执行时用这个命令名记为失败）
+     */
+    private <T> CompletableFuture<T> async(String command, String key, Supplier<Mono<T>> reactive,
+                                           Supplier<T> blocking, T fallback) {
+        CompletableFuture<T> future;
+        try {
+            if (reactiveRedisTemplate != null) {
+                future = reactive.get().toFuture();
+                if (redisMetrics != null) {
+                    redisMetrics.recordKey(key);
+                    long start = System.nanoTime();
+                    future = future.whenComplete((result, e) -> redisMetrics.record(command, System.nanoTime() - start, e));
+                }
+            } else {
+                future = CompletableFuture.supplyAsync(blocking, asyncExecutor);
+            }
+        } catch (RejectedExecutionException e) {
+            //jedis模式下线程池队列已满：命令没有执行，记为失败后直接返回失败结果
+            log.warn("redis async executor is full, {} not executed", command);
+            recordNotExecuted(command, key, e);
+            return CompletableFuture.completedFuture(fallback);
+        } catch (Exception e) {
+            log.warn("redis async {} failed", command, e);
+            recordNotExecuted(command, key, e);
+            return CompletableFuture.completedFuture(fallback);
+        }
+        return future.exceptionally(e -> {
+            log.warn("redis async {} failed", command, e);
+            return fallback;
+        });
+    }
+
+    private void recordNotExecuted(String command, String key, Exception e) {
+        if (redisMetrics != null) {
+            redisMetrics.recordKey(key);
+            redisMetrics.record(command, 0, e);
+        }
+    }
+
+    private static ThreadPoolExecutor asyncExecutor() {
+        AtomicInteger index = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(16, 16, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(10000), runnable -> {
+            Thread thread = new Thread(runnable, "redis-async-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        asyncExecutor.shutdown();
+    }
+
+    // ===============================script=================================
+    /**
+     * 执行lua脚本（EVALSHA，脚本不存在时自动EVAL），脚本内的多个操作原子执行
+     * @param script 脚本，建议定义成常量复用（只计算一次sha1）
+     * @param keys 脚本用到的键
+     * @param args 参数，用String.valueOf转成字符串传给脚本（不经过gateway.redis.value-serializer，
+     *             json序列化会给字符串加引号，脚本中tonumber得到nil）
+     * @return 脚本返回值（整数为Long，字符串按UTF-8解码），执行失败返回null
+     */
+    public <T> T execute(RedisScript<T> script, List<String> keys, Object... args) {
+        try {
+            return evaluate(script, keys, args);
+        } catch (Exception e) {
+            log.warn("redis script {} failed", script.getSha1(), e);
+            return null;
+        }
+    }
+    /**
+     * 请求链路上执行lua脚本：经过熔断器（RedisCircuitBreaker），请求线程最多等待时间预算，
+     * 熔断打开、超时或失败时都返回null，由调用方降级处理
+     * @return 脚本返回值，执行失败、超时或熔断时返回null
+     */
+    public <T> T executeGuarded(RedisScript<T> script, List<String> keys, Object... args) {
+        if (circuitBreaker == null) {
+            return execute(script, keys, args);
+        }
+        return circuitBreaker.execute(() -> evaluate(script, keys, args), null);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T evaluate(RedisScript<T> script, List<String> keys, Object... args) {
+        Object[] stringArgs = new Object[args.length];
+        for (int i = 0; i < args.length; i++) {
+            stringArgs[i] = String.valueOf(args[i]);
+        }
+        RedisSerializer<T> resultSerializer = (RedisSerializer<T>) SCRIPT_SERIALIZER;
+        T result = call("EVALSHA", keys.isEmpty() ? null : keys.get(0),
+                () -> redisTemplate.execute(script, SCRIPT_SERIALIZER, resultSerializer, keys, stringArgs));
+        if (nearCache != null) {
+            nearCache.invalidate(keys);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,255 @@
+package com.vosung.zuul.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.servlet.http.HttpServletRequest;
+import java.time.Instant;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 网关访问日志：每个请求最多一条json记录，写到 gateway.access logger（logback-spring.xml中配置为异步appender）
+ * 请求线程只把字段写进预先分配的环形缓冲区（CAS占位，无锁，不拼字符串），由后台线程格式化并输出；
+ * 缓冲区满时丢弃并计数，不阻塞请求。
+ * 成功的请求按 gateway.access-log.sample-rate 抽样，出错（status >= error-status）和慢请求（>= slow-threshold）全部记录
+ */
+@Component
+public class AccessLog {
+
+    /**
+     * AccessFilter把当前用户id放在这个request属性上
+     */
+    public static final String USER_ATTRIBUTE = AccessLog.class.getName() + ".userId";
+
+    private static final Logger ACCESS_LOGGER = LoggerFactory.getLogger("gateway.access");
+
+    private static final String SAMPLED = "sampled";
+
+    private static final String ERROR = "error";
+
+    private static final String SLOW = "slow";
+
+    private final double sampleRate;
+
+    private final int errorStatus;
+
+    private final long slowThresholdNanos;
+
+    private final Entry[] entries;
+
+    private final int mask;
+
+    //下一个可写的位置（生产者CAS推进）
+    private final AtomicLong tail = new AtomicLong();
+
+    //下一个要输出的位置（只有后台线程读写）
+    private volatile long head;
+
+    private final Counter logged;
+
+    private final Counter dropped;
+
+    private final StringBuilder line = new StringBuilder(512);
+
+    private volatile boolean running = true;
+
+    private Thread drainer;
+
+    public AccessLog(MeterRegistry meterRegistry,
+                     @Value("${gateway.access-log.sample-rate:0.01}") double sampleRate,
+                     @Value("${gateway.access-log.error-status:500}") int errorStatus,
+                     @Value("${gateway.access-log.slow-threshold:1000}") long slowThresholdMillis,
+                     @Value("${gateway.access-log.buffer-size:8192}") int bufferSize) {
+        this.sampleRate = sampleRate;
+        this.errorStatus = errorStatus;
+        this.slowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowThresholdMillis);
+        int capacity = Integer.highestOneBit(Math.max(bufferSize, 2) - 1) << 1;
+        this.entries = new Entry[capacity];
+        for (int i = 0; i < capacity; i++) {
+            entries[i] = new Entry(i);
+        }
+        this.mask = capacity - 1;
+        this.logged = Counter.builder("gateway.access.log").tag("result", "logged").register(meterRegistry);
+        this.dropped = Counter.builder("gateway.access.log").tag("result", "dropped").register(meterRegistry);
+        Gauge.builder("gateway.access.log.backlog", this, accessLog -> accessLog.tail.get() - accessLog.head)
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        drainer = new Thread(this::drain, "gateway-access-log");
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(drainer);
+        drainer.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    /**
+     * 请求结束时调用，决定是否记录；不记录时不做任何写操作
+     * @param request
+     * @param routeId 匹配的路由，没有时为null
+     * @param status 响应码
+     * @param elapsedNanos 网关处理耗时
+     * @param queuedMillis tomcat排队时间，未知时为-1
+     * @param upstream 后端实例（host:port），没有转发时为null
+     */
+    public void log(HttpServletRequest request, String routeId, int status, long elapsedNanos,
+                    long queuedMillis, String upstream) {
+        String reason;
+        if (status >= errorStatus) {
+            reason = ERROR;
+        } else if (elapsedNanos >= slowThresholdNanos) {
+            reason = SLOW;
+        } else if (sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate) {
+            reason = SAMPLED;
+        } else {
+            return;
+        }
+        long position = claim();
+        if (position < 0) {
+            dropped.increment();
+            return;
+        }
+        Entry entry = entries[(int) position & mask];
+        entry.timestamp = System.currentTimeMillis();
+        entry.method = request.getMethod();
+        entry.uri = request.getRequestURI();
+        entry.routeId = routeId;
+        entry.status = status;
+        entry.elapsedNanos = elapsedNanos;
+        entry.queuedMillis = queuedMillis;
+        entry.upstream = upstream;
+        entry.userId = (String) request.getAttribute(USER_ATTRIBUTE);
+        entry.clientIp = request.getRemoteAddr();
+        entry.reason = reason;
+        //发布：后台线程看到sequence变化后才读取上面的字段
+        entry.sequence = position + 1;
+    }
+
+    //占一个位置，缓冲区满时返回-1
+    private long claim() {
+        long position = tail.get();
+        while (true) {
+            long sequence = entries[(int) position & mask].sequence;
+            if (sequence == position) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    return position;
+                }
+                position = tail.get();
+            } else if (sequence < position) {
+                //还没被后台线程输出，缓冲区已满
+                return -1;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    private void drain() {
+        long position = head;
+        while (true) {
+            Entry entry = entries[(int) position & mask];
+            if (entry.sequence == position + 1) {
+                write(entry);
+                entry.clear();
+                entry.sequence = position + entries.length;
+                head = ++position;
+            } else if (running) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void write(Entry entry) {
+        StringBuilder json = line;
+        json.setLength(0);
+        json.append("{\"time\":\"").append(Instant.ofEpochMilli(entry.timestamp)).append('"');
+        appendString(json, "method", entry.method);
+        appendString(json, "uri", entry.uri);
+        appendString(json, "route", entry.routeId);
+        json.append(",\"status\":").append(entry.status);
+        json.append(",\"durationMs\":").append(entry.elapsedNanos / 1000 / 1000.0);
+        if (entry.queuedMillis >= 0) {
+            json.append(",\"queueMs\":").append(entry.queuedMillis);
+        }
+        appendString(json, "upstream", entry.upstream);
+        appendString(json, "userId", entry.userId);
+        appendString(json, "clientIp", entry.clientIp);
+        appendString(json, "reason", entry.reason);
+        json.append('}');
+        try {
+            ACCESS_LOGGER.info(json.toString());
+            logged.increment();
+        } catch (RuntimeException e) {
+            dropped.increment();
+        }
+    }
+
+    private static void appendString(StringBuilder json, String name, String value) {
+        if (value == null) {
+            return;
+        }
+        json.append(",\"").append(name).append("\":\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+
+    /**
+     * 环形缓冲区中的一个位置，启动时分配，循环复用
+     */
+    private static final class Entry {
+        //等于位置序号时可写，等于序号+1时可读
+        private volatile long sequence;
+        private long timestamp;
+        private String method;
+        private String uri;
+        private String routeId;
+        private int status;
+        private long elapsedNanos;
+        private long queuedMillis;
+        private String upstream;
+        private String userId;
+        private String clientIp;
+        private String reason;
+
+        private Entry(long sequence) {
+            this.sequence = sequence;
+        }
+
+        private void clear() {
+            method = null;
+            uri = null;
+            routeId = null;
+            upstream = null;
+            userId = null;
+            clientIp = null;
+            reason = null;
+        }
+    }
+}
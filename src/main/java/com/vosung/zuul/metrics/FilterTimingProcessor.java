@@ -0,0 +1,27 @@
+package com.vosung.zuul.metrics;
+
+import com.netflix.zuul.FilterProcessor;
+import com.netflix.zuul.ZuulFilter;
+import com.netflix.zuul.exception.ZuulException;
+
+/**
+ * 替换zuul默认的FilterProcessor，记录每个过滤器的耗时（包括shouldFilter的判断）
+ */
+public class FilterTimingProcessor extends FilterProcessor {
+
+    private final FilterTimings filterTimings;
+
+    public FilterTimingProcessor(FilterTimings filterTimings) {
+        this.filterTimings = filterTimings;
+    }
+
+    @Override
+    public Object processZuulFilter(ZuulFilter filter) throws ZuulException {
+        long start = System.nanoTime();
+        try {
+            return super.processZuulFilter(filter);
+        } finally {
+            filterTimings.record(filter, System.nanoTime() - start);
+        }
+    }
+}
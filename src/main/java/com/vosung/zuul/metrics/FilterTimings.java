@@ -0,0 +1,161 @@
+package com.vosung.zuul.metrics;
+
+import com.netflix.zuul.ZuulFilter;
+import com.netflix.zuul.context.RequestContext;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 过滤器耗时：
+ *   gateway.filter{type,order,filter}  每个ZuulFilter（含shouldFilter）的耗时分布，
+ *                                      以及OAuth2AuthenticationProcessingFilter（type=security）的耗时
+ * 按 gateway.filter-timing.sample-rate 抽样的请求在响应头中返回各阶段合计耗时（Server-Timing格式），
+ * 没有抽中的请求只记录直方图
+ */
+@Component
+public class FilterTimings {
+
+    /**
+     * 抽中的请求：request属性中保存各阶段的累计耗时
+     */
+    public static final String STAGES_ATTRIBUTE = FilterTimings.class.getName() + ".stages";
+
+    public static final String SECURITY_STAGE = "security";
+
+    private static final String[] STAGES = {SECURITY_STAGE, "pre", "route", "post", "error"};
+
+    private final MeterRegistry meterRegistry;
+
+    private final double sampleRate;
+
+    private final ConcurrentMap<ZuulFilter, FilterTimer> filters = new ConcurrentHashMap<>();
+
+    private final FilterTimer security;
+
+    public FilterTimings(MeterRegistry meterRegistry,
+                         @Value("${gateway.filter-timing.sample-rate:0.01}") double sampleRate) {
+        this.meterRegistry = meterRegistry;
+        this.sampleRate = sampleRate;
+        this.security = new FilterTimer(SECURITY_STAGE, 0, "OAuth2AuthenticationProcessingFilter");
+    }
+
+    /**
+     * 请求进入网关时决定是否抽样
+     */
+    public void begin(HttpServletRequest request) {
+        if (sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate) {
+            request.setAttribute(STAGES_ATTRIBUTE, new long[STAGES.length]);
+        }
+    }
+
+    public void recordSecurity(HttpServletRequest request, long elapsedNanos) {
+        security.timer.record(elapsedNanos, TimeUnit.NANOSECONDS);
+        addStage(request, 0, elapsedNanos);
+    }
+
+    public void record(ZuulFilter filter, long elapsedNanos) {
+        FilterTimer filterTimer = filters.get(filter);
+        if (filterTimer == null) {
+            filterTimer = filters.computeIfAbsent(filter, key -> new FilterTimer(key.filterType(), key.filterOrder(), name(key)));
+        }
+        filterTimer.timer.record(elapsedNanos, TimeUnit.NANOSECONDS);
+        addStage(RequestContext.getCurrentContext().getRequest(), filterTimer.stage, elapsedNanos);
+    }
+
+    /**
+     * 抽中的请求返回Server-Timing响应头的内容，否则返回null
+     */
+    public String serverTiming(HttpServletRequest request) {
+        long[] stages = request == null ? null : (long[]) request.getAttribute(STAGES_ATTRIBUTE);
+        if (stages == null) {
+            return null;
+        }
+        StringBuilder header = new StringBuilder();
+        for (int i = 0; i < STAGES.length; i++) {
+            if (stages[i] > 0) {
+                if (header.length() > 0) {
+                    header.append(", ");
+                }
+                header.append(STAGES[i]).append(";dur=")
+                        .append(String.format(Locale.ROOT, "%.3f", stages[i] / 1_000_000.0));
+            }
+        }
+        return header.toString();
+    }
+
+    /**
+     * actuator端点用的汇总：按类型和执行顺序排列
+     */
+    public Map<String, Object> describe() {
+        List<FilterTimer> all = new ArrayList<>(filters.values());
+        all.add(security);
+        all.sort(Comparator.comparingInt((FilterTimer filterTimer) -> filterTimer.stage)
+                .thenComparingInt(filterTimer -> filterTimer.order));
+        Map<String, Object> description = new LinkedHashMap<>();
+        for (FilterTimer filterTimer : all) {
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("order", filterTimer.order);
+            summary.putAll(RouteMetrics.summary(filterTimer.timer));
+            description.put(filterTimer.type + ":" + filterTimer.name, summary);
+        }
+        return description;
+    }
+
+    private void addStage(HttpServletRequest request, int stage, long elapsedNanos) {
+        if (request != null && stage >= 0) {
+            long[] stages = (long[]) request.getAttribute(STAGES_ATTRIBUTE);
+            if (stages != null) {
+                stages[stage] += elapsedNanos;
+            }
+        }
+    }
+
+    private static String name(ZuulFilter filter) {
+        String name = filter.getClass().getSimpleName();
+        return name.isEmpty() ? filter.getClass().getName() : name;
+    }
+
+    private static int stage(String type) {
+        for (int i = 0; i < STAGES.length; i++) {
+            if (STAGES[i].equals(type)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private final class FilterTimer {
+        private final String type;
+        private final int order;
+        private final String name;
+        private final int stage;
+        private final Timer timer;
+
+        private FilterTimer(String type, int order, String name) {
+            this.type = type;
+            this.order = order;
+            this.name = name;
+            this.stage = stage(type);
+            this.timer = Timer.builder("gateway.filter")
+                    .description("Time spent in each gateway filter, grouped by filter type and order")
+                    .tags("type", type, "order", String.valueOf(order), "filter", name)
+                    .publishPercentiles(RouteMetrics.PERCENTILES)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.vosung.zuul.metrics;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * 各过滤器耗时汇总：GET /actuator/filtertimings
+ */
+@Component
+@Endpoint(id = "filtertimings")
+public class FilterTimingsEndpoint {
+
+    private final FilterTimings filterTimings;
+
+    public FilterTimingsEndpoint(FilterTimings filterTimings) {
+        this.filterTimings = filterTimings;
+    }
+
+    @ReadOperation
+    public Map<String, Object> filters() {
+        return filterTimings.describe();
+    }
+}
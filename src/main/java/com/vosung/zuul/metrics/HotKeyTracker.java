@@ -0,0 +1,152 @@
+package com.vosung.zuul.metrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 抽样的热点key统计：count-min sketch估计每个key被采样的次数（只会高估），同时保留估计值最大的top个key。
+ * 按窗口统计，窗口结束时保存结果并清零，热点变化后能很快反映出来。
+ * 只有被采样的访问才加锁（采样率1%时每100次访问一次），未采样的访问只生成一个随机数
+ */
+public final class HotKeyTracker {
+
+    private static final int DEPTH = 4;
+
+    private final double sampleRate;
+
+    private final int top;
+
+    private final long windowNanos;
+
+    private final int mask;
+
+    private final long[][] sketch;
+
+    //当前窗口估计值最大的key -> 估计的采样次数
+    private final Map<String, Long> candidates = new HashMap<>();
+
+    private long windowStart;
+
+    private long sampled;
+
+    private List<Map<String, Object>> previous = Collections.emptyList();
+
+    /**
+     * @param sampleRate 采样率（0~1），小于等于0时不统计
+     * @param top 保留的热点key数量
+     * @param width sketch每行的计数器数量，向上取2的幂
+     * @param windowMillis 统计窗口
+     */
+    public HotKeyTracker(double sampleRate, int top, int width, long windowMillis) {
+        this.sampleRate = Math.min(sampleRate, 1);
+        this.top = Math.max(top, 1);
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(windowMillis, 1));
+        int size = Integer.highestOneBit(Math.max(width, 16) - 1) << 1;
+        this.mask = size - 1;
+        this.sketch = new long[DEPTH][size];
+        this.windowStart = System.nanoTime();
+    }
+
+    public void record(String key) {
+        if (key == null || sampleRate <= 0
+                || (sampleRate < 1 && ThreadLocalRandom.current().nextDouble() >= sampleRate)) {
+            return;
+        }
+        long now = System.nanoTime();
+        synchronized (this) {
+            if (now - windowStart >= windowNanos) {
+                rotate(now);
+            }
+            sampled++;
+            long estimate = add(key);
+            if (candidates.containsKey(key) || candidates.size() < top) {
+                candidates.put(key, estimate);
+                return;
+            }
+            String minKey = null;
+            long min = Long.MAX_VALUE;
+            for (Map.Entry<String, Long> candidate : candidates.entrySet()) {
+                if (candidate.getValue() < min) {
+                    min = candidate.getValue();
+                    minKey = candidate.getKey();
+                }
+            }
+            if (estimate > min) {
+                candidates.remove(minKey);
+                candidates.put(key, estimate);
+            }
+        }
+    }
+
+    /**
+     * 当前窗口（到目前为止）和上一个完整窗口的热点key，按估计的访问次数从大到小
+     */
+    public synchronized Map<String, Object> describe() {
+        long now = System.nanoTime();
+        if (now - windowStart >= windowNanos) {
+            rotate(now);
+        }
+        Map<String, Object> description = new LinkedHashMap<>();
+        description.put("sampleRate", sampleRate);
+        description.put("windowSeconds", TimeUnit.NANOSECONDS.toSeconds(windowNanos));
+        description.put("current", snapshot());
+        description.put("previous", previous);
+        return description;
+    }
+
+    private void rotate(long now) {
+        //超过一个窗口没有访问时上一个窗口为空
+        previous = now - windowStart >= 2 * windowNanos ? Collections.emptyList() : snapshot();
+        //对齐到窗口边界，避免窗口随访问时间漂移
+        windowStart = now - (now - windowStart) % windowNanos;
+        for (long[] row : sketch) {
+            Arrays.fill(row, 0);
+        }
+        candidates.clear();
+        sampled = 0;
+    }
+
+    private List<Map<String, Object>> snapshot() {
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(candidates.entrySet());
+        entries.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+        List<Map<String, Object>> keys = new ArrayList<>(entries.size());
+        for (Map.Entry<String, Long> entry : entries) {
+            Map<String, Object> key = new LinkedHashMap<>();
+            key.put("key", entry.getKey());
+            key.put("sampled", entry.getValue());
+            key.put("estimatedAccesses", Math.round(entry.getValue() / sampleRate));
+            key.put("share", sampled == 0 ? 0 : (double) entry.getValue() / sampled);
+            keys.add(key);
+        }
+        return keys;
+    }
+
+    //每行用不同的哈希位置（h1 + i * h2），返回各行计数的最小值
+    private long add(String key) {
+        int h1 = spread(key.hashCode());
+        int h2 = spread(h1 ^ 0x9E3779B9) | 1;
+        long estimate = Long.MAX_VALUE;
+        for (int i = 0; i < DEPTH; i++) {
+            long count = ++sketch[i][(h1 + i * h2) & mask];
+            if (count < estimate) {
+                estimate = count;
+            }
+        }
+        return estimate;
+    }
+
+    private static int spread(int h) {
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        return h ^ (h >>> 16);
+    }
+}
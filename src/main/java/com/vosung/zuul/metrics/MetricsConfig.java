@@ -0,0 +1,39 @@
+package com.vosung.zuul.metrics;
+
+import com.netflix.zuul.FilterProcessor;
+import com.vosung.zuul.route.RouteResolver;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 路由指标和访问日志：tomcat valve + zuul post过滤器
+ * 过滤器耗时：替换zuul的FilterProcessor + Server-Timing响应头
+ */
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public WebServerFactoryCustomizer<TomcatServletWebServerFactory> routeMetricsValveCustomizer(
+            RouteMetrics routeMetrics, RouteResolver routeResolver, AccessLog accessLog) {
+        return factory -> factory.addEngineValves(new RouteMetricsValve(routeMetrics, routeResolver, accessLog));
+    }
+
+    @Bean
+    public UpstreamInstanceFilter upstreamInstanceFilter() {
+        return new UpstreamInstanceFilter();
+    }
+
+    @Bean
+    public FilterTimingProcessor filterTimingProcessor(FilterTimings filterTimings) {
+        FilterTimingProcessor processor = new FilterTimingProcessor(filterTimings);
+        FilterProcessor.setProcessor(processor);
+        return processor;
+    }
+
+    @Bean
+    public ServerTimingFilter serverTimingFilter(FilterTimings filterTimings) {
+        return new ServerTimingFilter(filterTimings);
+    }
+}
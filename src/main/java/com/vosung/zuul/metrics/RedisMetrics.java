@@ -0,0 +1,141 @@
+package com.vosung.zuul.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * RedisUtil的命令统计：
+ *   gateway.redis.commands{command,result}   每个命令的耗时分布（result为success/error，失败的耗时单独统计，如超时）
+ *   gateway.redis.errors{command,exception}  每个命令按异常类型的失败次数
+ * 以及抽样的热点key（HotKeyTracker）。pipeline/事务整体记为PIPELINE/MULTI，其中每个命令的key计入热点统计。
+ * RedisUtil的方法捕获异常后只打印堆栈，这里是发现redis变慢或出错的主要途径
+ */
+@Component
+public class RedisMetrics {
+
+    private final MeterRegistry meterRegistry;
+
+    private final HotKeyTracker hotKeys;
+
+    private final ConcurrentMap<String, CommandMeters> commands = new ConcurrentHashMap<>();
+
+    public RedisMetrics(MeterRegistry meterRegistry,
+                        @Value("${gateway.redis.metrics.hot-key-sample-rate:0.01}") double hotKeySampleRate,
+                        @Value("${gateway.redis.metrics.hot-key-top:20}") int hotKeyTop,
+                        @Value("${gateway.redis.metrics.hot-key-width:2048}") int hotKeyWidth,
+                        @Value("${gateway.redis.metrics.hot-key-window:60000}") long hotKeyWindowMillis) {
+        this.meterRegistry = meterRegistry;
+        this.hotKeys = new HotKeyTracker(hotKeySampleRate, hotKeyTop, hotKeyWidth, hotKeyWindowMillis);
+    }
+
+    /**
+     * 执行并记录一个命令，异常原样抛出（由调用方按原来的方式处理）
+     * @param command redis命令名
+     * @param key 访问的key，计入热点统计，可以为null
+     */
+    public <T> T record(String command, String key, Supplier<T> call) {
+        hotKeys.record(key);
+        long start = System.nanoTime();
+        T result;
+        try {
+            result = call.get();
+        } catch (RuntimeException e) {
+            meters(command).failed(System.nanoTime() - start, e);
+            throw e;
+        }
+        meters(command).success.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return result;
+    }
+
+    /**
+     * 异步命令完成时记录
+     * @param error 成功时为null
+     */
+    public void record(String command, long elapsedNanos, Throwable error) {
+        if (error == null) {
+            meters(command).success.record(elapsedNanos, TimeUnit.NANOSECONDS);
+        } else {
+            meters(command).failed(elapsedNanos, error);
+        }
+    }
+
+    /**
+     * 只计入热点统计（如pipeline中的命令）
+     * @param key
+     */
+    public void recordKey(String key) {
+        hotKeys.record(key);
+    }
+
+    /**
+     * actuator端点用的汇总
+     */
+    public Map<String, Object> describe() {
+        Map<String, Object> commandSummaries = new LinkedHashMap<>();
+        for (CommandMeters meters : new TreeMap<>(commands).values()) {
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("success", RouteMetrics.summary(meters.success));
+            summary.put("error", RouteMetrics.summary(meters.error));
+            Map<String, Object> exceptions = new LinkedHashMap<>();
+            meters.exceptions.forEach((exception, counter) -> exceptions.put(exception, (long) counter.count()));
+            summary.put("exceptions", exceptions);
+            commandSummaries.put(meters.command, summary);
+        }
+        Map<String, Object> description = new LinkedHashMap<>();
+        description.put("commands", commandSummaries);
+        description.put("hotKeys", hotKeys.describe());
+        return description;
+    }
+
+    private CommandMeters meters(String command) {
+        CommandMeters meters = commands.get(command);
+        return meters != null ? meters : commands.computeIfAbsent(command, CommandMeters::new);
+    }
+
+    private Timer timer(String command, String result) {
+        return Timer.builder("gateway.redis.commands")
+                .description("Redis commands issued through RedisUtil")
+                .tags("command", command, "result", result)
+                .publishPercentiles(RouteMetrics.PERCENTILES)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    /**
+     * 一个命令的全部meter
+     */
+    private final class CommandMeters {
+        private final String command;
+        private final Timer success;
+        private final Timer error;
+        private final ConcurrentMap<String, Counter> exceptions = new ConcurrentHashMap<>();
+
+        private CommandMeters(String command) {
+            this.command = command;
+            this.success = timer(command, "success");
+            this.error = timer(command, "error");
+        }
+
+        private void failed(long elapsedNanos, Throwable e) {
+            error.record(elapsedNanos, TimeUnit.NANOSECONDS);
+            //CompletableFuture中的异常被包装过
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            exceptions.computeIfAbsent(cause.getClass().getSimpleName(), exception -> Counter.builder("gateway.redis.errors")
+                    .description("Failed redis commands issued through RedisUtil")
+                    .tags("command", command, "exception", exception)
+                    .register(meterRegistry)).increment();
+        }
+    }
+}
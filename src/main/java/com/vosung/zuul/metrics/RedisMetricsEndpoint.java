@@ -0,0 +1,34 @@
+package com.vosung.zuul.metrics;
+
+import com.vosung.zuul.constants.RedisCircuitBreaker;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * redis命令耗时、失败次数、热点key和熔断器状态：GET /actuator/redismetrics
+ * （原始的meter也可以通过 /actuator/metrics/gateway.redis.commands?tag=command:HGET 查看）
+ */
+@Component
+@Endpoint(id = "redismetrics")
+public class RedisMetricsEndpoint {
+
+    private final RedisMetrics redisMetrics;
+
+    private final RedisCircuitBreaker circuitBreaker;
+
+    public RedisMetricsEndpoint(RedisMetrics redisMetrics, RedisCircuitBreaker circuitBreaker) {
+        this.redisMetrics = redisMetrics;
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    @ReadOperation
+    public Map<String, Object> redis() {
+        Map<String, Object> description = new LinkedHashMap<>(redisMetrics.describe());
+        description.put("circuitBreaker", circuitBreaker.describe());
+        return description;
+    }
+}
@@ -0,0 +1,225 @@
+package com.vosung.zuul.metrics;
+
+import com.vosung.zuul.cache.DistributedCounters;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.cloud.netflix.zuul.RoutesRefreshedEvent;
+import org.springframework.cloud.netflix.zuul.filters.Route;
+import org.springframework.cloud.netflix.zuul.filters.SimpleRouteLocator;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 按zuul路由统计的流量和耗时：
+ *   gateway.route.requests{route,status}    请求数和耗时分布（status为1xx~5xx）
+ *   gateway.route.inflight{route}           正在处理的请求数
+ *   gateway.route.queue{route}              请求在tomcat中排队的时间（收到请求行到第一个过滤器之前）
+ *   gateway.route.upstream{route,instance}  转发到每个后端实例的请求耗时
+ * 路由的meter在启动和路由刷新时预先注册，请求链路上只做map查找和计数（无锁、不分配对象）。
+ * 另外按天统计整个集群每个路由的请求数（DistributedCounters，redis key gateway:stats:route:{route}:{yyyyMMdd}）
+ */
+@Component
+public class RouteMetrics {
+
+    /**
+     * 没有匹配任何路由的请求（actuator、404等）
+     */
+    public static final String UNMATCHED = "unmatched";
+
+    private static final String[] STATUS_CLASSES = {"unknown", "1xx", "2xx", "3xx", "4xx", "5xx"};
+
+    static final double[] PERCENTILES = {0.5, 0.99, 0.999};
+
+    private static final String[] PERCENTILE_NAMES = {"p50Ms", "p99Ms", "p999Ms"};
+
+    private static final String DAILY_KEY_PREFIX = "gateway:stats:route:";
+
+    private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    //按天统计的key保留两天
+    private static final long DAILY_TTL_SECONDS = TimeUnit.DAYS.toSeconds(2);
+
+    //按服务器时区划分日期
+    private static final long ZONE_OFFSET_MILLIS =
+            TimeUnit.SECONDS.toMillis(ZoneId.systemDefault().getRules().getOffset(Instant.now()).getTotalSeconds());
+
+    private final MeterRegistry meterRegistry;
+
+    private final SimpleRouteLocator simpleRouteLocator;
+
+    private final DistributedCounters counters;
+
+    private final ConcurrentMap<String, RouteMeters> routes = new ConcurrentHashMap<>();
+
+    public RouteMetrics(MeterRegistry meterRegistry, SimpleRouteLocator simpleRouteLocator,
+                        DistributedCounters counters) {
+        this.meterRegistry = meterRegistry;
+        this.simpleRouteLocator = simpleRouteLocator;
+        this.counters = counters;
+        meters(UNMATCHED);
+    }
+
+    @EventListener({ApplicationReadyEvent.class, RoutesRefreshedEvent.class})
+    public void registerRoutes() {
+        for (Route route : simpleRouteLocator.getRoutes()) {
+            meters(route.getId());
+        }
+    }
+
+    /**
+     * @param routeId 路由id，为null时归入unmatched
+     */
+    public RouteMeters meters(String routeId) {
+        if (routeId == null) {
+            routeId = UNMATCHED;
+        }
+        RouteMeters meters = routes.get(routeId);
+        return meters != null ? meters : routes.computeIfAbsent(routeId, RouteMeters::new);
+    }
+
+    /**
+     * actuator端点用的汇总
+     */
+    public Map<String, Object> describe() {
+        Map<String, Object> description = new LinkedHashMap<>();
+        for (RouteMeters meters : routes.values()) {
+            description.put(meters.routeId, meters.describe());
+        }
+        return description;
+    }
+
+    private Timer timer(String name, String description, String... tags) {
+        return Timer.builder(name)
+                .description(description)
+                .tags(tags)
+                .publishPercentiles(PERCENTILES)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    /**
+     * 一个路由的全部meter
+     */
+    public final class RouteMeters {
+        private final String routeId;
+        private final Timer[] requests = new Timer[STATUS_CLASSES.length];
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final Timer queue;
+        private final ConcurrentMap<String, Timer> upstreams = new ConcurrentHashMap<>();
+        private volatile DailyKey dailyKey = new DailyKey(-1, null);
+
+        private RouteMeters(String routeId) {
+            this.routeId = routeId;
+            for (int i = 0; i < STATUS_CLASSES.length; i++) {
+                requests[i] = timer("gateway.route.requests", "Requests handled by the gateway per zuul route",
+                        "route", routeId, "status", STATUS_CLASSES[i]);
+            }
+            this.queue = timer("gateway.route.queue", "Time from receiving the request line to the first filter",
+                    "route", routeId);
+            Gauge.builder("gateway.route.inflight", inFlight, AtomicInteger::get)
+                    .description("Requests currently being handled per zuul route")
+                    .tag("route", routeId)
+                    .register(meterRegistry);
+        }
+
+        public void begin(long queuedMillis) {
+            inFlight.incrementAndGet();
+            if (queuedMillis >= 0) {
+                queue.record(queuedMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        /**
+         * @param status 响应码
+         * @param elapsedNanos 网关处理耗时
+         * @param upstream 后端实例（host:port），没有转发时为null
+         */
+        public void end(int status, long elapsedNanos, String upstream) {
+            inFlight.decrementAndGet();
+            counters.increment(dailyKey(), DAILY_TTL_SECONDS);
+            int statusClass = status / 100;
+            requests[statusClass >= 1 && statusClass <= 5 ? statusClass : 0].record(elapsedNanos, TimeUnit.NANOSECONDS);
+            if (upstream != null) {
+                Timer timer = upstreams.get(upstream);
+                if (timer == null) {
+                    timer = upstreams.computeIfAbsent(upstream, instance -> timer("gateway.route.upstream",
+                            "Requests forwarded per zuul route and upstream instance", "route", routeId, "instance", instance));
+                }
+                timer.record(elapsedNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        //日期变化时才重新生成key
+        private String dailyKey() {
+            long day = Math.floorDiv(System.currentTimeMillis() + ZONE_OFFSET_MILLIS, DAY_MILLIS);
+            DailyKey current = dailyKey;
+            if (current.day != day) {
+                current = new DailyKey(day, DAILY_KEY_PREFIX + routeId + ":"
+                        + LocalDate.ofEpochDay(day).format(DateTimeFormatter.BASIC_ISO_DATE));
+                dailyKey = current;
+            }
+            return current.key;
+        }
+
+        private Map<String, Object> describe() {
+            Map<String, Object> description = new LinkedHashMap<>();
+            Map<String, Object> statuses = new LinkedHashMap<>();
+            long total = 0;
+            for (int i = 0; i < requests.length; i++) {
+                long count = requests[i].count();
+                if (count > 0) {
+                    statuses.put(STATUS_CLASSES[i], summary(requests[i]));
+                    total += count;
+                }
+            }
+            description.put("requests", total);
+            description.put("clusterRequestsToday", counters.get(dailyKey()));
+            description.put("inFlight", inFlight.get());
+            description.put("status", statuses);
+            description.put("queue", summary(queue));
+            Map<String, Object> instances = new LinkedHashMap<>();
+            upstreams.forEach((instance, timer) -> instances.put(instance, summary(timer)));
+            description.put("upstream", instances);
+            return description;
+        }
+    }
+
+    private static final class DailyKey {
+        private final long day;
+        private final String key;
+
+        private DailyKey(long day, String key) {
+            this.day = day;
+            this.key = key;
+        }
+    }
+
+    //次数、平均、最大和分位耗时（毫秒）
+    static Map<String, Object> summary(Timer timer) {
+        HistogramSnapshot snapshot = timer.takeSnapshot();
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("count", snapshot.count());
+        summary.put("meanMs", snapshot.mean(TimeUnit.MILLISECONDS));
+        summary.put("maxMs", snapshot.max(TimeUnit.MILLISECONDS));
+        ValueAtPercentile[] percentiles = snapshot.percentileValues();
+        for (int i = 0; i < percentiles.length && i < PERCENTILE_NAMES.length; i++) {
+            summary.put(PERCENTILE_NAMES[i], percentiles[i].value(TimeUnit.MILLISECONDS));
+        }
+        return summary;
+    }
+}
@@ -0,0 +1,27 @@
+package com.vosung.zuul.metrics;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * 按路由汇总的流量和耗时：GET /actuator/routemetrics
+ * （原始的meter也可以通过 /actuator/metrics/gateway.route.requests?tag=route:ksfApp 查看）
+ */
+@Component
+@Endpoint(id = "routemetrics")
+public class RouteMetricsEndpoint {
+
+    private final RouteMetrics routeMetrics;
+
+    public RouteMetricsEndpoint(RouteMetrics routeMetrics) {
+        this.routeMetrics = routeMetrics;
+    }
+
+    @ReadOperation
+    public Map<String, Object> routes() {
+        return routeMetrics.describe();
+    }
+}
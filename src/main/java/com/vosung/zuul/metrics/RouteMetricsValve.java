@@ -0,0 +1,60 @@
+package com.vosung.zuul.metrics;
+
+import com.vosung.zuul.route.RequestPaths;
+import com.vosung.zuul.route.RouteResolver;
+import org.apache.catalina.connector.Request;
+import org.apache.catalina.connector.Response;
+import org.apache.catalina.valves.ValveBase;
+import org.springframework.cloud.netflix.zuul.filters.Route;
+
+import javax.servlet.ServletException;
+import java.io.IOException;
+
+/**
+ * tomcat engine级别的valve：在所有servlet过滤器（包括Spring Security）之前开始计时，
+ * 被security拦截（401）的请求同样按路由统计。
+ * 排队时间取tomcat收到请求行的时间（coyote startTime，毫秒精度）到进入valve之间的间隔。
+ * 请求结束时同时交给AccessLog决定是否记录访问日志
+ */
+public class RouteMetricsValve extends ValveBase {
+
+    /**
+     * UpstreamInstanceFilter把转发的后端实例（host:port）放在这个request属性上
+     */
+    public static final String UPSTREAM_ATTRIBUTE = RouteMetricsValve.class.getName() + ".upstream";
+
+    private final RouteMetrics routeMetrics;
+
+    private final RouteResolver routeResolver;
+
+    private final AccessLog accessLog;
+
+    public RouteMetricsValve(RouteMetrics routeMetrics, RouteResolver routeResolver, AccessLog accessLog) {
+        super(true);
+        this.routeMetrics = routeMetrics;
+        this.routeResolver = routeResolver;
+        this.accessLog = accessLog;
+    }
+
+    @Override
+    public void invoke(Request request, Response response) throws IOException, ServletException {
+        long start = System.nanoTime();
+        long receivedAt = request.getCoyoteRequest().getStartTime();
+        Route route = routeResolver.getMatchingRoute(RequestPaths.pathWithinApplication(request));
+        RouteMetrics.RouteMeters meters = routeMetrics.meters(route == null ? null : route.getId());
+        long queuedMillis = receivedAt > 0 ? System.currentTimeMillis() - receivedAt : -1;
+        meters.begin(queuedMillis);
+        boolean failed = true;
+        try {
+            getNext().invoke(request, response);
+            failed = false;
+        } finally {
+            //异常会由tomcat转成500
+            int status = failed ? 500 : response.getStatus();
+            long elapsedNanos = System.nanoTime() - start;
+            String upstream = (String) request.getAttribute(UPSTREAM_ATTRIBUTE);
+            meters.end(status, elapsedNanos, upstream);
+            accessLog.log(request, route == null ? null : route.getId(), status, elapsedNanos, queuedMillis, upstream);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.vosung.zuul.metrics;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+
+/**
+ * 放在OAuth2AuthenticationProcessingFilter前后的两个标记过滤器，记录token校验这一步的耗时。
+ * Spring Security按过滤器的类确定位置，所以前后各用一个类：
+ * 校验失败时OAuth2AuthenticationProcessingFilter直接返回401，不会经过End，由Start在返回时记录
+ */
+public abstract class SecurityTimingFilter implements Filter {
+
+    private static final String START_ATTRIBUTE = SecurityTimingFilter.class.getName() + ".start";
+
+    protected final FilterTimings filterTimings;
+
+    protected SecurityTimingFilter(FilterTimings filterTimings) {
+        this.filterTimings = filterTimings;
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) {
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    public static class Start extends SecurityTimingFilter {
+
+        public Start(FilterTimings filterTimings) {
+            super(filterTimings);
+        }
+
+        @Override
+        public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+                throws IOException, ServletException {
+            HttpServletRequest httpRequest = (HttpServletRequest) request;
+            filterTimings.begin(httpRequest);
+            long start = System.nanoTime();
+            httpRequest.setAttribute(START_ATTRIBUTE, start);
+            try {
+                chain.doFilter(request, response);
+            } finally {
+                //End没有执行（认证失败或异常）
+                if (httpRequest.getAttribute(START_ATTRIBUTE) != null) {
+                    httpRequest.removeAttribute(START_ATTRIBUTE);
+                    filterTimings.recordSecurity(httpRequest, System.nanoTime() - start);
+                }
+            }
+        }
+    }
+
+    public static class End extends SecurityTimingFilter {
+
+        public End(FilterTimings filterTimings) {
+            super(filterTimings);
+        }
+
+        @Override
+        public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+                throws IOException, ServletException {
+            HttpServletRequest httpRequest = (HttpServletRequest) request;
+            Object start = httpRequest.getAttribute(START_ATTRIBUTE);
+            if (start != null) {
+                httpRequest.removeAttribute(START_ATTRIBUTE);
+                filterTimings.recordSecurity(httpRequest, System.nanoTime() - (Long) start);
+            }
+            chain.doFilter(request, response);
+        }
+    }
+}
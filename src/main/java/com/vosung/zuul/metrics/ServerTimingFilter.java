@@ -0,0 +1,45 @@
+package com.vosung.zuul.metrics;
+
+import com.netflix.zuul.ZuulFilter;
+import com.netflix.zuul.context.RequestContext;
+
+/**
+ * 抽中的请求在响应头中返回各阶段耗时，如：
+ * Server-Timing: security;dur=1.204, pre;dur=0.352, route;dur=18.930, post;dur=0.041
+ * 在SendResponseFilter(1000)写响应之前执行，post阶段不包括它自己和SendResponseFilter
+ */
+public class ServerTimingFilter extends ZuulFilter {
+
+    public static final String HEADER = "Server-Timing";
+
+    private final FilterTimings filterTimings;
+
+    public ServerTimingFilter(FilterTimings filterTimings) {
+        this.filterTimings = filterTimings;
+    }
+
+    @Override
+    public String filterType() {
+        return "post";
+    }
+
+    @Override
+    public int filterOrder() {
+        return 999;
+    }
+
+    @Override
+    public boolean shouldFilter() {
+        return RequestContext.getCurrentContext().getRequest().getAttribute(FilterTimings.STAGES_ATTRIBUTE) != null;
+    }
+
+    @Override
+    public Object run() {
+        RequestContext ctx = RequestContext.getCurrentContext();
+        String serverTiming = filterTimings.serverTiming(ctx.getRequest());
+        if (serverTiming != null && !serverTiming.isEmpty()) {
+            ctx.getResponse().addHeader(HEADER, serverTiming);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,49 @@
+package com.vosung.zuul.metrics;
+
+import com.netflix.client.IResponse;
+import com.netflix.zuul.ZuulFilter;
+import com.netflix.zuul.context.RequestContext;
+
+import java.net.URI;
+import java.net.URL;
+
+/**
+ * 记录本次转发的后端实例（host:port），供RouteMetricsValve按实例统计
+ * ribbon转发时取ribbonResponse的请求地址，url路由取routeHost
+ */
+public class UpstreamInstanceFilter extends ZuulFilter {
+
+    @Override
+    public String filterType() {
+        return "post";
+    }
+
+    @Override
+    public int filterOrder() {
+        //在SendResponseFilter(1000)之前
+        return 0;
+    }
+
+    @Override
+    public boolean shouldFilter() {
+        return true;
+    }
+
+    @Override
+    public Object run() {
+        RequestContext ctx = RequestContext.getCurrentContext();
+        String upstream = null;
+        Object ribbonResponse = ctx.get("ribbonResponse");
+        if (ribbonResponse instanceof IResponse) {
+            URI uri = ((IResponse) ribbonResponse).getRequestedURI();
+            upstream = uri == null ? null : uri.getAuthority();
+        } else {
+            URL routeHost = ctx.getRouteHost();
+            upstream = routeHost == null ? null : routeHost.getAuthority();
+        }
+        if (upstream != null) {
+            ctx.getRequest().setAttribute(RouteMetricsValve.UPSTREAM_ATTRIBUTE, upstream);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,36 @@
+package com.vosung.zuul.properties;
+
+import lombok.Data;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * RedisUtil读缓存配置（gateway.near-cache）
+ * 只缓存ttl中配置了前缀的key，按最长前缀取缓存时间；时间为0表示该前缀不缓存（用来排除更长的子前缀）。
+ * 所有网关节点需要使用相同的配置，否则写操作不会通知到其他节点
+ */
+@Data
+public class NearCacheProperties {
+
+    /**
+     * 是否开启
+     */
+    private boolean enabled = false;
+
+    /**
+     * 本地最多缓存的key数量
+     */
+    private long maximumSize = 10000;
+
+    /**
+     * 失效通知的pub/sub频道
+     */
+    private String channel = "gateway:nearcache:invalidate";
+
+    /**
+     * key前缀 -> 本地缓存时间（也是其他服务直接写redis时本地数据最长的不一致时间）
+     */
+    private Map<String, Duration> ttl = new LinkedHashMap<>();
+}
@@ -1,12 +1,17 @@
 package com.vosung.zuul.properties;
 
+import com.vosung.zuul.route.AntPatternTrie;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.Getter;
+import lombok.Setter;
 
 import javax.annotation.PostConstruct;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
-import java.util.regex.Pattern;
 
 /**
  * 配置文件属性及相关api
@@ -15,7 +20,10 @@ import java.util.regex.Pattern;
 @Data
 public class PermitAllUrlProperties {
 
-    private static List<Pattern> permitAllUrlPattern;
+    //所有放行路径编译成的前缀树，一次扫描uri完成匹配
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private volatile AntPatternTrie permitAllMatcher = AntPatternTrie.empty();
 
     private List<url> permitAll =new ArrayList<>();
 
@@ -28,10 +36,6 @@ public class PermitAllUrlProperties {
         return urls.toArray(new String[0]);
     }
 
-    public static List<Pattern> getPermitallUrlPattern() {
-        return permitAllUrlPattern;
-    }
-
     public static class url {
         private String pattern;
 
@@ -50,25 +54,29 @@ public class PermitAllUrlProperties {
      */
     @PostConstruct
     public void init() {
-        if (permitAll != null && permitAll.size() > 0) {
-            permitAllUrlPattern = new ArrayList();
-            Iterator<url> iterator = permitAll.iterator();
-            while (iterator.hasNext()) {
-                String currentUrl = iterator.next().getPattern().replaceAll("\\*\\*", "(.*?)");
-                Pattern currentPattern = Pattern.compile(currentUrl, Pattern.CASE_INSENSITIVE);
-                permitAllUrlPattern.add(currentPattern);
-            }
+        //与Spring Security的antMatchers语义一致（完整匹配、区分大小写），不再转换成不锚定的正则
+        permitAllMatcher = AntPatternTrie.compile(Arrays.asList(getPermitallPatterns()));
+    }
 
-        }
+    /**
+     * 动态放行路径变化时调用：配置文件中的路径加上动态路径，编译成新的匹配器后整体替换
+     * @param dynamicPatterns
+     */
+    public void refresh(Collection<String> dynamicPatterns) {
+        List<String> patterns = new ArrayList<>(Arrays.asList(getPermitallPatterns()));
+        patterns.addAll(dynamicPatterns);
+        permitAllMatcher = AntPatternTrie.compile(patterns);
+    }
+
+    /**
+     * @return 当前生效的全部放行路径
+     */
+    public List<String> getEffectivePatterns() {
+        return permitAllMatcher.getPatterns();
     }
 
     public boolean isPermitAllUrl(String url) {
-        for (Pattern pattern : permitAllUrlPattern) {
-            if (pattern.matcher(url).find()) {
-                return true;
-            }
-        }
-        return false;
+        return permitAllMatcher.matches(url);
     }
 }
 
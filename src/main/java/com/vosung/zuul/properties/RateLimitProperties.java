@@ -0,0 +1,74 @@
+package com.vosung.zuul.properties;
+
+import lombok.Data;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 限流配置（gateway.rate-limit）
+ * 每个维度一个令牌桶：rate为每秒补充的令牌数，capacity为桶容量（允许的突发请求数），rate <= 0 表示该维度不限流
+ */
+@Data
+public class RateLimitProperties {
+
+    /**
+     * 是否开启限流
+     */
+    private boolean enabled = false;
+
+    /**
+     * 按Authorization请求头（Bearer token或Basic凭证）的摘要，在token校验之前生效，伪造的token只消耗自己的配额
+     */
+    private Limit token = new Limit();
+
+    /**
+     * 按用户id，在token校验之后生效（只使用校验过的用户信息）
+     */
+    private Limit user = new Limit();
+
+    /**
+     * 按客户端（token中的client_id），在token校验之后生效（只使用校验过的token）
+     */
+    private Limit client = new Limit();
+
+    /**
+     * 按客户端ip
+     */
+    private Limit ip = new Limit();
+
+    /**
+     * 按路由id（zuul.routes下的key）限制经过网关的总请求数
+     */
+    private Map<String, Limit> routes = new LinkedHashMap<>();
+
+    /**
+     * 取客户端ip的请求头（如网关前面有nginx时配置X-Real-IP），为空时使用连接的远端地址
+     */
+    private String ipHeader;
+
+    /**
+     * redis中令牌桶的key前缀
+     */
+    private String keyPrefix = "rate:";
+
+    @Data
+    public static class Limit {
+        /**
+         * 每秒补充的令牌数
+         */
+        private double rate;
+        /**
+         * 桶容量，不配置时等于rate
+         */
+        private double capacity;
+
+        public boolean isEnabled() {
+            return rate > 0;
+        }
+
+        public double getCapacity() {
+            return capacity > 0 ? capacity : rate;
+        }
+    }
+}
@@ -22,4 +22,22 @@ public class ServiceConfig {
         return new PermitAllUrlProperties();
     }
 
+    @Bean
+    @ConfigurationProperties(prefix = "security.oauth2.resource.introspection")
+    public TokenIntrospectionProperties getTokenIntrospectionProperties() {
+        return new TokenIntrospectionProperties();
+    }
+
+    @Bean
+    @ConfigurationProperties(prefix = "gateway.rate-limit")
+    public RateLimitProperties getRateLimitProperties() {
+        return new RateLimitProperties();
+    }
+
+    @Bean
+    @ConfigurationProperties(prefix = "gateway.near-cache")
+    public NearCacheProperties getNearCacheProperties() {
+        return new NearCacheProperties();
+    }
+
 }
@@ -0,0 +1,144 @@
+package com.vosung.zuul.properties;
+
+import lombok.Data;
+
+import java.time.Duration;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * token校验相关配置（security.oauth2.resource.introspection）
+ */
+@Data
+public class TokenIntrospectionProperties {
+
+    /**
+     * 校验模式：
+     * remote 每次请求都调用授权服务的/oauth/check_token端点
+     * local  使用public.cert公钥在网关本地验签（RS256），校验exp和client_id，不再请求授权服务
+     */
+    private VerificationMode mode = VerificationMode.REMOTE;
+
+    /**
+     * local模式下仍然走远程check_token的路由id（zuul.routes下的key，如login），为空表示全部本地校验
+     */
+    private Set<String> remoteRoutes = new LinkedHashSet<>();
+
+    /**
+     * local模式下允许的client_id，为空表示只校验client_id存在
+     */
+    private Set<String> clientIds = new LinkedHashSet<>();
+
+    /**
+     * check_token结果缓存
+     */
+    private Cache cache = new Cache();
+
+    /**
+     * check_token使用的http连接池
+     */
+    private Http http = new Http();
+
+    /**
+     * check_token对冲请求
+     */
+    private Hedge hedge = new Hedge();
+
+    @Data
+    public static class Cache {
+        /**
+         * 是否开启check_token结果缓存
+         */
+        private boolean enabled = true;
+        /**
+         * 最多缓存的token数，超出后按W-TinyLFU淘汰
+         */
+        private long maximumSize = 10000;
+        /**
+         * 缓存最长存活时间，同时不会超过token自身的exp
+         * （授权服务注销的token最多在这个时间内仍可通过网关）
+         */
+        private Duration maxTtl = Duration.ofMinutes(5);
+    }
+
+    @Data
+    public static class Http {
+        /**
+         * 连接池最大连接数
+         */
+        private int maxTotal = 200;
+        /**
+         * 每个授权服务实例（host:port）的最大连接数
+         */
+        private int maxPerRoute = 50;
+        /**
+         * 建立连接超时时间
+         */
+        private Duration connectTimeout = Duration.ofSeconds(1);
+        /**
+         * 读取超时时间
+         */
+        private Duration readTimeout = Duration.ofSeconds(3);
+        /**
+         * 从连接池获取连接的超时时间
+         */
+        private Duration connectionRequestTimeout = Duration.ofMillis(500);
+        /**
+         * 服务端未返回Keep-Alive时连接的保活时间
+         */
+        private Duration keepAlive = Duration.ofSeconds(30);
+        /**
+         * 空闲超过该时间的连接会被后台线程回收
+         */
+        private Duration idleTimeout = Duration.ofSeconds(30);
+        /**
+         * 连接空闲超过该时间后，复用前先校验连接是否可用
+         */
+        private Duration validateAfterInactivity = Duration.ofSeconds(2);
+    }
+
+    @Data
+    public static class Hedge {
+        /**
+         * 是否开启对冲请求（授权服务只有一个实例时不会真正对冲）
+         */
+        private boolean enabled = false;
+        /**
+         * 对冲延迟取近期check_token耗时的分位数
+         */
+        private double percentile = 0.95;
+        /**
+         * 对冲延迟下限
+         */
+        private Duration minDelay = Duration.ofMillis(20);
+        /**
+         * 对冲延迟上限（样本不足时使用）
+         */
+        private Duration maxDelay = Duration.ofMillis(500);
+        /**
+         * 计算分位数需要的最少样本数
+         */
+        private long minSamples = 100;
+        /**
+         * 对冲预算：每次正常调用积累的对冲次数，最大为1（即对授权服务的压力最多翻倍）
+         */
+        private double budgetRatio = 0.1;
+        /**
+         * 预算最多积累的对冲次数
+         */
+        private long maxBurst = 20;
+        /**
+         * 执行check_token的线程数
+         */
+        private int threads = 32;
+        /**
+         * 线程池队列长度
+         */
+        private int queueCapacity = 256;
+    }
+
+    public enum VerificationMode {
+        REMOTE,
+        LOCAL
+    }
+}
@@ -0,0 +1,64 @@
+package com.vosung.zuul.ratelimit;
+
+import com.vosung.zuul.properties.RateLimitProperties;
+import com.vosung.zuul.vo.UserContext;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.authentication.OAuth2AuthenticationDetails;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * 按用户、客户端限流：排在Spring Security过滤器链之后（仍在它的SecurityContext范围内），
+ * 只使用token校验（check_token或本地验签）得到的OAuth2Authentication中的用户id和client_id，
+ * 未认证的请求（放行路径等）不按这两个维度限流
+ */
+public class AuthenticatedRateLimitFilter extends OncePerRequestFilter {
+
+    private final RateLimiter rateLimiter;
+
+    private final RateLimitProperties properties;
+
+    public AuthenticatedRateLimitFilter(RateLimiter rateLimiter, RateLimitProperties properties) {
+        this.rateLimiter = rateLimiter;
+        this.properties = properties;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !properties.isEnabled() || !(properties.getUser().isEnabled() || properties.getClient().isEnabled());
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication instanceof OAuth2Authentication && authentication.isAuthenticated()) {
+            OAuth2Authentication oAuth2Authentication = (OAuth2Authentication) authentication;
+            long retryAfterMillis = rateLimiter.acquireAuthenticated(userId(oAuth2Authentication),
+                    oAuth2Authentication.getOAuth2Request().getClientId());
+            if (retryAfterMillis > 0) {
+                RateLimitFilter.reject(response, retryAfterMillis);
+                return;
+            }
+        }
+        chain.doFilter(request, response);
+    }
+
+    //CustomRemoteTokenServices放入的用户信息，OAuth2AuthenticationManager保存为decodedDetails
+    private static String userId(OAuth2Authentication authentication) {
+        if (authentication.getDetails() instanceof OAuth2AuthenticationDetails) {
+            Object decodedDetails = ((OAuth2AuthenticationDetails) authentication.getDetails()).getDecodedDetails();
+            if (decodedDetails instanceof UserContext) {
+                return ((UserContext) decodedDetails).getUserId();
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,36 @@
+package com.vosung.zuul.ratelimit;
+
+import com.vosung.zuul.properties.RateLimitProperties;
+import com.vosung.zuul.route.RouteResolver;
+import org.springframework.boot.autoconfigure.security.SecurityProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 注册限流过滤器：RateLimitFilter在springSecurityFilterChain（SecurityProperties.DEFAULT_FILTER_ORDER）之前，
+ * AuthenticatedRateLimitFilter在它之后（token已校验）
+ */
+@Configuration
+public class RateLimitConfig {
+
+    @Bean
+    public FilterRegistrationBean<RateLimitFilter> rateLimitFilter(RateLimiter rateLimiter, RateLimitProperties properties,
+                                                                   RouteResolver routeResolver) {
+        FilterRegistrationBean<RateLimitFilter> registration =
+                new FilterRegistrationBean<>(new RateLimitFilter(rateLimiter, properties, routeResolver));
+        registration.setOrder(SecurityProperties.DEFAULT_FILTER_ORDER - 1);
+        registration.addUrlPatterns("/*");
+        return registration;
+    }
+
+    @Bean
+    public FilterRegistrationBean<AuthenticatedRateLimitFilter> authenticatedRateLimitFilter(RateLimiter rateLimiter,
+                                                                                             RateLimitProperties properties) {
+        FilterRegistrationBean<AuthenticatedRateLimitFilter> registration =
+                new FilterRegistrationBean<>(new AuthenticatedRateLimitFilter(rateLimiter, properties));
+        registration.setOrder(SecurityProperties.DEFAULT_FILTER_ORDER + 1);
+        registration.addUrlPatterns("/*");
+        return registration;
+    }
+}
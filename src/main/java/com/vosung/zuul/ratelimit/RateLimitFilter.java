@@ -0,0 +1,74 @@
+package com.vosung.zuul.ratelimit;
+
+import com.vosung.zuul.properties.RateLimitProperties;
+import com.vosung.zuul.route.RequestPaths;
+import com.vosung.zuul.route.RouteResolver;
+import org.springframework.cloud.netflix.zuul.filters.Route;
+import org.springframework.util.StringUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * 限流过滤器：排在Spring Security过滤器链之前（也就在token校验和AccessFilter之前），
+ * 超出限制的请求直接返回429和Retry-After，不再做token校验、路由匹配之后的任何工作。
+ * 这里还没有校验token，不读取jwt载荷中的用户id、client_id：按Authorization请求头的摘要、ip、路由限流，
+ * 伪造的token只消耗它自己的配额；用户和客户端维度在token校验之后由AuthenticatedRateLimitFilter判断
+ */
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    private final RateLimiter rateLimiter;
+
+    private final RateLimitProperties properties;
+
+    private final RouteResolver routeResolver;
+
+    public RateLimitFilter(RateLimiter rateLimiter, RateLimitProperties properties, RouteResolver routeResolver) {
+        this.rateLimiter = rateLimiter;
+        this.properties = properties;
+        this.routeResolver = routeResolver;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !properties.isEnabled();
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String authorization = request.getHeader("Authorization");
+        Route route = routeResolver.getMatchingRoute(RequestPaths.pathWithinApplication(request));
+        long retryAfterMillis = rateLimiter.acquire(StringUtils.hasText(authorization) ? authorization : null,
+                clientIp(request), route == null ? null : route.getId());
+        if (retryAfterMillis > 0) {
+            reject(response, retryAfterMillis);
+            return;
+        }
+        chain.doFilter(request, response);
+    }
+
+    private String clientIp(HttpServletRequest request) {
+        if (StringUtils.hasText(properties.getIpHeader())) {
+            String ip = request.getHeader(properties.getIpHeader());
+            if (StringUtils.hasText(ip)) {
+                //X-Forwarded-For取第一个（最初的客户端）
+                int comma = ip.indexOf(',');
+                return (comma < 0 ? ip : ip.substring(0, comma)).trim();
+            }
+        }
+        return request.getRemoteAddr();
+    }
+
+    static void reject(HttpServletResponse response, long retryAfterMillis) throws IOException {
+        response.setStatus(429);
+        //Retry-After只支持整秒
+        response.setHeader("Retry-After", String.valueOf((retryAfterMillis + 999) / 1000));
+        response.setContentType("text/plain;charset=UTF-8");
+        response.getWriter().write("请求过于频繁，请稍后再试！");
+    }
+}
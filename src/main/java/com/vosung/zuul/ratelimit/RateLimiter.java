@@ -0,0 +1,136 @@
+package com.vosung.zuul.ratelimit;
+
+import com.vosung.zuul.constants.RedisUtil;
+import com.vosung.zuul.properties.RateLimitProperties;
+import com.vosung.zuul.properties.RateLimitProperties.Limit;
+import com.vosung.zuul.resourceserverconfig.TokenIntrospectionCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scripting.support.ResourceScriptSource;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 分布式令牌桶：一次判断涉及的各维度的桶在一次lua脚本调用中原子判断和扣减，分两个阶段：
+ *   token校验之前（RateLimitFilter）：Authorization请求头摘要、ip、路由，一次redis往返
+ *   token校验之后（AuthenticatedRateLimitFilter）：校验过的用户id、client_id，一次redis往返
+ * 用户和客户端维度只使用校验过的身份，不读取未验签的jwt载荷（否则可以伪造他人的user_id耗尽他人的配额）。
+ * redis不可用、超过时间预算或熔断时放行（fail open，见RedisCircuitBreaker），
+ * 并计数 gateway.ratelimit{result=error}
+ * 注意：脚本一次操作多个key，redis集群模式下需要这些key在同一个slot
+ */
+@Component
+public class RateLimiter {
+
+    public enum Dimension {
+        TOKEN, USER, CLIENT, IP, ROUTE
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> SCRIPT = script();
+
+    private final RedisUtil redisUtil;
+
+    private final RateLimitProperties properties;
+
+    private final Counter allowed;
+
+    private final Counter error;
+
+    private final Map<Dimension, Counter> rejected = new EnumMap<>(Dimension.class);
+
+    public RateLimiter(RedisUtil redisUtil, RateLimitProperties properties, MeterRegistry meterRegistry) {
+        this.redisUtil = redisUtil;
+        this.properties = properties;
+        this.allowed = Counter.builder("gateway.ratelimit").tag("result", "allowed").tag("dimension", "none")
+                .register(meterRegistry);
+        this.error = Counter.builder("gateway.ratelimit").tag("result", "error").tag("dimension", "none")
+                .register(meterRegistry);
+        for (Dimension dimension : Dimension.values()) {
+            rejected.put(dimension, Counter.builder("gateway.ratelimit").tag("result", "rejected")
+                    .tag("dimension", dimension.name().toLowerCase()).register(meterRegistry));
+        }
+    }
+
+    /**
+     * token校验之前：为本次请求的Authorization请求头、ip、路由各取一个令牌
+     * @param authorization Authorization请求头（Bearer token或Basic凭证），只使用摘要，没有时为null
+     * @param ip 客户端ip
+     * @param routeId 路由id，没有时为null
+     * @return 放行时返回0，否则返回建议的重试等待时间（毫秒）
+     */
+    public long acquire(String authorization, String ip, String routeId) {
+        List<String> keys = new ArrayList<>(3);
+        List<Object> args = new ArrayList<>(7);
+        List<Dimension> dimensions = new ArrayList<>(3);
+        args.add(String.valueOf(System.currentTimeMillis()));
+        if (authorization != null && properties.getToken().isEnabled()) {
+            add(Dimension.TOKEN, TokenIntrospectionCache.digest(authorization), properties.getToken(), keys, args, dimensions);
+        }
+        add(Dimension.IP, ip, properties.getIp(), keys, args, dimensions);
+        add(Dimension.ROUTE, routeId, routeId == null ? null : properties.getRoutes().get(routeId), keys, args, dimensions);
+        return acquire(keys, args, dimensions);
+    }
+
+    /**
+     * token校验之后：为校验过的用户和客户端各取一个令牌
+     * @param userId 用户id，没有时为null
+     * @param clientId 客户端id，没有时为null
+     * @return 放行时返回0，否则返回建议的重试等待时间（毫秒）
+     */
+    public long acquireAuthenticated(String userId, String clientId) {
+        List<String> keys = new ArrayList<>(2);
+        List<Object> args = new ArrayList<>(5);
+        List<Dimension> dimensions = new ArrayList<>(2);
+        args.add(String.valueOf(System.currentTimeMillis()));
+        add(Dimension.USER, userId, properties.getUser(), keys, args, dimensions);
+        add(Dimension.CLIENT, clientId, properties.getClient(), keys, args, dimensions);
+        return acquire(keys, args, dimensions);
+    }
+
+    private long acquire(List<String> keys, List<Object> args, List<Dimension> dimensions) {
+        if (keys.isEmpty()) {
+            return 0;
+        }
+        List<?> result = redisUtil.executeGuarded(SCRIPT, keys, args.toArray());
+        if (result == null || result.size() < 3) {
+            error.increment();
+            return 0;
+        }
+        if (((Number) result.get(0)).longValue() == 1) {
+            allowed.increment();
+            return 0;
+        }
+        int limited = ((Number) result.get(2)).intValue();
+        if (limited >= 1 && limited <= dimensions.size()) {
+            rejected.get(dimensions.get(limited - 1)).increment();
+        }
+        return Math.max(1, ((Number) result.get(1)).longValue());
+    }
+
+    private void add(Dimension dimension, String value, Limit limit, List<String> keys, List<Object> args,
+                     List<Dimension> dimensions) {
+        if (value == null || value.isEmpty() || limit == null || !limit.isEnabled()) {
+            return;
+        }
+        keys.add(properties.getKeyPrefix() + dimension.name().toLowerCase() + ":" + value);
+        args.add(String.valueOf(limit.getRate()));
+        args.add(String.valueOf(limit.getCapacity()));
+        dimensions.add(dimension);
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static RedisScript<List> script() {
+        DefaultRedisScript<List> script = new DefaultRedisScript<>();
+        script.setScriptSource(new ResourceScriptSource(new ClassPathResource("scripts/rate_limit.lua")));
+        script.setResultType(List.class);
+        return script;
+    }
+}
@@ -2,26 +2,45 @@ package com.vosung.zuul.resourceserverconfig;
 
 
 
+import com.vosung.zuul.cache.RoleRegistry;
 import com.vosung.zuul.constants.SecurityConstants;
+import com.vosung.zuul.properties.TokenIntrospectionProperties.VerificationMode;
+import com.vosung.zuul.route.RequestPaths;
+import com.vosung.zuul.route.RouteResolver;
+import com.vosung.zuul.vo.UserContext;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.cloud.client.ServiceInstance;
 import org.springframework.cloud.client.loadbalancer.LoadBalancerClient;
+import org.springframework.cloud.netflix.zuul.filters.Route;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.MediaType;
+import org.springframework.http.client.ClientHttpRequestFactory;
 import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
 import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.jwt.Jwt;
+import org.springframework.security.jwt.JwtHelper;
+import org.springframework.security.jwt.crypto.sign.SignatureVerifier;
 import org.springframework.security.oauth2.common.OAuth2AccessToken;
 import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.common.util.JsonParser;
+import org.springframework.security.oauth2.common.util.JsonParserFactory;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
 import org.springframework.security.oauth2.provider.token.AccessTokenConverter;
 import org.springframework.security.oauth2.provider.token.DefaultAccessTokenConverter;
 import org.springframework.security.oauth2.provider.token.ResourceServerTokenServices;
 import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
 import org.springframework.web.client.DefaultResponseErrorHandler;
 import org.springframework.web.client.RestOperations;
 import org.springframework.web.client.RestTemplate;
@@ -29,7 +48,19 @@ import org.springframework.web.client.RestTemplate;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * token检查：
@@ -55,11 +86,50 @@ public class CustomRemoteTokenServices implements ResourceServerTokenServices {
     private String tokenName = "token";
 
     private AccessTokenConverter tokenConverter = new DefaultAccessTokenConverter();
+
+    //校验模式，默认远程调用check_token
+    private VerificationMode verificationMode = VerificationMode.REMOTE;
+
+    //本地验签使用的公钥校验器（public.cert）
+    private SignatureVerifier signatureVerifier;
+
+    private JsonParser jsonParser = JsonParserFactory.create();
+
+    //local模式下用来判断当前请求属于哪个路由
+    private RouteResolver routeResolver;
+
+    //local模式下仍然走远程check_token的路由id
+    private Set<String> remoteRoutes = Collections.emptySet();
+
+    //local模式下允许的client_id，为空只校验存在
+    private Set<String> clientIds = Collections.emptySet();
+
+    //check_token结果缓存，为空表示不缓存
+    private TokenIntrospectionCache introspectionCache;
+
+    //正在进行中的check_token调用，同一个token的并发请求共用一次调用结果
+    private final ConcurrentMap<String, CompletableFuture<OAuth2Authentication>> inFlightIntrospections = new ConcurrentHashMap<>();
+
+    //被合并（没有自己发起check_token）的调用次数
+    private Counter coalescedCounter;
+
+    //对冲请求策略，为空表示不对冲
+    private IntrospectionHedging hedging;
+
+    //角色快照，用来判断超级管理员
+    private RoleRegistry roleRegistry;
     /**
      * 实现对请求出现的异常进行判别处理，RestTemplate实例可以通过调用setErrorHandler方法设置ErrorHandler
      */
     public CustomRemoteTokenServices() {
-        restTemplate = new RestTemplate();
+        this(new SimpleClientHttpRequestFactory());
+    }
+
+    /**
+     * @param requestFactory 调用check_token使用的http客户端（连接池、超时等）
+     */
+    public CustomRemoteTokenServices(ClientHttpRequestFactory requestFactory) {
+        restTemplate = new RestTemplate(requestFactory);
         ((RestTemplate) restTemplate).setErrorHandler(new DefaultResponseErrorHandler() {
             @Override
             // Ignore 400
@@ -100,6 +170,44 @@ public class CustomRemoteTokenServices implements ResourceServerTokenServices {
         this.loadBalancerClient = loadBalancerClient;
     }
 
+    public void setVerificationMode(VerificationMode verificationMode) {
+        this.verificationMode = verificationMode;
+    }
+
+    public void setSignatureVerifier(SignatureVerifier signatureVerifier) {
+        this.signatureVerifier = signatureVerifier;
+    }
+
+    public void setRouteResolver(RouteResolver routeResolver) {
+        this.routeResolver = routeResolver;
+    }
+
+    public void setRemoteRoutes(Set<String> remoteRoutes) {
+        this.remoteRoutes = remoteRoutes;
+    }
+
+    public void setClientIds(Set<String> clientIds) {
+        this.clientIds = clientIds;
+    }
+
+    public void setIntrospectionCache(TokenIntrospectionCache introspectionCache) {
+        this.introspectionCache = introspectionCache;
+    }
+
+    public void setHedging(IntrospectionHedging hedging) {
+        this.hedging = hedging;
+    }
+
+    public void setRoleRegistry(RoleRegistry roleRegistry) {
+        this.roleRegistry = roleRegistry;
+    }
+
+    public void setMeterRegistry(MeterRegistry meterRegistry) {
+        this.coalescedCounter = Counter.builder("token.introspection.coalesced")
+                .description("check_token calls served by another in-flight call for the same token")
+                .register(meterRegistry);
+    }
+
 
     /**
      * /oauth/check_token 端点里边会调用ResourceServerTokenServices里的此方法 这里重写
@@ -118,6 +226,7 @@ public class CustomRemoteTokenServices implements ResourceServerTokenServices {
      *      ->先去跳转到check_token端点，来检查token的合法性（即从redis查有无，以及过期与否）
      *      ->从http头中取出token值->封装成accessToken对象->解密为map对象
      *      ->通过DefaultAcccessTokenConverter进行解析map，转换成OAuth2Authentication对象
+     *  local模式下直接用公钥本地验签，只有配置在remoteRoutes中的路由才会继续跳转check_token
      * @param accessToken
      * @return
      * @throws AuthenticationException
@@ -125,11 +234,132 @@ public class CustomRemoteTokenServices implements ResourceServerTokenServices {
      */
     @Override
     public OAuth2Authentication loadAuthentication(String accessToken) throws AuthenticationException, InvalidTokenException {
+        if (verificationMode == VerificationMode.LOCAL && !isRemoteRoute()) {
+            return loadAuthenticationLocally(accessToken);
+        }
+        return loadAuthenticationRemotely(accessToken);
+    }
+
+    /**
+     * 本地校验：RS256验签 -> 校验exp（必须存在） -> 校验client_id -> 解析claims组装OAuth2Authentication
+     * 注意：本地校验无法感知授权服务端已注销（从redis删除）的token，需要即时失效的路由请配置到remoteRoutes
+     * @param accessToken
+     * @return
+     */
+    private OAuth2Authentication loadAuthenticationLocally(String accessToken) {
+        Map<String, Object> map;
+        try {
+            Jwt jwt = JwtHelper.decodeAndVerify(accessToken, signatureVerifier);
+            map = jsonParser.parseMap(jwt.getClaims());
+        } catch (RuntimeException e) {
+            logger.debug("local verification failed: " + e.getMessage());
+            throw new InvalidTokenException(accessToken);
+        }
+        //没有exp（或不是数字）的token本地校验时永不过期，直接拒绝
+        Object exp = map.get(AccessTokenConverter.EXP);
+        if (!(exp instanceof Number)) {
+            throw new InvalidTokenException("Missing or invalid exp in token");
+        }
+        if (((Number) exp).longValue() * 1000L <= System.currentTimeMillis()) {
+            throw new InvalidTokenException("Token has expired");
+        }
+        Object clientId = map.get(AccessTokenConverter.CLIENT_ID);
+        if (clientId == null || (!clientIds.isEmpty() && !clientIds.contains(clientId))) {
+            throw new InvalidTokenException("Invalid client_id in token");
+        }
+        return withUserContext(tokenConverter.extractAuthentication(map), map);
+    }
+
+    /**
+     * 把用户信息（用户id、用户名、角色、是否超级管理员）作为details放到OAuth2Authentication上，
+     * OAuth2AuthenticationManager会把它保存为OAuth2AuthenticationDetails的decodedDetails，
+     * AccessFilter直接读取，不必再解析一次Authorization请求头
+     * @param authentication
+     * @param map token载荷或check_token返回的信息
+     * @return
+     */
+    private OAuth2Authentication withUserContext(OAuth2Authentication authentication, Map<String, ?> map) {
+        Object userId = map.get(SecurityConstants.USER_ID_IN_HEADER);
+        if (userId == null) {
+            userId = map.get("user_id");
+        }
+        Object userName = map.get("user_name");
+        Object rolesValue = map.get("roles");
+        String roles = rolesValue instanceof Collection
+                ? StringUtils.collectionToCommaDelimitedString((Collection<?>) rolesValue)
+                : (rolesValue == null ? null : rolesValue.toString());
+        boolean superAdmin = roleRegistry != null && roleRegistry.isSuperAdmin(roles);
+        authentication.setDetails(new UserContext(userId == null ? null : userId.toString(),
+                userName == null ? null : userName.toString(), roles, superAdmin));
+        return authentication;
+    }
+
+    /**
+     * 当前请求是否属于必须走check_token的路由
+     * （OAuth2AuthenticationProcessingFilter在zuul之前执行，这里通过RequestContextHolder拿到当前请求）
+     * @return
+     */
+    private boolean isRemoteRoute() {
+        if (remoteRoutes.isEmpty() || routeResolver == null) {
+            return false;
+        }
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (!(attributes instanceof ServletRequestAttributes)) {
+            return false;
+        }
+        Route route = routeResolver.getMatchingRoute(
+                RequestPaths.pathWithinApplication(((ServletRequestAttributes) attributes).getRequest()));
+        return route != null && remoteRoutes.contains(route.getId());
+    }
+
+    /**
+     * 远程校验：先查缓存，未命中再跳转授权服务check_token端点
+     * 同一个token同时只发起一次check_token（页面加载时会用同一个token并发几十个请求），
+     * 其余请求等待这次调用的结果，调用失败时异常同样抛给所有等待的请求
+     * @param accessToken
+     * @return
+     */
+    private OAuth2Authentication loadAuthenticationRemotely(String accessToken) {
+        if (introspectionCache != null) {
+            OAuth2Authentication cached = introspectionCache.get(accessToken);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        CompletableFuture<OAuth2Authentication> call = new CompletableFuture<>();
+        CompletableFuture<OAuth2Authentication> inFlight = inFlightIntrospections.putIfAbsent(accessToken, call);
+        if (inFlight != null) {
+            if (coalescedCounter != null) {
+                coalescedCounter.increment();
+            }
+            return awaitIntrospection(inFlight);
+        }
+        try {
+            OAuth2Authentication authentication = introspect(accessToken);
+            call.complete(authentication);
+            return authentication;
+        } catch (RuntimeException | Error e) {
+            call.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlightIntrospections.remove(accessToken, call);
+        }
+    }
+
+    //等待同一个token正在进行中的check_token，返回副本（OAuth2AuthenticationManager会修改返回对象的details）
+    private OAuth2Authentication awaitIntrospection(CompletableFuture<OAuth2Authentication> inFlight) {
+        return TokenIntrospectionCache.copyOf(join(inFlight));
+    }
+
+    //跳转授权服务check_token端点
+    private OAuth2Authentication introspect(String accessToken) {
 
         MultiValueMap<String, String> formData = new LinkedMultiValueMap<>(1);
         formData.add(tokenName, accessToken);
         HttpHeaders headers = new HttpHeaders();
         headers.set("Authorization", getAuthorizationHeader(clientId, clientSecret));
+        headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
 
         //选择服务实例，根据传入的服务名serviceId，从负载均衡器中挑选一个对应服务的实例。(选择认证授权服务)
         ServiceInstance serviceInstance = loadBalancerClient.choose(SecurityConstants.AUTH_SERVICE);
@@ -137,7 +367,9 @@ public class CustomRemoteTokenServices implements ResourceServerTokenServices {
             throw new RuntimeException("Failed to choose an auth instance.");
         }
         //serviceInstance：认证授权权服务实例的基本信息存储在ServiceInstance中，拼接并跳转到check_token端点
-        Map<String, Object> map = postForMap(serviceInstance.getUri().toString() + checkTokenEndpointUrl, formData, headers);
+        Map<String, Object> map = hedging == null
+                ? postForMap(serviceInstance.getUri().toString() + checkTokenEndpointUrl, formData, headers)
+                : postForMapHedged(serviceInstance, formData, headers);
 
         if (map.containsKey("error")) {
             logger.debug("check_token returned error: " + map.get("error"));
@@ -147,7 +379,11 @@ public class CustomRemoteTokenServices implements ResourceServerTokenServices {
         Assert.state(map.containsKey("client_id"), "Client id must be present in response from auth server");
         //解析组装服务端返回的信息（user用户信息）
         // 主要实现：（DefaultAccessTokenConverter里面userTokenConverter.extractAuthentication(map);很重要）
-        return tokenConverter.extractAuthentication(map);
+        OAuth2Authentication authentication = withUserContext(tokenConverter.extractAuthentication(map), map);
+        if (introspectionCache != null) {
+            introspectionCache.put(accessToken, authentication, map.get(AccessTokenConverter.EXP));
+        }
+        return authentication;
     }
 
 
@@ -160,6 +396,107 @@ public class CustomRemoteTokenServices implements ResourceServerTokenServices {
         }
     }
 
+    /**
+     * 对冲调用check_token：
+     * 先请求primary实例，超过对冲延迟（近期耗时的p分位）仍未返回且还有对冲预算时，
+     * 再向另一个实例发一次，取先成功返回的结果，两次都失败时抛出先失败的异常
+     * @param primary
+     * @param formData
+     * @param headers
+     * @return
+     */
+    private Map<String, Object> postForMapHedged(ServiceInstance primary, MultiValueMap<String, String> formData, HttpHeaders headers) {
+        CompletableFuture<Map<String, Object>> first = hedging.submit(() -> {
+            long start = System.nanoTime();
+            try {
+                return postForMap(primary.getUri().toString() + checkTokenEndpointUrl, formData, headers);
+            } finally {
+                //失败的调用（如读超时）同样计入耗时，否则对冲延迟会偏低
+                hedging.recordCall(System.nanoTime() - start);
+            }
+        });
+        try {
+            return first.get(hedging.hedgeDelayNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            logger.debug("check_token on " + primary.getUri() + " is slow, try to hedge");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for check_token", e);
+        } catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+        }
+
+        CompletableFuture<Map<String, Object>> second = null;
+        if (hedging.tryAcquire()) {
+            ServiceInstance secondary = chooseOtherAuthInstance(primary);
+            if (secondary == null) {
+                hedging.refund();
+            } else {
+                second = hedging.submitHedge(() -> postForMap(secondary.getUri().toString() + checkTokenEndpointUrl, formData, headers));
+            }
+        }
+        if (second == null) {
+            return join(first);
+        }
+
+        CompletableFuture<Map<String, Object>> winner = new CompletableFuture<>();
+        AtomicInteger failures = new AtomicInteger();
+        //先失败的异常，在计数之前记录，第二个失败的调用抛出它
+        AtomicReference<Throwable> firstFailure = new AtomicReference<>();
+        first.whenComplete((result, ex) -> {
+            if (ex == null) {
+                winner.complete(result);
+            } else {
+                firstFailure.compareAndSet(null, ex);
+                if (failures.incrementAndGet() == 2) {
+                    winner.completeExceptionally(firstFailure.get());
+                }
+            }
+        });
+        second.whenComplete((result, ex) -> {
+            if (ex == null) {
+                if (winner.complete(result)) {
+                    hedging.recordHedgeWon();
+                }
+            } else {
+                firstFailure.compareAndSet(null, ex);
+                if (failures.incrementAndGet() == 2) {
+                    winner.completeExceptionally(firstFailure.get());
+                }
+            }
+        });
+        return join(winner);
+    }
+
+    //选择一个和primary不同的授权服务实例，只有一个实例时返回null
+    private ServiceInstance chooseOtherAuthInstance(ServiceInstance primary) {
+        for (int i = 0; i < 3; i++) {
+            ServiceInstance candidate = loadBalancerClient.choose(SecurityConstants.AUTH_SERVICE);
+            if (candidate != null && !(candidate.getHost().equals(primary.getHost()) && candidate.getPort() == primary.getPort())) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw unwrap(e.getCause());
+        }
+    }
+
+    private static RuntimeException unwrap(Throwable cause) {
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new IllegalStateException(cause);
+    }
+
     //到达check_token端点
     private Map<String, Object> postForMap(String path, MultiValueMap<String, String> formData, HttpHeaders headers) {
         if (headers.getContentType() == null) {
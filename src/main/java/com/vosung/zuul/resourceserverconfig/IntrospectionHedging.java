@@ -0,0 +1,200 @@
+package com.vosung.zuul.resourceserverconfig;
+
+import com.vosung.zuul.properties.TokenIntrospectionProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * check_token对冲请求策略：
+ * 第一个授权服务实例在“近期耗时的p分位”内没有返回时，向另一个实例再发一次，取先返回的结果。
+ * 对冲次数受预算限制：每次正常调用积累ratio个额度，每次对冲消耗1个，ratio最大为1，保证对授权服务的压力不超过两倍
+ */
+public class IntrospectionHedging implements DisposableBean {
+
+    private static final long CREDIT_UNIT = 1000L;
+
+    //对冲延迟最多每秒重新计算一次
+    private static final long REFRESH_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final ExecutorService executor;
+
+    private final double percentile;
+
+    private final long minDelayNanos;
+
+    private final long maxDelayNanos;
+
+    private final long minSamples;
+
+    private final long creditPerCall;
+
+    private final long maxCredits;
+
+    //记录最近的check_token耗时（微秒）
+    private final Recorder recorder = new Recorder(3);
+
+    private final Histogram window = new Histogram(3);
+
+    private Histogram recycled;
+
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    private volatile long hedgeDelayNanos;
+
+    private volatile long nextRefreshNanos = System.nanoTime();
+
+    private final AtomicLong credits = new AtomicLong();
+
+    private final Counter hedgeSent;
+
+    private final Counter hedgeWon;
+
+    private final Counter budgetExhausted;
+
+    public IntrospectionHedging(TokenIntrospectionProperties.Hedge hedge, MeterRegistry meterRegistry) {
+        this.percentile = hedge.getPercentile();
+        this.minDelayNanos = hedge.getMinDelay().toNanos();
+        this.maxDelayNanos = hedge.getMaxDelay().toNanos();
+        this.minSamples = hedge.getMinSamples();
+        this.creditPerCall = (long) (Math.min(hedge.getBudgetRatio(), 1.0d) * CREDIT_UNIT);
+        this.maxCredits = hedge.getMaxBurst() * CREDIT_UNIT;
+        this.hedgeDelayNanos = maxDelayNanos;
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(hedge.getThreads(), hedge.getThreads(), 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(hedge.getQueueCapacity()), runnable -> {
+            Thread thread = new Thread(runnable, "check-token-hedge-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        ((ThreadPoolExecutor) executor).allowCoreThreadTimeOut(true);
+
+        this.hedgeSent = Counter.builder("token.introspection.hedge").tag("result", "sent").register(meterRegistry);
+        this.hedgeWon = Counter.builder("token.introspection.hedge").tag("result", "won").register(meterRegistry);
+        this.budgetExhausted = Counter.builder("token.introspection.hedge").tag("result", "budget_exhausted").register(meterRegistry);
+        Gauge.builder("token.introspection.hedge.delay", this, h -> h.hedgeDelayNanos / 1_000_000d)
+                .description("current hedge delay in milliseconds")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 异步执行一次调用，线程池满时在调用线程上直接执行
+     * @param call
+     * @param <T>
+     * @return
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> call) {
+        try {
+            return CompletableFuture.supplyAsync(call, executor);
+        } catch (RejectedExecutionException e) {
+            CompletableFuture<T> future = new CompletableFuture<>();
+            try {
+                future.complete(call.get());
+            } catch (RuntimeException | Error ex) {
+                future.completeExceptionally(ex);
+            }
+            return future;
+        }
+    }
+
+    /**
+     * 发起对冲请求，线程池满时返回null（不对冲）
+     * @param call
+     * @param <T>
+     * @return
+     */
+    public <T> CompletableFuture<T> submitHedge(Supplier<T> call) {
+        try {
+            CompletableFuture<T> future = CompletableFuture.supplyAsync(call, executor);
+            hedgeSent.increment();
+            return future;
+        } catch (RejectedExecutionException e) {
+            refund();
+            return null;
+        }
+    }
+
+    /**
+     * 每次primary调用（无论成功失败）记录耗时并积累对冲额度
+     * @param elapsedNanos
+     */
+    public void recordCall(long elapsedNanos) {
+        recorder.recordValue(Math.max(1L, TimeUnit.NANOSECONDS.toMicros(elapsedNanos)));
+        long current;
+        do {
+            current = credits.get();
+            if (current >= maxCredits) {
+                break;
+            }
+        } while (!credits.compareAndSet(current, Math.min(maxCredits, current + creditPerCall)));
+    }
+
+    /**
+     * 消耗一次对冲额度
+     * @return 额度不足时返回false
+     */
+    public boolean tryAcquire() {
+        long current;
+        do {
+            current = credits.get();
+            if (current < CREDIT_UNIT) {
+                budgetExhausted.increment();
+                return false;
+            }
+        } while (!credits.compareAndSet(current, current - CREDIT_UNIT));
+        return true;
+    }
+
+    //对冲没有真正发出时退还额度
+    public void refund() {
+        credits.addAndGet(CREDIT_UNIT);
+    }
+
+    public void recordHedgeWon() {
+        hedgeWon.increment();
+    }
+
+    /**
+     * 对冲延迟：近期check_token耗时的p分位，限制在[minDelay, maxDelay]，样本不足时使用maxDelay
+     * @return
+     */
+    public long hedgeDelayNanos() {
+        long now = System.nanoTime();
+        if (now - nextRefreshNanos >= 0 && refreshing.compareAndSet(false, true)) {
+            try {
+                nextRefreshNanos = now + REFRESH_INTERVAL_NANOS;
+                Histogram interval = recorder.getIntervalHistogram(recycled);
+                window.add(interval);
+                recycled = interval;
+                if (window.getTotalCount() >= minSamples) {
+                    long delay = TimeUnit.MICROSECONDS.toNanos(window.getValueAtPercentile(percentile * 100));
+                    hedgeDelayNanos = Math.max(minDelayNanos, Math.min(maxDelayNanos, delay));
+                    window.reset();
+                }
+            } finally {
+                refreshing.set(false);
+            }
+        }
+        return hedgeDelayNanos;
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+}
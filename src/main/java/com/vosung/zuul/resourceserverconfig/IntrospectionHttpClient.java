@@ -0,0 +1,137 @@
+package com.vosung.zuul.resourceserverconfig;
+
+import com.vosung.zuul.properties.TokenIntrospectionProperties;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.http.HeaderElement;
+import org.apache.http.HeaderElementIterator;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.message.BasicHeaderElementIterator;
+import org.apache.http.protocol.HTTP;
+import org.apache.http.protocol.HttpContext;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * check_token专用的http客户端：
+ * 连接池按路由（即每个授权服务实例host:port）限制连接数，支持keep-alive、连接/读取超时和空闲连接回收，
+ * 并导出连接池指标（leased、pending、available、获取连接耗时）
+ */
+public class IntrospectionHttpClient implements DisposableBean {
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+
+    private final CloseableHttpClient httpClient;
+
+    private final HttpComponentsClientHttpRequestFactory requestFactory;
+
+    public IntrospectionHttpClient(TokenIntrospectionProperties.Http http, MeterRegistry meterRegistry) {
+        Timer acquireTimer = Timer.builder("token.introspection.pool.acquire")
+                .description("time spent waiting for a pooled connection to the auth server")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.connectionManager = new InstrumentedConnectionManager(acquireTimer);
+        this.connectionManager.setMaxTotal(http.getMaxTotal());
+        this.connectionManager.setDefaultMaxPerRoute(http.getMaxPerRoute());
+        this.connectionManager.setValidateAfterInactivity((int) http.getValidateAfterInactivity().toMillis());
+
+        Gauge.builder("token.introspection.pool.leased", connectionManager, cm -> cm.getTotalStats().getLeased())
+                .register(meterRegistry);
+        Gauge.builder("token.introspection.pool.pending", connectionManager, cm -> cm.getTotalStats().getPending())
+                .register(meterRegistry);
+        Gauge.builder("token.introspection.pool.available", connectionManager, cm -> cm.getTotalStats().getAvailable())
+                .register(meterRegistry);
+        Gauge.builder("token.introspection.pool.max", connectionManager, cm -> cm.getTotalStats().getMax())
+                .register(meterRegistry);
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout((int) http.getConnectTimeout().toMillis())
+                .setSocketTimeout((int) http.getReadTimeout().toMillis())
+                .setConnectionRequestTimeout((int) http.getConnectionRequestTimeout().toMillis())
+                .build();
+        this.httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy(keepAliveStrategy(http.getKeepAlive().toMillis()))
+                .evictExpiredConnections()
+                .evictIdleConnections(http.getIdleTimeout().toMillis(), TimeUnit.MILLISECONDS)
+                .disableCookieManagement()
+                .build();
+        this.requestFactory = new HttpComponentsClientHttpRequestFactory(httpClient);
+    }
+
+    public ClientHttpRequestFactory getRequestFactory() {
+        return requestFactory;
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        httpClient.close();
+    }
+
+    //服务端返回了Keep-Alive: timeout=x时以服务端为准，否则使用配置的时间
+    private static ConnectionKeepAliveStrategy keepAliveStrategy(long defaultKeepAliveMillis) {
+        return (HttpResponse response, HttpContext context) -> {
+            HeaderElementIterator it = new BasicHeaderElementIterator(response.headerIterator(HTTP.CONN_KEEP_ALIVE));
+            while (it.hasNext()) {
+                HeaderElement element = it.nextElement();
+                if ("timeout".equalsIgnoreCase(element.getName()) && element.getValue() != null) {
+                    try {
+                        return Long.parseLong(element.getValue()) * 1000L;
+                    } catch (NumberFormatException ignore) {
+                        break;
+                    }
+                }
+            }
+            return defaultKeepAliveMillis;
+        };
+    }
+
+    /**
+     * 统计从连接池获取连接的等待时间
+     */
+    private static class InstrumentedConnectionManager extends PoolingHttpClientConnectionManager {
+
+        private final Timer acquireTimer;
+
+        InstrumentedConnectionManager(Timer acquireTimer) {
+            this.acquireTimer = acquireTimer;
+        }
+
+        @Override
+        public ConnectionRequest requestConnection(HttpRoute route, Object state) {
+            final ConnectionRequest request = super.requestConnection(route, state);
+            return new ConnectionRequest() {
+                @Override
+                public HttpClientConnection get(long timeout, TimeUnit tunit)
+                        throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+                    long start = System.nanoTime();
+                    try {
+                        return request.get(timeout, tunit);
+                    } finally {
+                        acquireTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    }
+                }
+
+                @Override
+                public boolean cancel() {
+                    return request.cancel();
+                }
+            };
+        }
+    }
+}
@@ -1,9 +1,17 @@
 package com.vosung.zuul.resourceserverconfig;
 
 import com.vosung.authentication.authrizationserverconfig.CustomJwtAccessTokenConverter;
+import com.vosung.zuul.cache.RoleRegistry;
+import com.vosung.zuul.metrics.FilterTimings;
+import com.vosung.zuul.metrics.SecurityTimingFilter;
 import com.vosung.zuul.properties.PermitAllUrlProperties;
+import com.vosung.zuul.properties.TokenIntrospectionProperties;
+import com.vosung.zuul.route.RequestPaths;
+import com.vosung.zuul.route.RouteResolver;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.autoconfigure.security.oauth2.resource.ResourceServerProperties;
 import org.springframework.cloud.client.loadbalancer.LoadBalancerClient;
 import org.springframework.context.annotation.Bean;
@@ -12,10 +20,13 @@ import org.springframework.core.annotation.Order;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.core.io.Resource;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
+import org.springframework.security.jwt.crypto.sign.RsaVerifier;
 import org.springframework.security.oauth2.config.annotation.web.configuration.EnableResourceServer;
 import org.springframework.security.oauth2.config.annotation.web.configuration.ResourceServerConfigurerAdapter;
 import org.springframework.security.oauth2.config.annotation.web.configurers.ResourceServerSecurityConfigurer;
 import org.springframework.security.oauth2.provider.token.store.JwtAccessTokenConverter;
+import org.springframework.security.web.authentication.logout.LogoutFilter;
+import org.springframework.security.web.authentication.preauth.AbstractPreAuthenticatedProcessingFilter;
 import org.springframework.util.FileCopyUtils;
 
 import java.io.IOException;
@@ -44,9 +55,27 @@ public class ResourceServerConfig extends ResourceServerConfigurerAdapter {
     @Autowired
     private PermitAllUrlProperties permitAllUrlProperties;
 
+    @Autowired
+    private TokenIntrospectionProperties tokenIntrospectionProperties;
+
+    @Autowired
+    private RouteResolver routeResolver;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private RoleRegistry roleRegistry;
+
+    @Autowired
+    private FilterTimings filterTimings;
+
     /**
      * 通过配置指定什么请求不用登录即可访问,其余请求认证后才可以访问
      * 在网关配置文件配置（要加路由转发配置的前缀/authWebApp /ksfapp等）----设置以后，就不需要登录不需要携带Authorization请求头和token直接访问
+     * 放行路径可以在redis中动态追加（GatewayConfigRegistry），这里每次请求读取PermitAllUrlProperties当前的匹配器，不在启动时固定
+     * OAuth2AuthenticationProcessingFilter在配置阶段还没有注册顺序，计时过滤器按它前后的LogoutFilter、
+     * AbstractPreAuthenticatedProcessingFilter定位（它本身排在AbstractPreAuthenticatedProcessingFilter之前）
      * @param http
      * @throws Exception
      */
@@ -56,8 +85,11 @@ public class ResourceServerConfig extends ResourceServerConfigurerAdapter {
                 .requestMatchers().antMatchers("/**")
                 .and()
                 .authorizeRequests()
-                .antMatchers(permitAllUrlProperties.getPermitallPatterns()).permitAll()
-                .anyRequest().authenticated();
+                .requestMatchers(request -> permitAllUrlProperties.isPermitAllUrl(RequestPaths.pathWithinApplication(request))).permitAll()
+                .anyRequest().authenticated()
+                .and()
+                .addFilterAfter(new SecurityTimingFilter.Start(filterTimings), LogoutFilter.class)
+                .addFilterAfter(new SecurityTimingFilter.End(filterTimings), AbstractPreAuthenticatedProcessingFilter.class);
     }
 
     /**
@@ -67,19 +99,60 @@ public class ResourceServerConfig extends ResourceServerConfigurerAdapter {
      * 实现令牌token业务逻辑服务:
      * ResourceServerSecurityConfigurer 类中定义的ResourceServerTokenServices接口。
      * 自定义CustomRemoteTokenServices实现ResourceServerTokenServices------>定义了令牌加载、读取方法
+     * （2）local模式：使用public.cert公钥本地验签，不再请求授权服务器（remoteRoutes中的路由仍走check_token）
+     * （3）远程校验的结果按token缓存，同一个token在缓存有效期内不再重复调用check_token，
+     *      并发的同一个token只发起一次check_token，check_token使用专用的http连接池，可开启多实例对冲请求
      * @param resources
      */
     @Override
     public void configure(ResourceServerSecurityConfigurer resources) {
-        CustomRemoteTokenServices resourceServerTokenServices = new CustomRemoteTokenServices();
+        CustomRemoteTokenServices resourceServerTokenServices = new CustomRemoteTokenServices(introspectionHttpClient().getRequestFactory());
         resourceServerTokenServices.setCheckTokenEndpointUrl(resource.getTokenInfoUri());
         resourceServerTokenServices.setClientId(resource.getClientId());
         resourceServerTokenServices.setClientSecret(resource.getClientSecret());
         resourceServerTokenServices.setLoadBalancerClient(loadBalancerClient);
+        resourceServerTokenServices.setMeterRegistry(meterRegistry);
+        resourceServerTokenServices.setRoleRegistry(roleRegistry);
+        resourceServerTokenServices.setVerificationMode(tokenIntrospectionProperties.getMode());
+        if (tokenIntrospectionProperties.getMode() == TokenIntrospectionProperties.VerificationMode.LOCAL) {
+            resourceServerTokenServices.setSignatureVerifier(new RsaVerifier(readPublicKey()));
+            resourceServerTokenServices.setRouteResolver(routeResolver);
+            resourceServerTokenServices.setRemoteRoutes(tokenIntrospectionProperties.getRemoteRoutes());
+            resourceServerTokenServices.setClientIds(tokenIntrospectionProperties.getClientIds());
+            log.info("================token校验模式：本地公钥验签，远程校验路由：{}=======================", tokenIntrospectionProperties.getRemoteRoutes());
+        }
+        TokenIntrospectionProperties.Cache cache = tokenIntrospectionProperties.getCache();
+        if (cache.isEnabled()) {
+            TokenIntrospectionCache introspectionCache = new TokenIntrospectionCache(cache.getMaximumSize(), cache.getMaxTtl());
+            introspectionCache.bindTo(meterRegistry);
+            resourceServerTokenServices.setIntrospectionCache(introspectionCache);
+        }
+        if (tokenIntrospectionProperties.getHedge().isEnabled()) {
+            resourceServerTokenServices.setHedging(introspectionHedging());
+        }
         resources.tokenServices(resourceServerTokenServices);
     }
 
 
+    /**
+     * check_token专用http客户端（连接池、超时配置在security.oauth2.resource.introspection.http）
+     * @return
+     */
+    @Bean
+    public IntrospectionHttpClient introspectionHttpClient() {
+        return new IntrospectionHttpClient(tokenIntrospectionProperties.getHttp(), meterRegistry);
+    }
+
+    /**
+     * check_token对冲请求策略（security.oauth2.resource.introspection.hedge）
+     * @return
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "security.oauth2.resource.introspection.hedge", name = "enabled", havingValue = "true")
+    public IntrospectionHedging introspectionHedging() {
+        return new IntrospectionHedging(tokenIntrospectionProperties.getHedge(), meterRegistry);
+    }
+
     /**
      * 配置资源服务器使用公钥 解密
      * @return
@@ -87,16 +160,22 @@ public class ResourceServerConfig extends ResourceServerConfigurerAdapter {
     @Bean
     public JwtAccessTokenConverter jwtAccessTokenConverter() {
         CustomJwtAccessTokenConverter converter = new CustomJwtAccessTokenConverter();
+        converter.setVerifierKey(readPublicKey());
+        log.info("================对token使用公钥进行解密=======================");
+        return converter;
+    }
+
+    /**
+     * 读取公钥public.cert
+     * @return
+     */
+    private String readPublicKey() {
         Resource resource = new ClassPathResource("public.cert");
-        String publicKey;
         try {
-            publicKey = new String(FileCopyUtils.copyToByteArray(resource.getInputStream()));
+            return new String(FileCopyUtils.copyToByteArray(resource.getInputStream()));
         } catch (IOException ex) {
             throw new RuntimeException();
         }
-        converter.setVerifierKey(publicKey);
-        log.info("================对token使用公钥进行解密=======================");
-        return converter;
     }
 
 }
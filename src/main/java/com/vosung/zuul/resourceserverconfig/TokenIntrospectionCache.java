@@ -0,0 +1,145 @@
+package com.vosung.zuul.resourceserverconfig;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * check_token校验结果缓存：token摘要(SHA-256) -> OAuth2Authentication
+ * 容量有上限（W-TinyLFU淘汰），每个缓存项的存活时间取 min(token的exp, maxTtl)
+ */
+public class TokenIntrospectionCache {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private final Cache<String, Entry> cache;
+
+    private final long maxTtlNanos;
+
+    public TokenIntrospectionCache(long maximumSize, Duration maxTtl) {
+        this(maximumSize, maxTtl, Ticker.systemTicker());
+    }
+
+    //ticker用于测试过期时间
+    TokenIntrospectionCache(long maximumSize, Duration maxTtl, Ticker ticker) {
+        this.maxTtlNanos = maxTtl.toNanos();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .ticker(ticker)
+                .expireAfter(new Expiry<String, Entry>() {
+                    @Override
+                    public long expireAfterCreate(String key, Entry value, long currentTime) {
+                        return value.ttlNanos;
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, Entry value, long currentTime, long currentDuration) {
+                        return value.ttlNanos;
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, Entry value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * 注册命中/未命中/淘汰等指标（cache.gets、cache.evictions、cache.size，cache=token.introspection）
+     * @param registry
+     */
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, "token.introspection");
+    }
+
+    /**
+     * 命中时返回一个新的OAuth2Authentication，
+     * 因为OAuth2AuthenticationManager会对返回的对象setDetails，缓存的对象不能被多个请求共享修改
+     * @param accessToken
+     * @return
+     */
+    public OAuth2Authentication get(String accessToken) {
+        Entry entry = cache.getIfPresent(digest(accessToken));
+        return entry == null ? null : copyOf(entry.authentication);
+    }
+
+    /**
+     * @param accessToken
+     * @param authentication check_token解析出的认证信息
+     * @param exp token过期时间（秒），为空时只受maxTtl限制
+     */
+    public void put(String accessToken, OAuth2Authentication authentication, Object exp) {
+        long ttlNanos = maxTtlNanos;
+        if (exp instanceof Number) {
+            long remaining = TimeUnit.SECONDS.toNanos(((Number) exp).longValue())
+                    - TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+            ttlNanos = Math.min(ttlNanos, remaining);
+        }
+        if (ttlNanos > 0) {
+            cache.put(digest(accessToken), new Entry(copyOf(authentication), ttlNanos));
+        }
+    }
+
+    public void invalidate(String accessToken) {
+        cache.invalidate(digest(accessToken));
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    //details是token services放入的用户信息（UserContext，字段不可修改），可以共用
+    static OAuth2Authentication copyOf(OAuth2Authentication authentication) {
+        OAuth2Authentication copy = new OAuth2Authentication(authentication.getOAuth2Request(), authentication.getUserAuthentication());
+        copy.setDetails(authentication.getDetails());
+        return copy;
+    }
+
+    /**
+     * token的SHA-256摘要（十六进制）：缓存key只保存摘要，不在内存中保留原始token；限流的token维度也使用这个摘要
+     * @param accessToken
+     * @return
+     */
+    public static String digest(String accessToken) {
+        MessageDigest messageDigest = SHA256.get();
+        messageDigest.reset();
+        byte[] hash = messageDigest.digest(accessToken.getBytes(StandardCharsets.US_ASCII));
+        char[] chars = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            chars[i * 2] = HEX[(hash[i] >> 4) & 0xF];
+            chars[i * 2 + 1] = HEX[hash[i] & 0xF];
+        }
+        return new String(chars);
+    }
+
+    private static final class Entry {
+        private final OAuth2Authentication authentication;
+        private final long ttlNanos;
+
+        private Entry(OAuth2Authentication authentication, long ttlNanos) {
+            this.authentication = authentication;
+            this.ttlNanos = ttlNanos;
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package com.vosung.zuul.route;
+
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * 一组Ant风格路径（/login/**、/**&#47;public/**、/user/{id}）编译成的按段前缀树，
+ * 匹配时对uri只扫描一遍，同时推进所有可能的状态（NFA），耗时与配置的路径数量基本无关。
+ * 语义与AntPathMatcher一致（区分大小写，和Spring Security的antMatchers相同）：
+ * ** 匹配零到多段，* 和 ? 只在段内匹配，{name}、{name:regex} 匹配一段；
+ * 不含 ** 的路径要求末尾的 / 一致。
+ * 创建后不可变，可以多线程共享
+ */
+public final class AntPatternTrie {
+
+    private static final String SEPARATOR = "/";
+
+    private static final String DOUBLE_WILDCARD = "**";
+
+    private static final AntPatternTrie EMPTY = new AntPatternTrie(Collections.<String>emptyList());
+
+    private final List<String> patterns;
+
+    //以 / 开头和不以 / 开头的路径分开编译（AntPathMatcher要求两者一致）
+    private final Node absoluteRoot = new Node();
+
+    private final Node relativeRoot = new Node();
+
+    private AntPatternTrie(Collection<String> patterns) {
+        List<String> compiled = new ArrayList<>(patterns.size());
+        for (String pattern : patterns) {
+            if (StringUtils.hasText(pattern)) {
+                add(pattern);
+                compiled.add(pattern);
+            }
+        }
+        this.patterns = Collections.unmodifiableList(compiled);
+    }
+
+    public static AntPatternTrie compile(Collection<String> patterns) {
+        return patterns == null || patterns.isEmpty() ? EMPTY : new AntPatternTrie(patterns);
+    }
+
+    public static AntPatternTrie empty() {
+        return EMPTY;
+    }
+
+    public List<String> getPatterns() {
+        return patterns;
+    }
+
+    public boolean isEmpty() {
+        return patterns.isEmpty();
+    }
+
+    /**
+     * 路径是否匹配其中任意一个模式
+     * @param path 请求uri
+     * @return
+     */
+    public boolean matches(String path) {
+        if (path == null || patterns.isEmpty()) {
+            return false;
+        }
+        List<Node> active = new ArrayList<>(4);
+        enter(path.startsWith(SEPARATOR) ? absoluteRoot : relativeRoot, active);
+        List<Node> next = new ArrayList<>(4);
+        int length = path.length();
+        int start = 0;
+        while (start < length) {
+            if (path.charAt(start) == '/') {
+                start++;
+                continue;
+            }
+            int end = path.indexOf('/', start);
+            if (end < 0) {
+                end = length;
+            }
+            String segment = path.substring(start, end);
+            for (int i = 0; i < active.size(); i++) {
+                active.get(i).advance(segment, next);
+            }
+            if (next.isEmpty()) {
+                return false;
+            }
+            List<Node> swap = active;
+            active = next;
+            next = swap;
+            next.clear();
+            start = end;
+        }
+        boolean trailingSlash = path.endsWith(SEPARATOR);
+        for (int i = 0; i < active.size(); i++) {
+            if (active.get(i).accepts(trailingSlash)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void add(String pattern) {
+        String[] segments = StringUtils.tokenizeToStringArray(pattern, SEPARATOR, false, true);
+        boolean hasDoubleWildcard = false;
+        for (String segment : segments) {
+            if (DOUBLE_WILDCARD.equals(segment)) {
+                hasDoubleWildcard = true;
+                break;
+            }
+        }
+        Node node = pattern.startsWith(SEPARATOR) ? absoluteRoot : relativeRoot;
+        for (int i = 0; i < segments.length; i++) {
+            String segment = segments[i];
+            if (DOUBLE_WILDCARD.equals(segment)) {
+                if (node.doubleWildcard == null) {
+                    node.doubleWildcard = new Node();
+                    node.doubleWildcard.loop = true;
+                }
+                node = node.doubleWildcard;
+            } else if (isLiteral(segment)) {
+                node = node.literals.computeIfAbsent(segment, key -> new Node());
+            } else {
+                //不含 ** 的路径最后一段是 * 时，AntPathMatcher允许 /a/* 匹配 /a/
+                if (!hasDoubleWildcard && i == segments.length - 1 && "*".equals(segment)) {
+                    node.starTail = true;
+                }
+                node = node.wildcard(segment);
+            }
+        }
+        if (hasDoubleWildcard) {
+            node.acceptAny = true;
+        } else if (pattern.endsWith(SEPARATOR)) {
+            node.acceptWithSlash = true;
+        } else {
+            node.acceptWithoutSlash = true;
+        }
+    }
+
+    private static boolean isLiteral(String segment) {
+        return segment.indexOf('*') < 0 && segment.indexOf('?') < 0 && segment.indexOf('{') < 0;
+    }
+
+    //进入一个状态：** 可以匹配零段，同时进入它后面的状态
+    private static void enter(Node node, List<Node> active) {
+        while (node != null && !active.contains(node)) {
+            active.add(node);
+            node = node.doubleWildcard;
+        }
+    }
+
+    private static final class Node {
+        private final Map<String, Node> literals = new HashMap<>(4);
+        private final List<SegmentMatcher> wildcards = new ArrayList<>(1);
+        private Node doubleWildcard;
+        //** 之后的状态：任意一段都停留在当前状态
+        private boolean loop;
+        private boolean starTail;
+        private boolean acceptAny;
+        private boolean acceptWithSlash;
+        private boolean acceptWithoutSlash;
+
+        private Node wildcard(String segment) {
+            for (SegmentMatcher matcher : wildcards) {
+                if (matcher.segment.equals(segment)) {
+                    return matcher.target;
+                }
+            }
+            SegmentMatcher matcher = new SegmentMatcher(segment, new Node());
+            wildcards.add(matcher);
+            return matcher.target;
+        }
+
+        private void advance(String segment, List<Node> next) {
+            if (loop) {
+                enter(this, next);
+            }
+            Node literal = literals.get(segment);
+            if (literal != null) {
+                enter(literal, next);
+            }
+            for (int i = 0; i < wildcards.size(); i++) {
+                SegmentMatcher matcher = wildcards.get(i);
+                if (matcher.matches(segment)) {
+                    enter(matcher.target, next);
+                }
+            }
+        }
+
+        private boolean accepts(boolean trailingSlash) {
+            if (acceptAny) {
+                return true;
+            }
+            if (trailingSlash) {
+                return acceptWithSlash || starTail;
+            }
+            return acceptWithoutSlash;
+        }
+    }
+
+    /**
+     * 段内通配：* 和 ? 直接匹配，含 {name} / {name:regex} 时转成正则
+     */
+    private static final class SegmentMatcher {
+        private final String segment;
+        private final Node target;
+        private final Pattern regex;
+
+        private SegmentMatcher(String segment, Node target) {
+            this.segment = segment;
+            this.target = target;
+            this.regex = segment.indexOf('{') >= 0 ? toRegex(segment) : null;
+        }
+
+        private boolean matches(String value) {
+            if (regex != null) {
+                return regex.matcher(value).matches();
+            }
+            return glob(segment, value);
+        }
+
+        private static boolean glob(String pattern, String value) {
+            int p = 0;
+            int v = 0;
+            int star = -1;
+            int mark = 0;
+            while (v < value.length()) {
+                if (p < pattern.length() && (pattern.charAt(p) == '?' || pattern.charAt(p) == value.charAt(v))) {
+                    p++;
+                    v++;
+                } else if (p < pattern.length() && pattern.charAt(p) == '*') {
+                    star = p++;
+                    mark = v;
+                } else if (star >= 0) {
+                    p = star + 1;
+                    v = ++mark;
+                } else {
+                    return false;
+                }
+            }
+            while (p < pattern.length() && pattern.charAt(p) == '*') {
+                p++;
+            }
+            return p == pattern.length();
+        }
+
+        private static Pattern toRegex(String segment) {
+            StringBuilder regex = new StringBuilder();
+            int literalStart = 0;
+            for (int i = 0; i < segment.length(); i++) {
+                char c = segment.charAt(i);
+                if (c == '*' || c == '?') {
+                    appendLiteral(regex, segment, literalStart, i);
+                    regex.append(c == '*' ? ".*" : ".");
+                    literalStart = i + 1;
+                } else if (c == '{') {
+                    int close = closingBrace(segment, i);
+                    if (close < 0) {
+                        continue;
+                    }
+                    appendLiteral(regex, segment, literalStart, i);
+                    String variable = segment.substring(i + 1, close);
+                    int colon = variable.indexOf(':');
+                    regex.append('(').append(colon < 0 ? ".*" : variable.substring(colon + 1)).append(')');
+                    i = close;
+                    literalStart = close + 1;
+                }
+            }
+            appendLiteral(regex, segment, literalStart, segment.length());
+            return Pattern.compile(regex.toString(), Pattern.DOTALL);
+        }
+
+        private static int closingBrace(String segment, int open) {
+            int depth = 0;
+            for (int i = open; i < segment.length(); i++) {
+                if (segment.charAt(i) == '{') {
+                    depth++;
+                } else if (segment.charAt(i) == '}' && --depth == 0) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private static void appendLiteral(StringBuilder regex, String segment, int start, int end) {
+            if (start < end) {
+                regex.append(Pattern.quote(segment.substring(start, end)));
+            }
+        }
+    }
+}
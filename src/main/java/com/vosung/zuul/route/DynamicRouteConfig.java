@@ -0,0 +1,25 @@
+package com.vosung.zuul.route;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.web.ServerProperties;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.cloud.client.serviceregistry.Registration;
+import org.springframework.cloud.netflix.zuul.filters.ZuulProperties;
+import org.springframework.cloud.netflix.zuul.filters.discovery.ServiceRouteMapper;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 用DynamicRouteLocator替换zuul默认的DiscoveryClientRouteLocator（构造参数与ZuulProxyAutoConfiguration一致）
+ */
+@Configuration
+public class DynamicRouteConfig {
+
+    @Bean
+    public DynamicRouteLocator discoveryRouteLocator(ServerProperties server, DiscoveryClient discovery,
+                                                     ZuulProperties zuulProperties, ServiceRouteMapper serviceRouteMapper,
+                                                     ObjectProvider<Registration> registration) {
+        return new DynamicRouteLocator(server.getServlet().getContextPath(), discovery, zuulProperties,
+                serviceRouteMapper, registration.getIfAvailable());
+    }
+}
@@ -0,0 +1,85 @@
+package com.vosung.zuul.route;
+
+import com.netflix.zuul.context.RequestContext;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.cloud.client.serviceregistry.Registration;
+import org.springframework.cloud.netflix.zuul.filters.Route;
+import org.springframework.cloud.netflix.zuul.filters.ZuulProperties;
+import org.springframework.cloud.netflix.zuul.filters.ZuulProperties.ZuulRoute;
+import org.springframework.cloud.netflix.zuul.filters.discovery.DiscoveryClientRouteLocator;
+import org.springframework.cloud.netflix.zuul.filters.discovery.ServiceRouteMapper;
+import org.springframework.util.StringUtils;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 在配置文件和服务发现的路由之外，叠加从redis加载的动态路由（见GatewayConfigRegistry）
+ * 动态路由排在前面，路径相同时覆盖配置文件中的路由；默认路由 /** 仍在最后。
+ * 设置动态路由后需发布RoutesRefreshedEvent，zuul重新locateRoutes并整体替换路由表。
+ * 当前请求已经由RouteResolver匹配过同一路径时，getMatchingRoute直接返回该结果（PreDecorationFilter不再重复匹配）
+ */
+public class DynamicRouteLocator extends DiscoveryClientRouteLocator {
+
+    private final ZuulProperties properties;
+
+    private volatile Map<String, ZuulRoute> dynamicRoutes = Collections.emptyMap();
+
+    public DynamicRouteLocator(String servletPath, DiscoveryClient discovery, ZuulProperties properties,
+                               ServiceRouteMapper serviceRouteMapper, Registration registration) {
+        super(servletPath, discovery, properties, serviceRouteMapper, registration);
+        this.properties = properties;
+    }
+
+    /**
+     * @param routes 路由id -> 路由，整体替换
+     */
+    public void setDynamicRoutes(Map<String, ZuulRoute> routes) {
+        this.dynamicRoutes = Collections.unmodifiableMap(new LinkedHashMap<>(routes));
+    }
+
+    public Map<String, ZuulRoute> getDynamicRoutes() {
+        return dynamicRoutes;
+    }
+
+    @Override
+    public Route getMatchingRoute(String path) {
+        RequestContext ctx = RequestContext.getCurrentContext();
+        if (RouteResolver.isResolved(ctx, path)) {
+            return RouteResolver.resolved(ctx);
+        }
+        return super.getMatchingRoute(path);
+    }
+
+    @Override
+    protected LinkedHashMap<String, ZuulRoute> locateRoutes() {
+        LinkedHashMap<String, ZuulRoute> located = super.locateRoutes();
+        Map<String, ZuulRoute> dynamic = dynamicRoutes;
+        if (dynamic.isEmpty()) {
+            return located;
+        }
+        LinkedHashMap<String, ZuulRoute> routes = new LinkedHashMap<>();
+        for (ZuulRoute route : dynamic.values()) {
+            routes.put(fullPath(route.getPath()), route);
+        }
+        for (Map.Entry<String, ZuulRoute> entry : located.entrySet()) {
+            routes.putIfAbsent(entry.getKey(), entry.getValue());
+        }
+        return routes;
+    }
+
+    //和DiscoveryClientRouteLocator处理配置文件路由的方式一致：补全开头的 / 并加上zuul.prefix
+    private String fullPath(String path) {
+        if (!path.startsWith("/")) {
+            path = "/" + path;
+        }
+        if (StringUtils.hasText(properties.getPrefix())) {
+            path = properties.getPrefix() + path;
+            if (!path.startsWith("/")) {
+                path = "/" + path;
+            }
+        }
+        return path;
+    }
+}
@@ -0,0 +1,24 @@
+package com.vosung.zuul.route;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * 网关统一使用的请求路径：servletPath + pathInfo（已解码、已规范化、不含contextPath），
+ * 与Spring Security的AntPathRequestMatcher取的路径一致。
+ * 放行路径判断（security过滤器链和AccessFilter）以及路由匹配都使用这个路径，
+ * 不直接使用getRequestURI（未解码、包含contextPath），避免两处对同一个请求的判断不一致
+ */
+public final class RequestPaths {
+
+    private RequestPaths() {
+    }
+
+    public static String pathWithinApplication(HttpServletRequest request) {
+        String servletPath = request.getServletPath();
+        String pathInfo = request.getPathInfo();
+        if (pathInfo == null) {
+            return servletPath;
+        }
+        return servletPath == null ? pathInfo : servletPath + pathInfo;
+    }
+}
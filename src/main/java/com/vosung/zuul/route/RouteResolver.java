@@ -0,0 +1,269 @@
+package com.vosung.zuul.route;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.netflix.zuul.context.RequestContext;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.client.discovery.event.HeartbeatEvent;
+import org.springframework.cloud.netflix.zuul.RoutesRefreshedEvent;
+import org.springframework.cloud.netflix.zuul.filters.RefreshableRouteLocator;
+import org.springframework.cloud.netflix.zuul.filters.Route;
+import org.springframework.cloud.netflix.zuul.filters.SimpleRouteLocator;
+import org.springframework.cloud.netflix.zuul.filters.ZuulProperties;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.PathMatcher;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * 路由匹配：
+ * zuul.routes按路径中第一个通配符之前的固定段编译成前缀树，匹配时沿uri的各段向下查找，
+ * 只对沿途节点上的候选路由做Ant匹配（按配置顺序取第一个），再用有界缓存保存最近的 uri -> Route 结果；
+ * 每个请求只匹配一次，结果放在RequestContext中，PreDecorationFilter（经DynamicRouteLocator）直接复用。
+ * 路由刷新（RoutesRefreshedEvent）或注册中心服务变化时整体重建，新的前缀树和缓存一起原子替换
+ */
+@Slf4j
+@Component
+public class RouteResolver {
+
+    /**
+     * RequestContext中保存当前请求匹配到的路由
+     */
+    public static final String ROUTE_KEY = "gatewayRoute";
+
+    /**
+     * RequestContext中保存匹配路由时使用的路径
+     */
+    public static final String ROUTE_PATH_KEY = "gatewayRoutePath";
+
+    //没有匹配的路由（RequestContext和缓存都不能存null）
+    private static final Object NO_ROUTE = new Object();
+
+    private final SimpleRouteLocator simpleRouteLocator;
+
+    private final ZuulProperties zuulProperties;
+
+    private final long cacheSize;
+
+    private final PathMatcher pathMatcher = new AntPathMatcher();
+
+    private volatile Table table;
+
+    public RouteResolver(SimpleRouteLocator simpleRouteLocator, ZuulProperties zuulProperties,
+                         @Value("${gateway.route-resolver.cache-size:10000}") long cacheSize) {
+        this.simpleRouteLocator = simpleRouteLocator;
+        this.zuulProperties = zuulProperties;
+        this.cacheSize = cacheSize;
+    }
+
+    /**
+     * 当前请求匹配的路由，每个请求只计算一次
+     * @return 没有匹配的路由时返回null
+     */
+    public Route currentRoute() {
+        RequestContext ctx = RequestContext.getCurrentContext();
+        Object route = ctx.get(ROUTE_KEY);
+        if (route == null) {
+            String path = RequestPaths.pathWithinApplication(ctx.getRequest());
+            route = lookup(path);
+            ctx.set(ROUTE_KEY, route);
+            ctx.set(ROUTE_PATH_KEY, path);
+        }
+        return route == NO_ROUTE ? null : (Route) route;
+    }
+
+    /**
+     * 当前请求是否已经由currentRoute为path匹配过路由
+     * @param ctx
+     * @param path
+     * @return
+     */
+    static boolean isResolved(RequestContext ctx, String path) {
+        return path != null && path.equals(ctx.get(ROUTE_PATH_KEY)) && ctx.get(ROUTE_KEY) != null;
+    }
+
+    /**
+     * currentRoute的匹配结果，先用isResolved判断
+     * @param ctx
+     * @return 没有匹配的路由时返回null
+     */
+    static Route resolved(RequestContext ctx) {
+        Object route = ctx.get(ROUTE_KEY);
+        return route instanceof Route ? (Route) route : null;
+    }
+
+    /**
+     * 不依赖RequestContext的匹配（如zuul之前执行的security过滤器中）
+     * @param requestUri 请求路径（RequestPaths.pathWithinApplication）
+     * @return 没有匹配的路由时返回null
+     */
+    public Route getMatchingRoute(String requestUri) {
+        Object route = lookup(requestUri);
+        return route == NO_ROUTE ? null : (Route) route;
+    }
+
+    @EventListener(RoutesRefreshedEvent.class)
+    public void onRoutesRefreshed() {
+        //和ZuulRefreshListener的执行先后不确定，这里先刷新一次路由再重建
+        //（SimpleRouteLocator本身没有public的refresh，网关使用的DynamicRouteLocator实现了RefreshableRouteLocator）
+        if (simpleRouteLocator instanceof RefreshableRouteLocator) {
+            ((RefreshableRouteLocator) simpleRouteLocator).refresh();
+        }
+        rebuild();
+    }
+
+    /**
+     * 注册中心心跳时zuul会刷新基于服务发现的路由，但不会发布RoutesRefreshedEvent，路由有变化时重建
+     */
+    @EventListener(HeartbeatEvent.class)
+    public void onHeartbeat() {
+        Table current = table;
+        if (current != null && !current.routes.equals(simpleRouteLocator.getRoutes())) {
+            rebuild();
+        }
+    }
+
+    public synchronized void rebuild() {
+        table = new Table(simpleRouteLocator.getRoutes());
+        log.info("route table rebuilt with {} routes", table.routes.size());
+    }
+
+    private Object lookup(String requestUri) {
+        Table current = table;
+        if (current == null) {
+            synchronized (this) {
+                if (table == null) {
+                    rebuild();
+                }
+                current = table;
+            }
+        }
+        Object route = current.recent.getIfPresent(requestUri);
+        if (route == null) {
+            route = current.match(requestUri);
+            current.recent.put(requestUri, route);
+        }
+        return route;
+    }
+
+    /**
+     * 一份完整的路由表：前缀树 + 最近匹配结果缓存
+     */
+    private final class Table {
+        private final List<Route> routes;
+        private final Node root = new Node();
+        private final Cache<String, Object> recent;
+        //配置了zuul.prefix时路径需要额外处理，直接交给SimpleRouteLocator
+        private final boolean delegate;
+
+        private Table(List<Route> routes) {
+            this.routes = Collections.unmodifiableList(new ArrayList<>(routes));
+            this.recent = Caffeine.newBuilder().maximumSize(cacheSize).build();
+            this.delegate = StringUtils.hasText(zuulProperties.getPrefix());
+            for (int i = 0; i < this.routes.size(); i++) {
+                Route route = this.routes.get(i);
+                Node node = root;
+                for (String segment : StringUtils.tokenizeToStringArray(route.getFullPath(), "/")) {
+                    if (segment.indexOf('*') >= 0 || segment.indexOf('?') >= 0 || segment.indexOf('{') >= 0) {
+                        break;
+                    }
+                    node = node.child(segment);
+                }
+                node.candidates.add(new Candidate(i, route));
+            }
+        }
+
+        private Object match(String requestUri) {
+            if (delegate || isZuulServletRequest(requestUri)) {
+                Route route = simpleRouteLocator.getMatchingRoute(requestUri);
+                return route == null ? NO_ROUTE : route;
+            }
+            for (String ignored : zuulProperties.getIgnoredPatterns()) {
+                if (pathMatcher.match(ignored, requestUri)) {
+                    return NO_ROUTE;
+                }
+            }
+            Candidate best = root.best(null, requestUri);
+            Node node = root;
+            int start = 0;
+            int length = requestUri.length();
+            while (node != null && start < length) {
+                while (start < length && requestUri.charAt(start) == '/') {
+                    start++;
+                }
+                if (start >= length) {
+                    break;
+                }
+                int end = requestUri.indexOf('/', start);
+                if (end < 0) {
+                    end = length;
+                }
+                node = node.children.get(requestUri.substring(start, end));
+                if (node != null) {
+                    best = node.best(best, requestUri);
+                }
+                start = end;
+            }
+            return best == null ? NO_ROUTE : best.routeFor(requestUri);
+        }
+
+        private boolean isZuulServletRequest(String requestUri) {
+            String servletPath = zuulProperties.getServletPath();
+            return StringUtils.hasText(servletPath) && !"/".equals(servletPath)
+                    && requestUri.startsWith(servletPath + "/");
+        }
+    }
+
+    private final class Node {
+        private final Map<String, Node> children = new HashMap<>();
+        private final List<Candidate> candidates = new ArrayList<>(1);
+
+        private Node child(String segment) {
+            return children.computeIfAbsent(segment, key -> new Node());
+        }
+
+        //在当前节点的候选中找出能匹配且配置顺序更靠前的路由
+        private Candidate best(Candidate best, String requestUri) {
+            for (Candidate candidate : candidates) {
+                if ((best == null || candidate.order < best.order)
+                        && pathMatcher.match(candidate.route.getFullPath(), requestUri)) {
+                    best = candidate;
+                }
+            }
+            return best;
+        }
+    }
+
+    /**
+     * 路由模板：按SimpleRouteLocator的规则为具体uri生成Route（截掉路由前缀后的path）
+     */
+    private static final class Candidate {
+        private final int order;
+        private final Route route;
+        //SimpleRouteLocator用String.replaceFirst(prefix, "")截掉前缀，这里预先编译同样的正则
+        private final Pattern prefixPattern;
+
+        private Candidate(int order, Route route) {
+            this.order = order;
+            this.route = route;
+            this.prefixPattern = route.isPrefixStripped() && StringUtils.hasText(route.getPrefix())
+                    ? Pattern.compile(route.getPrefix()) : null;
+        }
+
+        private Route routeFor(String requestUri) {
+            String prefix = route.getPrefix();
+            String path = prefixPattern == null ? requestUri : prefixPattern.matcher(requestUri).replaceFirst("");
+            return new Route(route.getId(), path, route.getLocation(), prefix, route.getRetryable(),
+                    route.isCustomSensitiveHeaders() ? route.getSensitiveHeaders() : null, route.isPrefixStripped());
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.vosung.zuul.vo;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.io.Serializable;
+
+/**
+ * 用户上下文（网关写入redis的 user:ctx:{userId}，业务服务按userId读取）
+ * 同时作为当前请求的用户主体：token校验时由CustomRemoteTokenServices生成，
+ * 保存在OAuth2AuthenticationDetails.decodedDetails中。
+ * 字段不可修改：token校验缓存（TokenIntrospectionCache）的各个请求共用同一个实例；
+ * json反序列化使用@JsonCreator构造方法，compact序列化使用同一个构造方法
+ */
+@Getter
+@ToString
+@EqualsAndHashCode
+public final class UserContext implements Serializable {
+    private static final long serialVersionUID = -1848218226731405925L;
+
+    private final String userId;
+
+    private final String userName;
+
+    private final String roles;
+
+    private final boolean superAdmin;
+
+    @JsonCreator
+    public UserContext(@JsonProperty("userId") String userId, @JsonProperty("userName") String userName,
+                       @JsonProperty("roles") String roles, @JsonProperty("superAdmin") boolean superAdmin) {
+        this.userId = userId;
+        this.userName = userName;
+        this.roles = roles;
+        this.superAdmin = superAdmin;
+    }
+
+}
@@ -0,0 +1,19 @@
+-- 批量同步本地计数：增量和过期时间在同一个脚本中原子执行，不会出现只INCRBY成功、没有过期时间的key
+-- KEYS[i]      计数key
+-- ARGV[2i-1]   增量，0时只读取
+-- ARGV[2i]     过期时间（秒），<= 0 表示不过期；只在key没有过期时间时设置（新建的key，或之前设置失败的key）
+-- 返回 各key的全局总数
+local totals = {}
+for i = 1, #KEYS do
+    local delta = tonumber(ARGV[2 * i - 1])
+    local ttl = tonumber(ARGV[2 * i])
+    if delta ~= 0 then
+        totals[i] = redis.call('INCRBY', KEYS[i], delta)
+        if ttl > 0 and redis.call('TTL', KEYS[i]) == -1 then
+            redis.call('EXPIRE', KEYS[i], ttl)
+        end
+    else
+        totals[i] = tonumber(redis.call('GET', KEYS[i]) or '0') or 0
+    end
+end
+return totals
@@ -0,0 +1,36 @@
+-- 多个令牌桶同时判断：全部有令牌时各扣一个，任意一个不足时都不扣
+-- KEYS[i]  令牌桶（hash：tokens 剩余令牌，ts 上次更新时间毫秒）
+-- ARGV[1]  当前时间（毫秒）
+-- ARGV[2i] ARGV[2i+1]  第i个桶每秒补充的令牌数、桶容量
+-- 返回 {1, 0, 0} 放行；{0, 需要等待的毫秒数, 令牌不足的桶序号} 拒绝
+local now = tonumber(ARGV[1])
+local tokens = {}
+local wait = 0
+local limited = 0
+for i = 1, #KEYS do
+    local rate = tonumber(ARGV[2 * i])
+    local capacity = tonumber(ARGV[2 * i + 1])
+    local bucket = redis.call('HMGET', KEYS[i], 'tokens', 'ts')
+    local available = tonumber(bucket[1]) or capacity
+    local ts = tonumber(bucket[2]) or now
+    available = math.min(capacity, available + math.max(0, now - ts) * rate / 1000)
+    tokens[i] = available
+    if available < 1 then
+        local needed = math.ceil((1 - available) * 1000 / rate)
+        if needed > wait then
+            wait = needed
+            limited = i
+        end
+    end
+end
+if limited > 0 then
+    return {0, wait, limited}
+end
+for i = 1, #KEYS do
+    local rate = tonumber(ARGV[2 * i])
+    local capacity = tonumber(ARGV[2 * i + 1])
+    redis.call('HMSET', KEYS[i], 'tokens', tostring(tokens[i] - 1), 'ts', tostring(now))
+    -- 桶补满之后key没有意义，过期删除
+    redis.call('PEXPIRE', KEYS[i], math.ceil(capacity * 1000 / rate) + 1000)
+end
+return {1, 0, 0}
@@ -0,0 +1,206 @@
+package com.vosung.zuul.apifilter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vosung.zuul.apifilter.JwtClaimsExtractor.JwtClaims;
+import com.vosung.zuul.constants.SecurityConstants;
+import org.junit.Test;
+import org.springframework.security.jwt.JwtHelper;
+import org.springframework.security.jwt.crypto.sign.MacSigner;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 与JwtHelper.decode + ObjectMapper的解析结果对比
+ */
+public class JwtClaimsExtractorTests {
+
+	private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+	private static final MacSigner SIGNER = new MacSigner("secret");
+
+	@Test
+	public void readsClaimsAndSkipsOtherFields() {
+		Map<String, Object> claims = new LinkedHashMap<>();
+		claims.put("exp", 1600000000);
+		claims.put("scope", Arrays.asList("read", "write"));
+		claims.put("ext", Collections.singletonMap("roles", "nested"));
+		claims.put("user_id", "u1");
+		claims.put("user_name", "zhangsan");
+		claims.put("roles", "admin,ops");
+		claims.put("client_id", "web");
+		claims.put("active", true);
+		assertMatchesReference(token(claims));
+
+		JwtClaims extracted = JwtClaimsExtractor.extract("Bearer " + token(claims));
+		assertEquals("u1", extracted.getUserId());
+		assertEquals("zhangsan", extracted.getUserName());
+		assertEquals("admin,ops", extracted.getRoles());
+		assertEquals("web", extracted.getClientId());
+	}
+
+	@Test
+	public void rolesAsStringOrArray() {
+		Map<String, Object> claims = new LinkedHashMap<>();
+		claims.put("user_id", "u1");
+		claims.put("roles", "1,2");
+		assertEquals("1,2", assertMatchesReference(token(claims)).getRoles());
+		claims.put("roles", Arrays.asList(1, 2));
+		assertEquals("1,2", assertMatchesReference(token(claims)).getRoles());
+		claims.put("roles", Arrays.asList("admin", "ops"));
+		assertEquals("admin,ops", assertMatchesReference(token(claims)).getRoles());
+		claims.put("roles", Collections.emptyList());
+		assertEquals("", assertMatchesReference(token(claims)).getRoles());
+	}
+
+	@Test
+	public void legacyUserIdTakesPriority() {
+		Map<String, Object> claims = new LinkedHashMap<>();
+		claims.put("user_id", "new");
+		claims.put(SecurityConstants.USER_ID_IN_HEADER, "legacy");
+		assertEquals("legacy", assertMatchesReference(token(claims)).getUserId());
+
+		//与字段顺序无关
+		claims.clear();
+		claims.put(SecurityConstants.USER_ID_IN_HEADER, "legacy");
+		claims.put("user_id", "new");
+		assertEquals("legacy", assertMatchesReference(token(claims)).getUserId());
+
+		claims.clear();
+		claims.put("user_id", 42);
+		assertEquals("42", assertMatchesReference(token(claims)).getUserId());
+	}
+
+	@Test
+	public void nonAsciiUserName() {
+		Map<String, Object> claims = new LinkedHashMap<>();
+		claims.put("user_id", "u1");
+		claims.put("user_name", "张三😀");
+		assertEquals("张三😀", assertMatchesReference(token(claims)).getUserName());
+	}
+
+	@Test
+	public void payloadLargerThanInitialBuffer() {
+		Map<String, Object> claims = new LinkedHashMap<>();
+		claims.put("padding", String.join("", Collections.nCopies(3000, "x")));
+		claims.put("user_id", "u1");
+		assertEquals("u1", assertMatchesReference(token(claims)).getUserId());
+	}
+
+	@Test
+	public void paddedAndStandardAlphabet() {
+		//找一个payload编码后同时含有'-'和'_'且长度不是4的倍数的用户名
+		String token = null;
+		for (int i = 0; token == null && i < 10000; i++) {
+			Map<String, Object> claims = new LinkedHashMap<>();
+			claims.put("user_id", "u" + i);
+			claims.put("user_name", "用户?>~" + i);
+			String candidate = token(claims);
+			String payload = payload(candidate);
+			if (payload.contains("-") && payload.contains("_") && payload.length() % 4 != 0) {
+				token = candidate;
+			}
+		}
+		assertNotNull(token);
+		JwtClaims expected = assertMatchesReference(token);
+		String payload = payload(token);
+		String padded = payload + (payload.length() % 4 == 2 ? "==" : "=");
+		String standard = payload.replace('-', '+').replace('_', '/');
+		for (String variant : new String[]{padded, standard, standard + padded.substring(payload.length())}) {
+			JwtClaims actual = JwtClaimsExtractor.extract(withPayload(token, variant));
+			assertNotNull(variant, actual);
+			assertSameClaims(expected, actual);
+		}
+	}
+
+	@Test
+	public void malformedReturnsNull() {
+		String json = "{\"user_id\":\"u1\"}";
+		assertNull(JwtClaimsExtractor.extract(null));
+		assertNull(JwtClaimsExtractor.extract(""));
+		assertNull(JwtClaimsExtractor.extract("Bearer abc"));
+		assertNull(JwtClaimsExtractor.extract("Bearer " + encode(json) + ".sig"));
+		assertNull(JwtClaimsExtractor.extract("h.!!!.s"));
+		assertNull(JwtClaimsExtractor.extract("h." + encode(json) + "中.s"));
+		assertNull(JwtClaimsExtractor.extract("h." + encode("not json") + ".s"));
+		assertNull(JwtClaimsExtractor.extract("h." + encode("[\"user_id\"]") + ".s"));
+		assertNull(JwtClaimsExtractor.extract("h." + encode("{\"user_id\":\"u1\"") + ".s"));
+		assertNull(JwtClaimsExtractor.extract("h." + encode("{\"user_id\":") + ".s"));
+
+		//格式正确时同样的构造可以解析
+		assertEquals("u1", JwtClaimsExtractor.extract("h." + encode(json) + ".s").getUserId());
+	}
+
+	private static JwtClaims assertMatchesReference(String token) {
+		JwtClaims expected = reference(token);
+		JwtClaims actual = JwtClaimsExtractor.extract("Bearer " + token);
+		assertNotNull(actual);
+		assertSameClaims(expected, actual);
+		return actual;
+	}
+
+	private static void assertSameClaims(JwtClaims expected, JwtClaims actual) {
+		assertEquals(expected.getUserId(), actual.getUserId());
+		assertEquals(expected.getUserName(), actual.getUserName());
+		assertEquals(expected.getRoles(), actual.getRoles());
+		assertEquals(expected.getClientId(), actual.getClientId());
+	}
+
+	//原来的实现：JwtHelper解码整段载荷，再用ObjectMapper解析成Map
+	@SuppressWarnings("unchecked")
+	private static JwtClaims reference(String token) {
+		Map<String, Object> claims;
+		try {
+			claims = OBJECT_MAPPER.readValue(JwtHelper.decode(token).getClaims(), Map.class);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		Object userId = claims.containsKey(SecurityConstants.USER_ID_IN_HEADER)
+				? claims.get(SecurityConstants.USER_ID_IN_HEADER) : claims.get("user_id");
+		return new JwtClaims(text(userId), text(claims.get("user_name")), text(claims.get("roles")),
+				text(claims.get("client_id")));
+	}
+
+	private static String text(Object value) {
+		if (value instanceof Collection) {
+			return ((Collection<?>) value).stream().map(String::valueOf).collect(Collectors.joining(","));
+		}
+		return value == null ? null : String.valueOf(value);
+	}
+
+	private static String token(Map<String, Object> claims) {
+		try {
+			String token = JwtHelper.encode(OBJECT_MAPPER.writeValueAsString(claims), SIGNER).getEncoded();
+			assertTrue(token, payload(token).indexOf('=') < 0);
+			return token;
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String payload(String token) {
+		return token.split("\\.")[1];
+	}
+
+	private static String withPayload(String token, String payload) {
+		String[] parts = token.split("\\.");
+		return parts[0] + "." + payload + "." + parts[2];
+	}
+
+	private static String encode(String json) {
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(json.getBytes(StandardCharsets.UTF_8));
+	}
+
+}
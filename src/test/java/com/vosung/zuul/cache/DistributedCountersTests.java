@@ -0,0 +1,215 @@
+package com.vosung.zuul.cache;
+
+import com.vosung.zuul.commonconfig.redisconfig.RedisConfig;
+import com.vosung.zuul.constants.RedisUtil;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 在内嵌redis上验证：增量和过期时间一起写入、失败重试、并发写入与移除slot的竞争、多个实例之间的全局总数
+ */
+public class DistributedCountersTests {
+
+	private static RedisServer redisServer;
+
+	private static int port;
+
+	private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	private final List<JedisConnectionFactory> factories = new ArrayList<>();
+
+	private RedisTemplate<String, Object> redisTemplate;
+
+	@BeforeClass
+	public static void startRedis() throws IOException {
+		port = freePort();
+		redisServer = new RedisServer(port);
+		redisServer.start();
+	}
+
+	@AfterClass
+	public static void stopRedis() {
+		redisServer.stop();
+	}
+
+	@Before
+	public void setUp() {
+		redisTemplate = template(port);
+		redisTemplate.execute(connection -> {
+			connection.flushDb();
+			return null;
+		}, true);
+	}
+
+	@After
+	public void tearDown() {
+		factories.forEach(JedisConnectionFactory::destroy);
+	}
+
+	@Test
+	public void flushWritesDeltaAndTtlTogether() {
+		DistributedCounters counters = counters(redisUtil(redisTemplate), 60000);
+		assertEquals(3, counters.add("c:a", 3, 60));
+		counters.add("c:forever", 1, 0);
+		counters.flush();
+		assertEquals("3", redisTemplate.opsForValue().get("c:a"));
+		long ttl = redisTemplate.getExpire("c:a");
+		assertTrue("ttl " + ttl, ttl > 0 && ttl <= 60);
+		assertEquals(-1, (long) redisTemplate.getExpire("c:forever"));
+
+		counters.add("c:a", 2, 60);
+		counters.flush();
+		assertEquals("5", redisTemplate.opsForValue().get("c:a"));
+		assertEquals(5, counters.get("c:a"));
+	}
+
+	@Test
+	public void repairsKeyWithoutTtl() {
+		//之前的版本中EXPIRE失败留下的key
+		redisTemplate.opsForValue().set("c:a", "10");
+		DistributedCounters counters = counters(redisUtil(redisTemplate), 60000);
+		counters.add("c:a", 1, 60);
+		counters.flush();
+		assertEquals(11, counters.get("c:a"));
+		assertTrue(redisTemplate.getExpire("c:a") > 0);
+	}
+
+	@Test
+	public void retriesAfterFailedFlush() {
+		RedisUtil redisUtil = redisUtil(redisTemplate);
+		DistributedCounters counters = counters(redisUtil, 60000);
+		counters.add("c:a", 5, 60);
+
+		//redis不可用
+		ReflectionTestUtils.setField(redisUtil, "redisTemplate", template(freePortQuietly()));
+		counters.flush();
+		assertEquals(1, meterRegistry.get("gateway.counters.flush").tag("result", "failure").counter().count(), 0);
+		assertEquals(5, counters.get("c:a"));
+
+		counters.add("c:a", 2, 60);
+		ReflectionTestUtils.setField(redisUtil, "redisTemplate", redisTemplate);
+		counters.flush();
+		assertEquals("7", redisTemplate.opsForValue().get("c:a"));
+		assertTrue(redisTemplate.getExpire("c:a") > 0);
+
+		//已同步的增量不会重复写入
+		counters.flush();
+		assertEquals("7", redisTemplate.opsForValue().get("c:a"));
+		assertEquals(7, counters.get("c:a"));
+	}
+
+	@Test
+	public void secondInstanceSeesGlobalTotal() {
+		DistributedCounters first = counters(redisUtil(redisTemplate), 60000);
+		DistributedCounters second = counters(redisUtil(template(port)), 60000);
+		first.add("c:a", 5, 60);
+		second.add("c:a", 7, 60);
+		first.flush();
+		second.flush();
+		assertEquals(12, second.get("c:a"));
+		//没有本地增量时只取回总数
+		first.flush();
+		assertEquals(12, first.get("c:a"));
+		assertEquals("12", redisTemplate.opsForValue().get("c:a"));
+	}
+
+	@Test
+	public void concurrentAddsRacingRetiringFlushesAreNotLost() throws Exception {
+		//idle-timeout为负数：每次flush都移除已同步的slot，与写入线程竞争
+		DistributedCounters counters = counters(redisUtil(redisTemplate), -1000);
+		int threads = 4;
+		int addsPerThread = 20000;
+		ExecutorService writers = Executors.newFixedThreadPool(threads);
+		CountDownLatch start = new CountDownLatch(1);
+		AtomicBoolean writing = new AtomicBoolean(true);
+		try {
+			List<Future<?>> results = new ArrayList<>();
+			for (int t = 0; t < threads; t++) {
+				results.add(writers.submit(() -> {
+					start.await();
+					for (int i = 0; i < addsPerThread; i++) {
+						counters.increment(i % 2 == 0 ? "c:even" : "c:odd", 60);
+					}
+					return null;
+				}));
+			}
+			Thread flusher = new Thread(() -> {
+				while (writing.get()) {
+					counters.flush();
+				}
+			});
+			flusher.start();
+			start.countDown();
+			for (Future<?> result : results) {
+				result.get(60, TimeUnit.SECONDS);
+			}
+			writing.set(false);
+			flusher.join(TimeUnit.SECONDS.toMillis(10));
+		} finally {
+			writers.shutdownNow();
+		}
+		//移除之后写入的slot在lateSlots中，最多再同步两次
+		counters.flush();
+		counters.flush();
+		long expected = (long) threads * addsPerThread / 2;
+		assertEquals(String.valueOf(expected), redisTemplate.opsForValue().get("c:even"));
+		assertEquals(String.valueOf(expected), redisTemplate.opsForValue().get("c:odd"));
+	}
+
+	private DistributedCounters counters(RedisUtil redisUtil, long idleTimeoutMillis) {
+		//不启动后台线程，由测试调用flush
+		return new DistributedCounters(redisUtil, meterRegistry, 200, 1000, idleTimeoutMillis);
+	}
+
+	private static RedisUtil redisUtil(RedisTemplate<String, Object> redisTemplate) {
+		RedisUtil redisUtil = new RedisUtil();
+		ReflectionTestUtils.setField(redisUtil, "redisTemplate", redisTemplate);
+		return redisUtil;
+	}
+
+	private RedisTemplate<String, Object> template(int redisPort) {
+		JedisConnectionFactory factory = new JedisConnectionFactory(new RedisStandaloneConfiguration("127.0.0.1", redisPort));
+		factory.afterPropertiesSet();
+		factories.add(factory);
+		return new RedisConfig().redisTemplate(factory, "string");
+	}
+
+	private static int freePort() throws IOException {
+		try (ServerSocket socket = new ServerSocket(0)) {
+			return socket.getLocalPort();
+		}
+	}
+
+	private static int freePortQuietly() {
+		try {
+			return freePort();
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+}
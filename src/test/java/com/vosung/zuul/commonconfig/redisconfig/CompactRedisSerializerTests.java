@@ -0,0 +1,169 @@
+package com.vosung.zuul.commonconfig.redisconfig;
+
+import com.vosung.zuul.vo.RoleVo;
+import com.vosung.zuul.vo.UserContext;
+import org.junit.Test;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CompactRedisSerializerTests {
+
+	private final CompactRedisSerializer serializer = new CompactRedisSerializer();
+
+	@Test
+	public void roundTripsEveryRegisteredCodec() {
+		assertRoundTrip(42L);
+		assertRoundTrip(42);
+		assertRoundTrip(true);
+		assertRoundTrip(false);
+		assertRoundTrip(3.25d);
+		assertRoundTrip(new UserContext("u1", "张三", "admin,ops", true));
+
+		RoleVo role = new RoleVo();
+		role.setId(7);
+		role.setRoleCode("admin");
+		role.setRoleName("管理员");
+		assertRoundTrip(role);
+
+		byte[] bytes = {0, 1, (byte) 0xFF, 127};
+		assertArrayEquals(bytes, (byte[]) serializer.deserialize(serializer.serialize(bytes)));
+		assertArrayEquals(new byte[0], (byte[]) serializer.deserialize(serializer.serialize(new byte[0])));
+	}
+
+	@Test
+	public void roundTripsNullFields() {
+		assertRoundTrip(new UserContext(null, null, null, false));
+		assertRoundTrip(new UserContext("u1", "", null, false));
+		assertRoundTrip(new RoleVo());
+	}
+
+	@Test
+	public void roundTripsVarintBoundaries() {
+		for (long value : new long[]{0, 1, -1, 63, -64, 64, -65, 8191, 8192, Integer.MAX_VALUE, Integer.MIN_VALUE,
+				Long.MAX_VALUE, Long.MIN_VALUE, Long.MAX_VALUE - 1, Long.MIN_VALUE + 1}) {
+			assertRoundTrip(value);
+		}
+		for (int value : new int[]{0, -1, Integer.MAX_VALUE, Integer.MIN_VALUE}) {
+			assertRoundTrip(value);
+		}
+		//zigzag：绝对值小的负数也只占一个字节
+		assertEquals(5, serializer.serialize(-1L).length);
+		assertEquals(14, serializer.serialize(Long.MIN_VALUE).length);
+	}
+
+	@Test
+	public void roundTripsDoubleSpecialValues() {
+		for (double value : new double[]{-0.0d, Double.NaN, Double.MIN_VALUE, Double.MAX_VALUE, Double.NEGATIVE_INFINITY}) {
+			assertRoundTrip(value);
+		}
+	}
+
+	@Test
+	public void writesStringsAsPlainUtf8() {
+		for (String value : new String[]{"", "abc", "{\"json\":1}", "中文", "😀"}) {
+			byte[] bytes = serializer.serialize(value);
+			assertArrayEquals(value.getBytes(StandardCharsets.UTF_8), bytes);
+			assertEquals(value, serializer.deserialize(bytes));
+		}
+	}
+
+	@Test
+	public void readsDataWithoutMagicAsString() {
+		//StringRedisSerializer或其他服务写入的数据
+		assertEquals("123", serializer.deserialize("123".getBytes(StandardCharsets.UTF_8)));
+		assertEquals("", serializer.deserialize(new byte[0]));
+		assertNull(serializer.deserialize(null));
+		assertNull(serializer.serialize(null));
+	}
+
+	@Test
+	public void rejectsNewerSchemaVersion() {
+		byte[] bytes = serializer.serialize(new UserContext("u1", "zhangsan", null, false));
+		bytes[3] = 2;
+		assertFails(bytes, "newer");
+	}
+
+	@Test
+	public void rejectsTruncatedInput() {
+		byte[] bytes = serializer.serialize(new UserContext("u1", "zhangsan", "admin", true));
+		for (int length = 1; length < bytes.length; length++) {
+			try {
+				serializer.deserialize(Arrays.copyOf(bytes, length));
+				fail("expected truncated input of length " + length + " to fail");
+			} catch (SerializationException e) {
+				//期望的结果
+			}
+		}
+		assertFails(Arrays.copyOf(serializer.serialize(Long.MIN_VALUE), 8), "truncated");
+	}
+
+	@Test
+	public void rejectsUnknownFormatAndTag() {
+		assertFails(new byte[]{(byte) 0xFF, 2, 1, 1, 0}, "format");
+		assertFails(new byte[]{(byte) 0xFF, 1, 99, 1, 0}, "tag");
+	}
+
+	@Test
+	public void rejectsUnregisteredTypes() {
+		try {
+			serializer.serialize(new StringBuilder("x"));
+			fail("expected unregistered type to fail");
+		} catch (SerializationException e) {
+			assertTrue(e.getMessage().contains(StringBuilder.class.getName()));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsDuplicateTag() {
+		serializer.register(new CompactRedisSerializer.TypeCodec<StringBuilder>() {
+			@Override
+			public Class<StringBuilder> type() {
+				return StringBuilder.class;
+			}
+
+			@Override
+			public int tag() {
+				return 16;
+			}
+
+			@Override
+			public int version() {
+				return 1;
+			}
+
+			@Override
+			public void write(CompactRedisSerializer.Output output, StringBuilder value) {
+				output.writeString(value.toString());
+			}
+
+			@Override
+			public StringBuilder read(CompactRedisSerializer.Input input, int version) {
+				return new StringBuilder(input.readString());
+			}
+		});
+	}
+
+	private void assertRoundTrip(Object value) {
+		byte[] bytes = serializer.serialize(value);
+		assertEquals((byte) 0xFF, bytes[0]);
+		assertEquals(value, serializer.deserialize(bytes));
+	}
+
+	private void assertFails(byte[] bytes, String message) {
+		try {
+			serializer.deserialize(bytes);
+			fail("expected deserialization to fail");
+		} catch (SerializationException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains(message));
+		}
+	}
+
+}
@@ -0,0 +1,62 @@
+package com.vosung.zuul.commonconfig.redisconfig;
+
+import com.vosung.zuul.vo.RoleVo;
+import com.vosung.zuul.vo.UserContext;
+import org.junit.Test;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class JsonValueSerializerTests {
+
+	@SuppressWarnings("unchecked")
+	private final RedisSerializer<Object> serializer = (RedisSerializer<Object>) RedisConfig.valueSerializer("json");
+
+	@Test
+	public void roundTripsGatewayTypes() {
+		UserContext userContext = new UserContext("u1", "zhangsan", "admin,ops", true);
+		assertEquals(userContext, serializer.deserialize(serializer.serialize(userContext)));
+
+		RoleVo role = new RoleVo();
+		role.setId(1);
+		role.setRoleCode("admin");
+		List<RoleVo> roles = new ArrayList<>(Arrays.asList(role));
+		assertEquals(roles, serializer.deserialize(serializer.serialize(roles)));
+	}
+
+	@Test
+	public void keepsDefaultTypingFormat() {
+		String json = new String(serializer.serialize(new UserContext("u1", null, null, false)), StandardCharsets.UTF_8);
+		assertTrue(json, json.startsWith("[\"com.vosung.zuul.vo.UserContext\",{"));
+	}
+
+	@Test
+	public void readsUserContextWrittenBeforeFieldsWereFinal() {
+		byte[] json = ("[\"com.vosung.zuul.vo.UserContext\",{\"userId\":\"u1\",\"userName\":\"zhangsan\","
+				+ "\"roles\":\"admin\",\"superAdmin\":true}]").getBytes(StandardCharsets.UTF_8);
+		assertEquals(new UserContext("u1", "zhangsan", "admin", true), serializer.deserialize(json));
+
+		json = "[\"com.vosung.zuul.vo.UserContext\",{\"userId\":\"u1\"}]".getBytes(StandardCharsets.UTF_8);
+		assertEquals(new UserContext("u1", null, null, false), serializer.deserialize(json));
+	}
+
+	@Test
+	public void rejectsTypesOutsideAllowList() {
+		byte[] json = "[\"java.util.concurrent.atomic.AtomicLong\",1]".getBytes(StandardCharsets.UTF_8);
+		try {
+			serializer.deserialize(json);
+			fail("expected type id to be rejected");
+		} catch (SerializationException e) {
+			assertTrue(String.valueOf(e.getMessage()), e.getMessage().contains("not allowed"));
+		}
+	}
+
+}
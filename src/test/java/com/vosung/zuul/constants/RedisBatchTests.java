@@ -0,0 +1,164 @@
+package com.vosung.zuul.constants;
+
+import com.vosung.zuul.commonconfig.redisconfig.RedisConfig;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 状态类命令（HMSET）和有返回值的命令混在一起时，pipeline和事务的结果都要按顺序对应到各自的Response。
+ * 结果列表的内容由驱动决定，所以在内嵌redis上分别用jedis和lettuce验证
+ */
+@RunWith(Parameterized.class)
+public class RedisBatchTests {
+
+	private static RedisServer redisServer;
+
+	private static int port;
+
+	private final String client;
+
+	private JedisConnectionFactory jedisConnectionFactory;
+
+	private LettuceConnectionFactory lettuceConnectionFactory;
+
+	private RedisTemplate<String, Object> redisTemplate;
+
+	private final List<String> written = new ArrayList<>();
+
+	public RedisBatchTests(String client) {
+		this.client = client;
+	}
+
+	@Parameterized.Parameters(name = "{0}")
+	public static Collection<Object[]> clients() {
+		return Arrays.asList(new Object[]{"jedis"}, new Object[]{"lettuce"});
+	}
+
+	@BeforeClass
+	public static void startRedis() throws IOException {
+		try (ServerSocket socket = new ServerSocket(0)) {
+			port = socket.getLocalPort();
+		}
+		redisServer = new RedisServer(port);
+		redisServer.start();
+	}
+
+	@AfterClass
+	public static void stopRedis() {
+		redisServer.stop();
+	}
+
+	@Before
+	public void setUp() {
+		RedisStandaloneConfiguration standalone = new RedisStandaloneConfiguration("127.0.0.1", port);
+		if ("jedis".equals(client)) {
+			jedisConnectionFactory = new JedisConnectionFactory(standalone);
+			jedisConnectionFactory.afterPropertiesSet();
+			redisTemplate = new RedisConfig().redisTemplate(jedisConnectionFactory, "string");
+		} else {
+			lettuceConnectionFactory = new LettuceConnectionFactory(standalone);
+			lettuceConnectionFactory.afterPropertiesSet();
+			redisTemplate = new RedisConfig().redisTemplate(lettuceConnectionFactory, "string");
+		}
+		redisTemplate.execute(connection -> {
+			connection.flushDb();
+			return null;
+		}, true);
+	}
+
+	@After
+	public void tearDown() {
+		if (jedisConnectionFactory != null) {
+			jedisConnectionFactory.destroy();
+		}
+		if (lettuceConnectionFactory != null) {
+			lettuceConnectionFactory.destroy();
+		}
+	}
+
+	@Test
+	public void pipelineAlignsResultsWithCommands() {
+		assertMixedBatch(false);
+	}
+
+	@Test
+	public void transactionAlignsResultsWithCommands() {
+		assertMixedBatch(true);
+	}
+
+	@Test
+	public void failedBatchCompletesNoResponse() {
+		RedisBatch batch = batch();
+		RedisBatch.Response<Boolean> set = batch.set("a", "not-a-number");
+		RedisBatch.Response<Long> incr = batch.incr("a", 1);
+
+		assertFalse(batch.execute());
+		assertFalse(set.isDone());
+		assertFalse(incr.isDone());
+		//失败时同样通知写过的key
+		assertEquals(Collections.singletonList("a"), written);
+	}
+
+	private void assertMixedBatch(boolean transaction) {
+		RedisBatch batch = batch();
+		RedisBatch.Response<Boolean> set = batch.set("a", "1");
+		RedisBatch.Response<Map<Object, Object>> emptyHash = batch.hmget("h");
+		RedisBatch.Response<Boolean> hmset = batch.hmset("h", Collections.singletonMap("f", "v"));
+		RedisBatch.Response<Boolean> setex = batch.set("b", "2", 60);
+		RedisBatch.Response<Object> getA = batch.get("a");
+		RedisBatch.Response<Long> incr = batch.incr("c", 5);
+		RedisBatch.Response<Boolean> hmsetAgain = batch.hmset("h2", Collections.singletonMap("f", "w"));
+		RedisBatch.Response<Object> hget = batch.hget("h", "f");
+		RedisBatch.Response<Boolean> expire = batch.expire("a", 60);
+		RedisBatch.Response<Long> del = batch.del(Collections.singletonList("b"));
+		RedisBatch.Response<Object> getB = batch.get("b");
+		RedisBatch.Response<Long> lSet = batch.lSet("l", "x");
+
+		assertTrue(transaction ? batch.executeInTransaction() : batch.execute());
+		assertEquals(Boolean.TRUE, set.get());
+		assertTrue(emptyHash.get().isEmpty());
+		assertEquals(Boolean.TRUE, hmset.get());
+		assertEquals(Boolean.TRUE, setex.get());
+		assertEquals("1", getA.get());
+		assertEquals(Long.valueOf(5), incr.get());
+		assertEquals(Boolean.TRUE, hmsetAgain.get());
+		assertEquals("v", hget.get());
+		assertEquals(Boolean.TRUE, expire.get());
+		assertEquals(Long.valueOf(1), del.get());
+		assertNull(getB.get());
+		assertEquals(Long.valueOf(1), lSet.get());
+		assertEquals(Arrays.asList("a", "h", "b", "c", "h2"), written);
+
+		assertEquals("w", redisTemplate.opsForHash().get("h2", "f"));
+		assertTrue(redisTemplate.getExpire("a") > 0);
+	}
+
+	private RedisBatch batch() {
+		return new RedisBatch(redisTemplate, null, written::addAll);
+	}
+
+}
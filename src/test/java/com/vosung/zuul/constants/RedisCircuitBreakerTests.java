@@ -0,0 +1,217 @@
+package com.vosung.zuul.constants;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RedisCircuitBreakerTests {
+
+	private static final long OPEN_DURATION = 50;
+
+	private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	private final CountDownLatch release = new CountDownLatch(1);
+
+	private final AtomicInteger calls = new AtomicInteger();
+
+	private final AtomicInteger blockedFinished = new AtomicInteger();
+
+	private RedisCircuitBreaker breaker;
+
+	@After
+	public void tearDown() {
+		release.countDown();
+		if (breaker != null) {
+			breaker.shutdown();
+		}
+	}
+
+	@Test
+	public void opensAtFailureRateAndShortCircuits() {
+		breaker = breaker(4, 1, 4);
+		assertEquals("ok", breaker.execute(succeed(), "fallback"));
+		assertEquals("ok", breaker.execute(succeed(), "fallback"));
+		assertEquals("fallback", breaker.execute(fail(), "fallback"));
+		assertEquals(RedisCircuitBreaker.State.CLOSED, breaker.getState());
+		assertEquals("fallback", breaker.execute(fail(), "fallback"));
+		assertEquals(RedisCircuitBreaker.State.OPEN, breaker.getState());
+
+		//打开期间不调用redis
+		assertEquals("fallback", breaker.execute(succeed(), "fallback"));
+		assertEquals(4, calls.get());
+		assertEquals(1, count("rejected"), 0);
+		assertEquals(2, count("error"), 0);
+	}
+
+	@Test
+	public void halfOpenClosesAfterSuccessfulProbes() throws InterruptedException {
+		breaker = breaker(1, 2, 4);
+		breaker.execute(fail(), "fallback");
+		assertEquals(RedisCircuitBreaker.State.OPEN, breaker.getState());
+
+		Thread.sleep(OPEN_DURATION * 2);
+		assertEquals("ok", breaker.execute(succeed(), "fallback"));
+		assertEquals(RedisCircuitBreaker.State.HALF_OPEN, breaker.getState());
+		assertEquals("ok", breaker.execute(succeed(), "fallback"));
+		assertEquals(RedisCircuitBreaker.State.CLOSED, breaker.getState());
+
+		//关闭后重新统计：之前的失败不再计入
+		assertEquals("ok", breaker.execute(succeed(), "fallback"));
+		assertEquals(RedisCircuitBreaker.State.CLOSED, breaker.getState());
+	}
+
+	@Test
+	public void halfOpenFailureReopens() throws InterruptedException {
+		breaker = breaker(1, 2, 4);
+		breaker.execute(fail(), "fallback");
+		Thread.sleep(OPEN_DURATION * 2);
+		assertEquals("fallback", breaker.execute(fail(), "fallback"));
+		assertEquals(RedisCircuitBreaker.State.OPEN, breaker.getState());
+		assertEquals(2, meterRegistry.get("gateway.redis.circuit.transitions").tag("state", "open").counter().count(), 0);
+	}
+
+	@Test
+	public void halfOpenAdmitsOnlyConfiguredProbes() throws InterruptedException {
+		breaker = breaker(1000, 1, 1, 4);
+		breaker.execute(fail(), "fallback");
+		Thread.sleep(OPEN_DURATION * 2);
+
+		Thread probe = new Thread(() -> breaker.execute(block(), "fallback"));
+		probe.start();
+		awaitCalls(2);
+		//试探调用还没有结果，其他调用被拒绝
+		assertEquals("fallback", breaker.execute(succeed(), "fallback"));
+		assertEquals(1, count("rejected"), 0);
+		release.countDown();
+		probe.join(1000);
+		assertEquals(RedisCircuitBreaker.State.CLOSED, breaker.getState());
+	}
+
+	@Test
+	public void timeoutCountsAsFailure() {
+		breaker = breaker(1, 1, 4);
+		assertEquals("fallback", breaker.execute(block(), "fallback"));
+		assertEquals(1, count("timeout"), 0);
+		assertEquals(RedisCircuitBreaker.State.OPEN, breaker.getState());
+	}
+
+	@Test
+	public void poolFullDoesNotCountAsFailure() {
+		//一个线程、队列长度1：两个超时的调用占满线程池
+		breaker = breaker(3, 1, 1);
+		breaker.execute(block(), "fallback");
+		breaker.execute(block(), "fallback");
+		assertEquals(2, count("timeout"), 0);
+
+		for (int i = 0; i < 5; i++) {
+			assertEquals("fallback", breaker.execute(succeed(), "fallback"));
+		}
+		assertEquals(5, count("pool_full"), 0);
+		assertEquals(RedisCircuitBreaker.State.CLOSED, breaker.getState());
+	}
+
+	@Test
+	public void poolFullReturnsHalfOpenPermit() throws InterruptedException {
+		breaker = breaker(2, 1, 1);
+		breaker.execute(block(), "fallback");
+		breaker.execute(block(), "fallback");
+		assertEquals(RedisCircuitBreaker.State.OPEN, breaker.getState());
+
+		Thread.sleep(OPEN_DURATION * 2);
+		assertEquals("fallback", breaker.execute(succeed(), "fallback"));
+		assertEquals(1, count("pool_full"), 0);
+		assertEquals(RedisCircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+		//线程池空出来之后，归还的试探次数可以关闭熔断器
+		release.countDown();
+		awaitBlockedFinished(2);
+		assertEquals("ok", breaker.execute(succeed(), "fallback"));
+		assertEquals(RedisCircuitBreaker.State.CLOSED, breaker.getState());
+	}
+
+	@Test
+	public void interruptReturnsHalfOpenPermit() throws InterruptedException {
+		breaker = breaker(1, 1, 4);
+		breaker.execute(fail(), "fallback");
+		Thread.sleep(OPEN_DURATION * 2);
+
+		Thread.currentThread().interrupt();
+		assertEquals("fallback", breaker.execute(block(), "fallback"));
+		assertTrue(Thread.interrupted());
+		assertEquals(RedisCircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+		release.countDown();
+		assertEquals("ok", breaker.execute(succeed(), "fallback"));
+		assertEquals(RedisCircuitBreaker.State.CLOSED, breaker.getState());
+	}
+
+	//调用超时20毫秒
+	private RedisCircuitBreaker breaker(int minimumCalls, int halfOpenCalls, int poolSize) {
+		return breaker(20, minimumCalls, halfOpenCalls, poolSize);
+	}
+
+	//失败率阈值50%，window 10秒
+	private RedisCircuitBreaker breaker(long callTimeout, int minimumCalls, int halfOpenCalls, int poolSize) {
+		return new RedisCircuitBreaker(meterRegistry, true, callTimeout, 50, minimumCalls, 10000, OPEN_DURATION,
+				halfOpenCalls, poolSize);
+	}
+
+	private Supplier<String> succeed() {
+		return () -> {
+			calls.incrementAndGet();
+			return "ok";
+		};
+	}
+
+	private Supplier<String> fail() {
+		return () -> {
+			calls.incrementAndGet();
+			throw new IllegalStateException("redis unavailable");
+		};
+	}
+
+	//等待release之后返回，请求线程在此之前超时
+	private Supplier<String> block() {
+		return () -> {
+			calls.incrementAndGet();
+			try {
+				release.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			blockedFinished.incrementAndGet();
+			return "ok";
+		};
+	}
+
+	private void awaitCalls(int expected) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (calls.get() < expected) {
+			assertTrue("call not started", System.nanoTime() < deadline);
+			Thread.sleep(1);
+		}
+	}
+
+	//超时的调用在后台执行完，线程池空闲
+	private void awaitBlockedFinished(int expected) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (blockedFinished.get() < expected) {
+			assertTrue("blocked calls did not finish", System.nanoTime() < deadline);
+			Thread.sleep(1);
+		}
+	}
+
+	private double count(String result) {
+		return meterRegistry.get("gateway.redis.circuit.calls").tag("result", result).counter().count();
+	}
+
+}
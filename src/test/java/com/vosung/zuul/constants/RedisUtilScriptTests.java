@@ -0,0 +1,99 @@
+package com.vosung.zuul.constants;
+
+import com.vosung.zuul.commonconfig.redisconfig.RedisConfig;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scripting.support.ResourceScriptSource;
+import org.springframework.test.util.ReflectionTestUtils;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * lua脚本的参数和返回值不受gateway.redis.value-serializer影响
+ */
+public class RedisUtilScriptTests {
+
+	private static RedisServer redisServer;
+
+	private static int port;
+
+	private JedisConnectionFactory factory;
+
+	@BeforeClass
+	public static void startRedis() throws IOException {
+		try (ServerSocket socket = new ServerSocket(0)) {
+			port = socket.getLocalPort();
+		}
+		redisServer = new RedisServer(port);
+		redisServer.start();
+	}
+
+	@AfterClass
+	public static void stopRedis() {
+		redisServer.stop();
+	}
+
+	@After
+	public void tearDown() {
+		if (factory != null) {
+			factory.destroy();
+		}
+	}
+
+	@Test
+	public void rateLimitScriptUnderJsonSerializer() {
+		assertRateLimitScript("json");
+	}
+
+	@Test
+	public void rateLimitScriptUnderCompactSerializer() {
+		assertRateLimitScript("compact");
+	}
+
+	@Test
+	public void stringResultIsNotDeserializedAsValue() {
+		RedisUtil redisUtil = redisUtil("json");
+		RedisScript<String> echo = new DefaultRedisScript<>("return ARGV[1]", String.class);
+		assertEquals("plain", redisUtil.execute(echo, Collections.singletonList("echo"), "plain"));
+	}
+
+	@SuppressWarnings("rawtypes")
+	private void assertRateLimitScript(String valueSerializer) {
+		RedisUtil redisUtil = redisUtil(valueSerializer);
+		DefaultRedisScript<List> script = new DefaultRedisScript<>();
+		script.setScriptSource(new ResourceScriptSource(new ClassPathResource("scripts/rate_limit.lua")));
+		script.setResultType(List.class);
+		List<String> keys = Collections.singletonList("rate:" + valueSerializer);
+		String now = String.valueOf(System.currentTimeMillis());
+
+		//容量1：第一次放行，第二次拒绝并返回等待时间和桶序号
+		assertEquals(Arrays.asList(1L, 0L, 0L), redisUtil.execute(script, keys, now, 1, 1));
+		List rejected = redisUtil.execute(script, keys, now, 1, 1);
+		assertEquals(0L, rejected.get(0));
+		assertEquals(1000L, rejected.get(1));
+		assertEquals(1L, rejected.get(2));
+	}
+
+	private RedisUtil redisUtil(String valueSerializer) {
+		factory = new JedisConnectionFactory(new RedisStandaloneConfiguration("127.0.0.1", port));
+		factory.afterPropertiesSet();
+		RedisUtil redisUtil = new RedisUtil();
+		ReflectionTestUtils.setField(redisUtil, "redisTemplate", new RedisConfig().redisTemplate(factory, valueSerializer));
+		return redisUtil;
+	}
+
+}
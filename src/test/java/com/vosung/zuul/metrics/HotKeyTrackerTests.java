@@ -0,0 +1,48 @@
+package com.vosung.zuul.metrics;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HotKeyTrackerTests {
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void keepsHottestKeys() {
+		HotKeyTracker tracker = new HotKeyTracker(1, 2, 2048, 60000);
+		for (int i = 0; i < 20000; i++) {
+			if (i % 4 == 0) {
+				tracker.record("UserHolder");
+			} else if (i % 10 == 1) {
+				tracker.record("gateway:config:routes");
+			} else {
+				tracker.record("user:ctx:" + i);
+			}
+		}
+		List<Map<String, Object>> current = (List<Map<String, Object>>) tracker.describe().get("current");
+		assertEquals(2, current.size());
+		assertEquals("UserHolder", current.get(0).get("key"));
+		assertEquals("gateway:config:routes", current.get(1).get("key"));
+		//count-min sketch只会高估
+		assertTrue((Long) current.get(0).get("sampled") >= 5000);
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void rotatesWindows() throws InterruptedException {
+		HotKeyTracker tracker = new HotKeyTracker(1, 5, 64, 50);
+		tracker.record("a");
+		Thread.sleep(60);
+		tracker.record("b");
+		Map<String, Object> description = tracker.describe();
+		List<Map<String, Object>> current = (List<Map<String, Object>>) description.get("current");
+		List<Map<String, Object>> previous = (List<Map<String, Object>>) description.get("previous");
+		assertEquals("b", current.get(0).get("key"));
+		assertEquals("a", previous.get(0).get("key"));
+	}
+
+}
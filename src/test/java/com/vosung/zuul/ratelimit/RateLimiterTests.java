@@ -0,0 +1,219 @@
+package com.vosung.zuul.ratelimit;
+
+import com.vosung.zuul.commonconfig.redisconfig.RedisConfig;
+import com.vosung.zuul.constants.RedisUtil;
+import com.vosung.zuul.properties.RateLimitProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 在内嵌redis上验证scripts/rate_limit.lua：多个桶全部扣减或都不扣减、等待时间和桶序号决定Retry-After，
+ * 以及RateLimiter传给脚本的速率和容量是普通字符串（不经过gateway.redis.value-serializer）
+ */
+public class RateLimiterTests {
+
+	private static RedisServer redisServer;
+
+	private static int port;
+
+	private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	private final List<Object[]> sentArgs = new ArrayList<>();
+
+	private JedisConnectionFactory factory;
+
+	private RedisTemplate<String, Object> redisTemplate;
+
+	//读取脚本写入的原始值
+	private StringRedisTemplate strings;
+
+	@BeforeClass
+	public static void startRedis() throws IOException {
+		try (ServerSocket socket = new ServerSocket(0)) {
+			port = socket.getLocalPort();
+		}
+		redisServer = new RedisServer(port);
+		redisServer.start();
+	}
+
+	@AfterClass
+	public static void stopRedis() {
+		redisServer.stop();
+	}
+
+	@Before
+	public void setUp() {
+		factory = new JedisConnectionFactory(new RedisStandaloneConfiguration("127.0.0.1", port));
+		factory.afterPropertiesSet();
+		//json序列化时参数如果经过value-serializer会带上引号，脚本中tonumber得到nil
+		redisTemplate = new RedisConfig().redisTemplate(factory, "json");
+		strings = new StringRedisTemplate(factory);
+		redisTemplate.execute(connection -> {
+			connection.flushDb();
+			return null;
+		}, true);
+	}
+
+	@After
+	public void tearDown() {
+		factory.destroy();
+	}
+
+	@Test
+	@SuppressWarnings("rawtypes")
+	public void scriptTakesFromAllBucketsOrNone() {
+		RedisUtil redisUtil = redisUtil();
+		List<String> keys = Arrays.asList("rate:a", "rate:b");
+		long now = 1000000;
+
+		//a：每秒1个，容量2；b：每秒0.5个，容量1
+		assertEquals(Arrays.asList(1L, 0L, 0L), redisUtil.execute(script(), keys, now, 1, 2, 0.5, 1));
+		assertEquals("1", strings.opsForHash().get("rate:a", "tokens"));
+		assertEquals("0", strings.opsForHash().get("rate:b", "tokens"));
+
+		//b不足：a虽然还有令牌也不扣减
+		List rejected = redisUtil.execute(script(), keys, now, 1, 2, 0.5, 1);
+		assertEquals(Arrays.asList(0L, 2000L, 2L), rejected);
+		assertEquals("1", strings.opsForHash().get("rate:a", "tokens"));
+		assertEquals("0", strings.opsForHash().get("rate:b", "tokens"));
+
+		//2秒后b补满一个，两个桶各扣一个
+		assertEquals(Arrays.asList(1L, 0L, 0L), redisUtil.execute(script(), keys, now + 2000, 1, 2, 0.5, 1));
+		assertEquals("1", strings.opsForHash().get("rate:a", "tokens"));
+		assertEquals("0", strings.opsForHash().get("rate:b", "tokens"));
+		assertTrue(strings.getExpire("rate:b") > 0);
+	}
+
+	@Test
+	@SuppressWarnings("rawtypes")
+	public void scriptReportsLongestWaitAndItsBucket() {
+		RedisUtil redisUtil = redisUtil();
+		List<String> keys = Arrays.asList("rate:a", "rate:b", "rate:c");
+		long now = 1000000;
+		redisUtil.execute(script(), keys, now, 1, 1, 0.25, 1, 0.5, 1);
+
+		//三个桶都不足：返回等待最久的桶（b，4秒）
+		List rejected = redisUtil.execute(script(), keys, now, 1, 1, 0.25, 1, 0.5, 1);
+		assertEquals(Arrays.asList(0L, 4000L, 2L), rejected);
+
+		//1秒后a已补满，b还要3秒
+		rejected = redisUtil.execute(script(), keys, now + 1000, 1, 1, 0.25, 1, 0.5, 1);
+		assertEquals(Arrays.asList(0L, 3000L, 2L), rejected);
+	}
+
+	@Test
+	public void rejectionDrivesRetryAfterAndDimension() {
+		RateLimitProperties properties = new RateLimitProperties();
+		properties.getIp().setRate(100);
+		properties.getRoutes().put("orders", limit(0.5, 1));
+		RateLimiter rateLimiter = new RateLimiter(redisUtil(), properties, meterRegistry);
+
+		assertEquals(0, rateLimiter.acquire(null, "10.0.0.1", "orders"));
+		long wait = rateLimiter.acquire(null, "10.0.0.1", "orders");
+		assertTrue("wait " + wait, wait > 1000 && wait <= 2000);
+		assertEquals(1, meterRegistry.get("gateway.ratelimit").tag("result", "rejected").tag("dimension", "route")
+				.counter().count(), 0);
+		assertEquals(0, meterRegistry.get("gateway.ratelimit").tag("result", "rejected").tag("dimension", "ip")
+				.counter().count(), 0);
+
+		//被拒绝的请求没有消耗ip维度的令牌
+		double ipTokens = Double.parseDouble((String) strings.opsForHash().get("rate:ip:10.0.0.1", "tokens"));
+		assertTrue("ip tokens " + ipTokens, ipTokens >= 99 && ipTokens < 100);
+
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		try {
+			RateLimitFilter.reject(response, wait);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		assertEquals(429, response.getStatus());
+		assertEquals("2", response.getHeader("Retry-After"));
+	}
+
+	@Test
+	public void sendsRateAndCapacityAsPlainStrings() {
+		RateLimitProperties properties = new RateLimitProperties();
+		properties.setUser(limit(0.5, 1));
+		properties.setClient(limit(2, 5));
+		RateLimiter rateLimiter = new RateLimiter(redisUtil(), properties, meterRegistry);
+
+		assertEquals(0, rateLimiter.acquireAuthenticated("u1", "web"));
+		assertEquals(1, sentArgs.size());
+		Object[] args = sentArgs.get(0);
+		for (Object arg : args) {
+			assertTrue(String.valueOf(arg), arg instanceof String);
+		}
+		assertEquals(Arrays.asList("0.5", "1.0", "2.0", "5.0"), Arrays.asList(args).subList(1, 5));
+		assertEquals(1, meterRegistry.get("gateway.ratelimit").tag("result", "allowed").counter().count(), 0);
+		assertEquals(0, meterRegistry.get("gateway.ratelimit").tag("result", "error").counter().count(), 0);
+		assertFalse(strings.opsForHash().entries("rate:user:u1").isEmpty());
+	}
+
+	@Test
+	public void failsOpenWithoutRedis() {
+		RateLimitProperties properties = new RateLimitProperties();
+		properties.getIp().setRate(1);
+		RedisUtil redisUtil = redisUtil();
+		//没有redis监听的端口
+		JedisConnectionFactory dead = new JedisConnectionFactory(new RedisStandaloneConfiguration("127.0.0.1", 1));
+		dead.afterPropertiesSet();
+		ReflectionTestUtils.setField(redisUtil, "redisTemplate", new RedisConfig().redisTemplate(dead, "json"));
+		RateLimiter rateLimiter = new RateLimiter(redisUtil, properties, meterRegistry);
+		try {
+			assertEquals(0, rateLimiter.acquire(null, "10.0.0.1", null));
+			assertEquals(0, rateLimiter.acquire(null, "10.0.0.1", null));
+			assertEquals(2, meterRegistry.get("gateway.ratelimit").tag("result", "error").counter().count(), 0);
+		} finally {
+			dead.destroy();
+		}
+	}
+
+	//记录传给脚本的参数
+	private RedisUtil redisUtil() {
+		RedisUtil redisUtil = new RedisUtil() {
+			@Override
+			public <T> T executeGuarded(RedisScript<T> script, List<String> keys, Object... args) {
+				sentArgs.add(args);
+				return super.executeGuarded(script, keys, args);
+			}
+		};
+		ReflectionTestUtils.setField(redisUtil, "redisTemplate", redisTemplate);
+		return redisUtil;
+	}
+
+	private static RateLimitProperties.Limit limit(double rate, double capacity) {
+		RateLimitProperties.Limit limit = new RateLimitProperties.Limit();
+		limit.setRate(rate);
+		limit.setCapacity(capacity);
+		return limit;
+	}
+
+	@SuppressWarnings({"rawtypes", "unchecked"})
+	private static RedisScript<List> script() {
+		return (RedisScript<List>) ReflectionTestUtils.getField(RateLimiter.class, "SCRIPT");
+	}
+
+}
@@ -0,0 +1,164 @@
+package com.vosung.zuul.resourceserverconfig;
+
+import com.vosung.zuul.constants.SecurityConstants;
+import com.vosung.zuul.vo.UserContext;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.loadbalancer.LoadBalancerClient;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 同一个token并发的check_token只调用一次
+ */
+public class IntrospectionCoalescingTests {
+
+	private static final int CALLERS = 8;
+
+	private final ExecutorService callers = Executors.newFixedThreadPool(CALLERS);
+
+	private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	private final AtomicInteger calls = new AtomicInteger();
+
+	private final CountDownLatch release = new CountDownLatch(1);
+
+	private final AtomicBoolean failing = new AtomicBoolean();
+
+	@After
+	public void tearDown() {
+		callers.shutdownNow();
+	}
+
+	@Test
+	public void concurrentCallersShareOneCall() throws Exception {
+		CustomRemoteTokenServices tokenServices = tokenServices();
+		List<Future<OAuth2Authentication>> results = submitAll(tokenServices);
+		awaitCoalesced(CALLERS - 1);
+		release.countDown();
+
+		Set<OAuth2Authentication> distinct = Collections.newSetFromMap(new IdentityHashMap<>());
+		for (Future<OAuth2Authentication> result : results) {
+			OAuth2Authentication authentication = result.get(5, TimeUnit.SECONDS);
+			assertEquals("u1", ((UserContext) authentication.getDetails()).getUserId());
+			distinct.add(authentication);
+		}
+		assertEquals(1, calls.get());
+		//每个等待者拿到自己的副本
+		assertEquals(CALLERS, distinct.size());
+
+		//之后的请求命中缓存
+		tokenServices.loadAuthentication("token-a");
+		assertEquals(1, calls.get());
+	}
+
+	@Test
+	public void failureFailsEveryWaiterAndIsNotCached() throws Exception {
+		failing.set(true);
+		CustomRemoteTokenServices tokenServices = tokenServices();
+		List<Future<OAuth2Authentication>> results = submitAll(tokenServices);
+		awaitCoalesced(CALLERS - 1);
+		release.countDown();
+
+		for (Future<OAuth2Authentication> result : results) {
+			try {
+				result.get(5, TimeUnit.SECONDS);
+				fail("expected check_token failure");
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof ResourceAccessException);
+			}
+		}
+		assertEquals(1, calls.get());
+
+		failing.set(false);
+		tokenServices.loadAuthentication("token-a");
+		assertEquals(2, calls.get());
+	}
+
+	private List<Future<OAuth2Authentication>> submitAll(CustomRemoteTokenServices tokenServices) {
+		List<Future<OAuth2Authentication>> results = new ArrayList<>();
+		for (int i = 0; i < CALLERS; i++) {
+			results.add(callers.submit(() -> tokenServices.loadAuthentication("token-a")));
+		}
+		return results;
+	}
+
+	private void awaitCoalesced(int expected) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (meterRegistry.get("token.introspection.coalesced").counter().count() < expected) {
+			assertTrue("callers were not coalesced", System.nanoTime() < deadline);
+			Thread.sleep(1);
+		}
+	}
+
+	private CustomRemoteTokenServices tokenServices() {
+		CustomRemoteTokenServices tokenServices = new CustomRemoteTokenServices(checkTokenEndpoint());
+		tokenServices.setCheckTokenEndpointUrl("/oauth/check_token");
+		tokenServices.setClientId("gateway");
+		tokenServices.setClientSecret("secret");
+		LoadBalancerClient loadBalancerClient = mock(LoadBalancerClient.class);
+		when(loadBalancerClient.choose(SecurityConstants.AUTH_SERVICE)).thenReturn(new DefaultServiceInstance(
+				SecurityConstants.AUTH_SERVICE, "127.0.0.1", 9090, false, Collections.emptyMap()));
+		tokenServices.setLoadBalancerClient(loadBalancerClient);
+		tokenServices.setMeterRegistry(meterRegistry);
+		tokenServices.setIntrospectionCache(new TokenIntrospectionCache(100, Duration.ofMinutes(5)));
+		return tokenServices;
+	}
+
+	//第一次调用等待release，之后的调用直接返回
+	private ClientHttpRequestFactory checkTokenEndpoint() {
+		long exp = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) + 3600;
+		byte[] body = ("{\"exp\":" + exp + ",\"user_name\":\"zhangsan\",\"" + SecurityConstants.USER_ID_IN_HEADER
+				+ "\":\"u1\",\"scope\":[\"all\"],\"client_id\":\"frontend\"}").getBytes(StandardCharsets.UTF_8);
+		return (uri, httpMethod) -> {
+			calls.incrementAndGet();
+			try {
+				if (!release.await(5, TimeUnit.SECONDS)) {
+					throw new IOException("not released");
+				}
+			} catch (InterruptedException e) {
+				throw new IOException(e);
+			}
+			if (failing.get()) {
+				throw new IOException("auth server unavailable");
+			}
+			MockClientHttpRequest request = new MockClientHttpRequest(httpMethod, uri);
+			MockClientHttpResponse response = new MockClientHttpResponse(body, HttpStatus.OK);
+			response.getHeaders().setContentType(MediaType.APPLICATION_JSON_UTF8);
+			request.setResponse(response);
+			return request;
+		};
+	}
+
+}
@@ -0,0 +1,198 @@
+package com.vosung.zuul.resourceserverconfig;
+
+import com.vosung.zuul.constants.SecurityConstants;
+import com.vosung.zuul.properties.TokenIntrospectionProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.LoadBalancerClient;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class IntrospectionHedgingTests {
+
+	private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	private final CountDownLatch release = new CountDownLatch(1);
+
+	private IntrospectionHedging hedging;
+
+	@After
+	public void tearDown() {
+		release.countDown();
+		if (hedging != null) {
+			hedging.destroy();
+		}
+	}
+
+	@Test
+	public void creditsAccrueWithCallsUpToMaxBurst() {
+		TokenIntrospectionProperties.Hedge hedge = new TokenIntrospectionProperties.Hedge();
+		hedge.setBudgetRatio(0.5);
+		hedge.setMaxBurst(2);
+		hedging = new IntrospectionHedging(hedge, meterRegistry);
+
+		assertFalse(hedging.tryAcquire());
+		hedging.recordCall(1000);
+		assertFalse(hedging.tryAcquire());
+		hedging.recordCall(1000);
+		assertTrue(hedging.tryAcquire());
+		assertFalse(hedging.tryAcquire());
+
+		for (int i = 0; i < 100; i++) {
+			hedging.recordCall(1000);
+		}
+		assertTrue(hedging.tryAcquire());
+		assertTrue(hedging.tryAcquire());
+		assertFalse(hedging.tryAcquire());
+
+		hedging.refund();
+		assertTrue(hedging.tryAcquire());
+		assertEquals(4, exhausted(), 0);
+	}
+
+	@Test
+	public void budgetRatioIsCappedAtOne() {
+		TokenIntrospectionProperties.Hedge hedge = new TokenIntrospectionProperties.Hedge();
+		hedge.setBudgetRatio(5);
+		hedging = new IntrospectionHedging(hedge, meterRegistry);
+
+		hedging.recordCall(1000);
+		assertTrue(hedging.tryAcquire());
+		assertFalse(hedging.tryAcquire());
+	}
+
+	@Test
+	public void runsOnCallerWhenPoolIsFull() throws Exception {
+		hedging = fullPool();
+		Thread caller = Thread.currentThread();
+		CompletableFuture<Thread> inline = hedging.submit(Thread::currentThread);
+		assertTrue(inline.isDone());
+		assertEquals(caller, inline.get());
+
+		CompletableFuture<Object> failed = hedging.submit(() -> {
+			throw new IllegalStateException("check_token failed");
+		});
+		try {
+			failed.get();
+			fail("expected failure");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+	}
+
+	@Test
+	public void skipsHedgeAndRefundsWhenPoolIsFull() {
+		hedging = fullPool();
+		hedging.recordCall(1000);
+		assertTrue(hedging.tryAcquire());
+		assertNull(hedging.submitHedge(() -> "hedged"));
+		//额度已退还
+		assertTrue(hedging.tryAcquire());
+		assertEquals(0, meterRegistry.get("token.introspection.hedge").tag("result", "sent").counter().count(), 0);
+	}
+
+	@Test
+	public void hedgeDelayFollowsPercentile() {
+		TokenIntrospectionProperties.Hedge hedge = new TokenIntrospectionProperties.Hedge();
+		hedge.setMinSamples(10);
+		hedge.setPercentile(0.9);
+		hedging = new IntrospectionHedging(hedge, meterRegistry);
+		for (int i = 1; i <= 100; i++) {
+			hedging.recordCall(TimeUnit.MILLISECONDS.toNanos(i));
+		}
+		long delayMillis = TimeUnit.NANOSECONDS.toMillis(hedging.hedgeDelayNanos());
+		assertTrue("delay " + delayMillis, delayMillis >= 89 && delayMillis <= 91);
+	}
+
+	@Test
+	public void bothFailingThrowsFirstFailure() {
+		TokenIntrospectionProperties.Hedge hedge = new TokenIntrospectionProperties.Hedge();
+		hedge.setBudgetRatio(1);
+		hedge.setMaxDelay(Duration.ofMillis(20));
+		hedging = new IntrospectionHedging(hedge, meterRegistry);
+		hedging.recordCall(1000);
+
+		//primary在对冲请求发出后先失败，对冲请求随后失败
+		CountDownLatch hedgeSent = new CountDownLatch(1);
+		CountDownLatch primaryFailed = new CountDownLatch(1);
+		CustomRemoteTokenServices tokenServices = new CustomRemoteTokenServices((uri, httpMethod) -> {
+			try {
+				if (uri.getPort() == 9090) {
+					hedgeSent.await(5, TimeUnit.SECONDS);
+					primaryFailed.countDown();
+					throw new IOException("primary failed");
+				}
+				hedgeSent.countDown();
+				primaryFailed.await(5, TimeUnit.SECONDS);
+				Thread.sleep(100);
+			} catch (InterruptedException e) {
+				throw new IOException(e);
+			}
+			throw new IOException("hedge failed");
+		});
+		tokenServices.setCheckTokenEndpointUrl("/oauth/check_token");
+		tokenServices.setClientId("gateway");
+		tokenServices.setClientSecret("secret");
+		LoadBalancerClient loadBalancerClient = mock(LoadBalancerClient.class);
+		when(loadBalancerClient.choose(SecurityConstants.AUTH_SERVICE)).thenReturn(instance(9090), instance(9091));
+		tokenServices.setLoadBalancerClient(loadBalancerClient);
+		tokenServices.setMeterRegistry(meterRegistry);
+		tokenServices.setHedging(hedging);
+
+		try {
+			tokenServices.loadAuthentication("token-a");
+			fail("expected check_token failure");
+		} catch (ResourceAccessException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("primary failed"));
+		}
+		assertEquals(1, meterRegistry.get("token.introspection.hedge").tag("result", "sent").counter().count(), 0);
+	}
+
+	private static ServiceInstance instance(int port) {
+		return new DefaultServiceInstance(SecurityConstants.AUTH_SERVICE, "127.0.0.1", port, false, Collections.emptyMap());
+	}
+
+	//一个线程、队列长度1，两个阻塞任务占满
+	private IntrospectionHedging fullPool() {
+		TokenIntrospectionProperties.Hedge hedge = new TokenIntrospectionProperties.Hedge();
+		hedge.setBudgetRatio(1);
+		hedge.setThreads(1);
+		hedge.setQueueCapacity(1);
+		hedge.setMinDelay(Duration.ofMillis(1));
+		IntrospectionHedging fullHedging = new IntrospectionHedging(hedge, meterRegistry);
+		for (int i = 0; i < 2; i++) {
+			fullHedging.submit(() -> {
+				try {
+					return release.await(5, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					return false;
+				}
+			});
+		}
+		return fullHedging;
+	}
+
+	private double exhausted() {
+		return meterRegistry.get("token.introspection.hedge").tag("result", "budget_exhausted").counter().count();
+	}
+
+}
@@ -0,0 +1,82 @@
+package com.vosung.zuul.resourceserverconfig;
+
+import org.junit.Test;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class TokenIntrospectionCacheTests {
+
+	private final AtomicLong ticker = new AtomicLong();
+
+	private final TokenIntrospectionCache cache = new TokenIntrospectionCache(100, Duration.ofMinutes(5), ticker::get);
+
+	@Test
+	public void expiresAtTokenExpWhenBeforeMaxTtl() {
+		cache.put("token-a", authentication(), nowSeconds() + 60);
+		advance(TimeUnit.SECONDS.toNanos(55));
+		assertNotNull(cache.get("token-a"));
+		advance(TimeUnit.SECONDS.toNanos(10));
+		assertNull(cache.get("token-a"));
+	}
+
+	@Test
+	public void expiresAtMaxTtlWhenBeforeTokenExp() {
+		cache.put("token-a", authentication(), nowSeconds() + 3600);
+		advance(TimeUnit.MINUTES.toNanos(5) - 1);
+		assertNotNull(cache.get("token-a"));
+		advance(2);
+		assertNull(cache.get("token-a"));
+	}
+
+	@Test
+	public void usesMaxTtlWithoutExp() {
+		cache.put("token-a", authentication(), null);
+		advance(TimeUnit.MINUTES.toNanos(5) - 1);
+		assertNotNull(cache.get("token-a"));
+		advance(2);
+		assertNull(cache.get("token-a"));
+	}
+
+	@Test
+	public void skipsExpiredTokens() {
+		cache.put("token-a", authentication(), nowSeconds() - 1);
+		assertNull(cache.get("token-a"));
+	}
+
+	@Test
+	public void returnsCopies() {
+		OAuth2Authentication authentication = authentication();
+		authentication.setDetails("details");
+		cache.put("token-a", authentication, null);
+		OAuth2Authentication first = cache.get("token-a");
+		OAuth2Authentication second = cache.get("token-a");
+		assertNotSame(authentication, first);
+		assertNotSame(first, second);
+		assertSame(authentication.getDetails(), first.getDetails());
+	}
+
+	private void advance(long nanos) {
+		ticker.addAndGet(nanos);
+	}
+
+	private static long nowSeconds() {
+		return TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+	}
+
+	private static OAuth2Authentication authentication() {
+		OAuth2Request request = new OAuth2Request(Collections.emptyMap(), "frontend", Collections.emptySet(), true,
+				Collections.singleton("all"), Collections.emptySet(), null, Collections.emptySet(), Collections.emptyMap());
+		return new OAuth2Authentication(request, null);
+	}
+
+}
@@ -0,0 +1,47 @@
+package com.vosung.zuul.route;
+
+import org.junit.Test;
+import org.springframework.util.AntPathMatcher;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AntPatternTrieTests {
+
+	private static final List<String> PATTERNS = Arrays.asList(
+			"/login/**", "/**/public/**", "/a/*", "/a/b", "/a/b/", "/user/{id}", "/user/{id:\\d+}.json",
+			"/static/*.html", "/x/?y", "/**", "/**/x/**/y", "/*", "/", "relative/**", "/api/**/detail");
+
+	private static final List<String> PATHS = Arrays.asList(
+			"/", "/login", "/login/", "/login/oauth/token", "/LOGIN/x", "/x/login/a", "/public", "/a/b/public/c",
+			"/a/publicx/c", "/a", "/a/", "/a/b", "/a/b/", "/a/b/c", "/user/12", "/user/ab.json", "/user/12.json",
+			"/static/index.html", "/static/index.htm", "/x/zy", "/x/zzy", "/x/y", "/q/x/r/s/y", "/q/x/r/s/z",
+			"/a//b", "relative/a", "/relative/a", "/api/detail", "/api/v1/order/detail", "/api/v1/order/detail/");
+
+	@Test
+	public void matchesLikeAntPathMatcher() {
+		AntPathMatcher antPathMatcher = new AntPathMatcher();
+		antPathMatcher.setTrimTokens(false);
+		for (String pattern : PATTERNS) {
+			AntPatternTrie trie = AntPatternTrie.compile(Collections.singletonList(pattern));
+			for (String path : PATHS) {
+				assertEquals(pattern + " -> " + path, antPathMatcher.match(pattern, path), trie.matches(path));
+			}
+		}
+	}
+
+	@Test
+	public void matchesAnyPattern() {
+		AntPatternTrie trie = AntPatternTrie.compile(Arrays.asList("/login/**", "/**/public/**"));
+		assertTrue(trie.matches("/login/oauth/token"));
+		assertTrue(trie.matches("/ksfApp/public/banner"));
+		assertFalse(trie.matches("/ksfApp/order/list"));
+		assertFalse(AntPatternTrie.empty().matches("/login"));
+	}
+
+}
@@ -0,0 +1,164 @@
+package com.vosung.zuul.route;
+
+import org.junit.Test;
+import org.springframework.cloud.netflix.zuul.filters.RefreshableRouteLocator;
+import org.springframework.cloud.netflix.zuul.filters.Route;
+import org.springframework.cloud.netflix.zuul.filters.SimpleRouteLocator;
+import org.springframework.cloud.netflix.zuul.filters.ZuulProperties;
+import org.springframework.cloud.netflix.zuul.filters.ZuulProperties.ZuulRoute;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * 前缀树匹配的结果与SimpleRouteLocator.getMatchingRoute一致
+ */
+public class RouteResolverTests {
+
+	private static final List<ZuulRoute> ROUTES = Arrays.asList(
+			route("orders", "/api/orders/**", true),
+			route("api", "/api/**", true),
+			route("legacy", "/legacy/**", false),
+			route("exact", "/exact", true),
+			route("profile", "/user/*/profile", true),
+			route("public", "/**/public/**", true),
+			route("starred", "/a*/**", true),
+			route("dotted", "/v1.0/**", true),
+			secure(),
+			route("catchall", "/**", true));
+
+	private static final List<String> PATHS = Arrays.asList(
+			"/", "/api", "/api/", "/api/orders", "/api/orders/1", "/api/orders/1/public/2", "/api/ordersx/1",
+			"/api/x", "/api/x/api/y", "/legacy", "/legacy/a/b", "/exact", "/exact/", "/exactly", "/user/12/profile",
+			"/user/12/other", "/x/public/y", "/public", "/ab/c", "/a", "/v1.0/x", "/v1x0/x", "/secure/z",
+			"//api//orders/1", "//api/x", "/unknown/path", "/zuul/api/x", "/zuul/exact");
+
+	@Test
+	public void matchesLikeSimpleRouteLocator() {
+		assertGrid(new ZuulProperties(), ROUTES);
+	}
+
+	@Test
+	public void earlierRouteWinsOverDeeperOne() {
+		List<ZuulRoute> reversed = new ArrayList<>(ROUTES);
+		Collections.reverse(reversed);
+		assertGrid(new ZuulProperties(), reversed);
+		assertGrid(new ZuulProperties(), Arrays.asList(route("api", "/api/**", true),
+				route("orders", "/api/orders/**", true), route("legacy", "/legacy/**", false)));
+	}
+
+	@Test
+	public void ignoredPatterns() {
+		ZuulProperties properties = new ZuulProperties();
+		properties.setIgnoredPatterns(new LinkedHashSet<>(Arrays.asList("/**/internal/**", "/legacy/a/**")));
+		List<String> paths = new ArrayList<>(PATHS);
+		paths.addAll(Arrays.asList("/api/internal/x", "/internal", "/legacy/a", "/legacy/a/b/c"));
+		assertGrid(properties, ROUTES, paths);
+		assertNull(resolver(properties, ROUTES).getMatchingRoute("/api/internal/x"));
+	}
+
+	@Test
+	public void zuulPrefixDelegates() {
+		for (boolean stripPrefix : new boolean[]{true, false}) {
+			ZuulProperties properties = new ZuulProperties();
+			properties.setPrefix("/gw");
+			properties.setStripPrefix(stripPrefix);
+			List<String> paths = new ArrayList<>(PATHS);
+			paths.addAll(Arrays.asList("/gw/api/orders/1", "/gw/legacy/a", "/gw"));
+			assertGrid(properties, ROUTES, paths);
+		}
+	}
+
+	@Test
+	public void zuulServletPathDelegates() {
+		ZuulProperties properties = new ZuulProperties();
+		properties.setServletPath("/proxy");
+		List<String> paths = new ArrayList<>(PATHS);
+		paths.addAll(Arrays.asList("/proxy/api/orders/1", "/proxy/legacy/a"));
+		assertGrid(properties, ROUTES, paths);
+	}
+
+	@Test
+	public void routesRefreshedRebuildsTable() {
+		ZuulProperties properties = properties(new ZuulProperties(), Collections.singletonList(route("api", "/api/**", true)));
+		RouteResolver resolver = new RouteResolver(new RefreshableLocator(properties), properties, 100);
+		assertNull(resolver.getMatchingRoute("/legacy/a"));
+
+		properties(properties, Arrays.asList(route("api", "/api/**", true), route("legacy", "/legacy/**", false)));
+		resolver.onRoutesRefreshed();
+		Route route = resolver.getMatchingRoute("/legacy/a");
+		assertNotNull(route);
+		assertEquals("/legacy/a", route.getPath());
+	}
+
+	//与DynamicRouteLocator一样可以刷新
+	private static final class RefreshableLocator extends SimpleRouteLocator implements RefreshableRouteLocator {
+
+		private RefreshableLocator(ZuulProperties properties) {
+			super("/", properties);
+		}
+
+		@Override
+		public void refresh() {
+			doRefresh();
+		}
+	}
+
+	private static void assertGrid(ZuulProperties properties, List<ZuulRoute> routes) {
+		assertGrid(properties, routes, PATHS);
+	}
+
+	private static void assertGrid(ZuulProperties properties, List<ZuulRoute> routes, List<String> paths) {
+		RouteResolver resolver = resolver(properties, routes);
+		SimpleRouteLocator locator = new SimpleRouteLocator("/", properties);
+		for (String path : paths) {
+			String expected = describe(locator.getMatchingRoute(path));
+			assertEquals(path, expected, describe(resolver.getMatchingRoute(path)));
+			//第二次从缓存取
+			assertEquals(path, expected, describe(resolver.getMatchingRoute(path)));
+		}
+	}
+
+	private static RouteResolver resolver(ZuulProperties properties, List<ZuulRoute> routes) {
+		properties(properties, routes);
+		return new RouteResolver(new SimpleRouteLocator("/", properties), properties, 100);
+	}
+
+	private static ZuulProperties properties(ZuulProperties properties, List<ZuulRoute> routes) {
+		Map<String, ZuulRoute> map = new LinkedHashMap<>();
+		for (ZuulRoute route : routes) {
+			map.put(route.getId(), route);
+		}
+		properties.setRoutes(map);
+		return properties;
+	}
+
+	private static ZuulRoute route(String id, String path, boolean stripPrefix) {
+		return new ZuulRoute(id, path, id, null, stripPrefix, null, null);
+	}
+
+	private static ZuulRoute secure() {
+		return new ZuulRoute("secure", "/secure/**", null, "http://secure", true, true,
+				new LinkedHashSet<>(Collections.singletonList("Cookie")));
+	}
+
+	private static String describe(Route route) {
+		if (route == null) {
+			return null;
+		}
+		return route.getId() + " path=" + route.getPath() + " fullPath=" + route.getFullPath()
+				+ " prefix=" + route.getPrefix() + " location=" + route.getLocation()
+				+ " retryable=" + route.getRetryable() + " stripped=" + route.isPrefixStripped()
+				+ " customSensitive=" + route.isCustomSensitiveHeaders() + " sensitive=" + route.getSensitiveHeaders();
+	}
+
+}